@@ -23,6 +23,7 @@ import java.lang.annotation.Target;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.NearCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 
 /**
@@ -90,6 +91,54 @@ public @interface CacheNamespace {
    */
   boolean blocking() default false;
 
+  /**
+   * Returns the time to live of each entry in milliseconds, shortened by a random jitter.
+   *
+   * @return the time to live, or 0 when entries do not expire on their own
+   * @since 3.5.4
+   */
+  long timeToLive() default 0;
+
+  /**
+   * Returns the fraction of the time to live after which a hit reloads the entry in the background.
+   *
+   * @return the refresh ahead factor, or 0 when entries are not reloaded
+   * @since 3.5.4
+   */
+  double refreshAhead() default 0;
+
+  /**
+   * Returns the number of entries kept in a local tier in front of the cache.
+   *
+   * @return the size of the local tier, or 0 when the cache has none
+   * @since 3.5.4
+   */
+  int nearCacheSize() default 0;
+
+  /**
+   * Returns how long in milliseconds the local tier serves an entry.
+   *
+   * @return the time to live of the local entries, or 0 when they only leave the local tier when evicted or invalidated
+   * @since 3.5.4
+   */
+  long nearCacheTimeToLive() default 0;
+
+  /**
+   * Returns how the puts reach the cache behind the local tier.
+   *
+   * @return the write policy of the local tier
+   * @since 3.5.4
+   */
+  NearCache.WritePolicy nearCacheWritePolicy() default NearCache.WritePolicy.WRITE_THROUGH;
+
+  /**
+   * Returns whether the cache is saved on shutdown and restored on startup, in the {@code cacheSnapshotDirectory}.
+   *
+   * @return {@code true} if the cache survives restarts; {@code false} if not
+   * @since 3.5.4
+   */
+  boolean snapshot() default false;
+
   /**
    * Returns property values for a implementation object.
    *
@@ -47,4 +47,21 @@ public @interface Many {
    */
   FetchType fetchType() default FetchType.DEFAULT;
 
+  /**
+   * Returns the number of keys loaded by each execution of the nested statement.
+   * When greater than zero, the nested statement receives the keys of several rows as a {@code List} parameter.
+   *
+   * @return the batch size
+   * @since 3.5.4
+   */
+  int batchSize() default 0;
+
+  /**
+   * Returns the property of the nested objects that holds the key of the row they belong to.
+   *
+   * @return the batch key property
+   * @since 3.5.4
+   */
+  String batchKeyProperty() default "";
+
 }
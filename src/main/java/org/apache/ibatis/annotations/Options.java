@@ -132,4 +132,27 @@ public @interface Options {
    * @return result set names that separate with comma(',')
    */
   String resultSets() default "";
+
+  /**
+   * Returns the tables the statement reads or writes, used to invalidate second level cache entries by table.
+   * <p>
+   * If you specify multiple tables, please separate using comma(','). When empty, the tables are inferred from the SQL.
+   * </p>
+   *
+   * @return table names that separate with comma(',')
+   * @since 3.5.4
+   */
+  String tables() default "";
+
+  /**
+   * Returns whether the eager nested selects of this select are loaded in parallel.
+   * <p>
+   * The nested selects run on the pool sized by the {@code nestedQueryParallelism} setting, each one on a connection of
+   * its own, so they are loaded one after another when the session has uncommitted changes or a managed transaction.
+   * </p>
+   *
+   * @return {@code true} if the nested selects are loaded in parallel; {@code false} if otherwise
+   * @since 3.5.4
+   */
+  boolean parallel() default false;
 }
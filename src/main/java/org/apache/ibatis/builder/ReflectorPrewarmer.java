@@ -0,0 +1,116 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMap;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * Builds the reflectors of the parameter and result types of a configuration in parallel, so the first statements
+ * executed after startup do not scan those classes.
+ */
+public class ReflectorPrewarmer {
+
+  private static final Log log = LogFactory.getLog(ReflectorPrewarmer.class);
+
+  private final Configuration configuration;
+
+  public ReflectorPrewarmer(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  /**
+   * Builds the reflectors of the types returned by {@link #collectTypes()}.
+   * Nothing is done when the reflector factory does not cache reflectors.
+   *
+   * @return the number of types
+   */
+  public int prewarm() {
+    final ReflectorFactory reflectorFactory = configuration.getReflectorFactory();
+    if (!reflectorFactory.isClassCacheEnabled()) {
+      return 0;
+    }
+    final Set<Class<?>> types = collectTypes();
+    types.parallelStream().forEach(type -> {
+      try {
+        reflectorFactory.findForClass(type);
+      } catch (RuntimeException e) {
+        // the statements using this type will report the problem
+        log.debug("Could not prewarm the reflector of " + type.getName() + ". Cause: " + e);
+      }
+    });
+    return types.size();
+  }
+
+  /**
+   * Collects the bean types of the parameter maps, the mapped statements, the result maps and their mappings.
+   * Types handled by a type handler, maps, collections and interfaces are left out.
+   */
+  public Set<Class<?>> collectTypes() {
+    final Set<Class<?>> types = new LinkedHashSet<>();
+    // short names are mapped to an ambiguity marker when two namespaces share them
+    for (Object statement : (Collection<?>) configuration.getMappedStatements()) {
+      if (statement instanceof MappedStatement) {
+        MappedStatement mappedStatement = (MappedStatement) statement;
+        if (mappedStatement.getParameterMap() != null) {
+          addType(types, mappedStatement.getParameterMap().getType());
+        }
+        for (ResultMap resultMap : mappedStatement.getResultMaps()) {
+          addResultMap(types, resultMap);
+        }
+      }
+    }
+    for (Object resultMap : (Collection<?>) configuration.getResultMaps()) {
+      if (resultMap instanceof ResultMap) {
+        addResultMap(types, (ResultMap) resultMap);
+      }
+    }
+    for (Object parameterMap : (Collection<?>) configuration.getParameterMaps()) {
+      if (parameterMap instanceof ParameterMap) {
+        addType(types, ((ParameterMap) parameterMap).getType());
+      }
+    }
+    return types;
+  }
+
+  private void addResultMap(Set<Class<?>> types, ResultMap resultMap) {
+    addType(types, resultMap.getType());
+    for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+      addType(types, resultMapping.getJavaType());
+    }
+  }
+
+  private void addType(Set<Class<?>> types, Class<?> type) {
+    if (type == null || type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum()
+        || Map.class.isAssignableFrom(type) || Collection.class.isAssignableFrom(type)
+        || configuration.getTypeHandlerRegistry().hasTypeHandler(type)) {
+      return;
+    }
+    types.add(type);
+  }
+
+}
@@ -148,8 +148,14 @@ public class MapperAnnotationBuilder {
     if (cacheDomain != null) {
       Integer size = cacheDomain.size() == 0 ? null : cacheDomain.size();
       Long flushInterval = cacheDomain.flushInterval() == 0 ? null : cacheDomain.flushInterval();
+      Long timeToLive = cacheDomain.timeToLive() == 0 ? null : cacheDomain.timeToLive();
+      Double refreshAhead = cacheDomain.refreshAhead() == 0 ? null : cacheDomain.refreshAhead();
+      Integer nearCacheSize = cacheDomain.nearCacheSize() == 0 ? null : cacheDomain.nearCacheSize();
+      Long nearCacheTimeToLive = cacheDomain.nearCacheTimeToLive() == 0 ? null : cacheDomain.nearCacheTimeToLive();
       Properties props = convertToProperties(cacheDomain.properties());
-      assistant.useNewCache(cacheDomain.implementation(), cacheDomain.eviction(), flushInterval, size, cacheDomain.readWrite(), cacheDomain.blocking(), props);
+      assistant.useNewCache(cacheDomain.implementation(), cacheDomain.eviction(), flushInterval, size, cacheDomain.readWrite(), cacheDomain.blocking(),
+          timeToLive, refreshAhead, nearCacheSize, nearCacheTimeToLive, cacheDomain.nearCacheWritePolicy(),
+          cacheDomain.snapshot(), props);
     }
   }
 
@@ -339,7 +345,9 @@ public class MapperAnnotationBuilder {
           null,
           languageDriver,
           // ResultSets
-          options != null ? nullOrEmpty(options.resultSets()) : null);
+          options != null ? nullOrEmpty(options.resultSets()) : null,
+          options != null ? nullOrEmpty(options.tables()) : null,
+          options != null && options.parallel());
     }
   }
 
@@ -520,7 +528,9 @@ public class MapperAnnotationBuilder {
           flags,
           null,
           null,
-          isLazy(result));
+          isLazy(result),
+          batchSize(result),
+          batchKeyProperty(result));
       resultMappings.add(resultMapping);
     }
   }
@@ -546,6 +556,14 @@ public class MapperAnnotationBuilder {
     return isLazy;
   }
 
+  private int batchSize(Result result) {
+    return result.one().select().length() > 0 ? result.one().batchSize() : result.many().batchSize();
+  }
+
+  private String batchKeyProperty(Result result) {
+    return nullOrEmpty(result.one().select().length() > 0 ? result.one().batchKeyProperty() : result.many().batchKeyProperty());
+  }
+
   private boolean hasNestedSelect(Result result) {
     if (result.one().select().length() > 0 && result.many().select().length() > 0) {
       throw new BuilderException("Cannot use both @One and @Many annotations in the same @Result");
@@ -17,6 +17,8 @@ package org.apache.ibatis.builder.xml;
 
 import org.apache.ibatis.builder.BaseBuilder;
 import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.cache.CacheInvalidationBus;
+import org.apache.ibatis.cache.CacheSerializer;
 import org.apache.ibatis.datasource.DataSourceFactory;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.loader.ProxyFactory;
@@ -32,6 +34,7 @@ import org.apache.ibatis.reflection.DefaultReflectorFactory;
 import org.apache.ibatis.reflection.MetaClass;
 import org.apache.ibatis.reflection.ReflectorFactory;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.invoker.InvokerFactory;
 import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
 import org.apache.ibatis.session.*;
 import org.apache.ibatis.transaction.TransactionFactory;
@@ -286,7 +289,9 @@ public class XMLConfigBuilder extends BaseBuilder {
   private void reflectorFactoryElement(XNode context) throws Exception {
     if (context != null) {
       String type = context.getStringAttribute("type");
+      Properties properties = context.getChildrenAsProperties();
       ReflectorFactory factory = (ReflectorFactory) resolveClass(type).getDeclaredConstructor().newInstance();
+      factory.setProperties(properties);
       configuration.setReflectorFactory(factory);
     }
   }
@@ -333,6 +338,7 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setAutoMappingUnknownColumnBehavior(AutoMappingUnknownColumnBehavior.valueOf(props.getProperty("autoMappingUnknownColumnBehavior", "NONE")));
     configuration.setCacheEnabled(booleanValueOf(props.getProperty("cacheEnabled"), true));
     configuration.setProxyFactory((ProxyFactory) createInstance(props.getProperty("proxyFactory")));
+    configuration.setInvokerFactory((InvokerFactory) createInstance(props.getProperty("invokerFactory")));
     configuration.setLazyLoadingEnabled(booleanValueOf(props.getProperty("lazyLoadingEnabled"), false));
     configuration.setAggressiveLazyLoading(booleanValueOf(props.getProperty("aggressiveLazyLoading"), false));
     configuration.setMultipleResultSetsEnabled(booleanValueOf(props.getProperty("multipleResultSetsEnabled"), true));
@@ -345,6 +351,7 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setMapUnderscoreToCamelCase(booleanValueOf(props.getProperty("mapUnderscoreToCamelCase"), false));
     configuration.setSafeRowBoundsEnabled(booleanValueOf(props.getProperty("safeRowBoundsEnabled"), false));
     configuration.setLocalCacheScope(LocalCacheScope.valueOf(props.getProperty("localCacheScope", "SESSION")));
+    configuration.setLocalCacheMaxEntries(integerValueOf(props.getProperty("localCacheMaxEntries"), 0));
     configuration.setJdbcTypeForNull(JdbcType.valueOf(props.getProperty("jdbcTypeForNull", "OTHER")));
     configuration.setLazyLoadTriggerMethods(stringSetValueOf(props.getProperty("lazyLoadTriggerMethods"), "equals,clone,hashCode,toString"));
     configuration.setSafeResultHandlerEnabled(booleanValueOf(props.getProperty("safeResultHandlerEnabled"), true));
@@ -353,6 +360,22 @@ public class XMLConfigBuilder extends BaseBuilder {
     configuration.setCallSettersOnNulls(booleanValueOf(props.getProperty("callSettersOnNulls"), false));
     configuration.setUseActualParamName(booleanValueOf(props.getProperty("useActualParamName"), true));
     configuration.setReturnInstanceForEmptyRow(booleanValueOf(props.getProperty("returnInstanceForEmptyRow"), false));
+    configuration.setNestedCursorStreamingEnabled(booleanValueOf(props.getProperty("nestedCursorStreamingEnabled"), false));
+    configuration.setNestedQueryParallelism(integerValueOf(props.getProperty("nestedQueryParallelism"), 0));
+    configuration.setReflectorPrewarmingEnabled(booleanValueOf(props.getProperty("reflectorPrewarmingEnabled"), false));
+    configuration.setCacheSerializer((CacheSerializer) createInstance(props.getProperty("cacheSerializer")));
+    configuration.setCacheCopyOnRead(booleanValueOf(props.getProperty("cacheCopyOnRead"), false));
+    configuration.setCompactRowCacheEnabled(booleanValueOf(props.getProperty("compactRowCacheEnabled"), false));
+    configuration.setTableCacheInvalidationEnabled(booleanValueOf(props.getProperty("tableCacheInvalidationEnabled"), false));
+    CacheInvalidationBus cacheInvalidationBus = (CacheInvalidationBus) createInstance(props.getProperty("cacheInvalidationBus"));
+    if (cacheInvalidationBus != null) {
+      cacheInvalidationBus.setProperties(configuration.getVariables());
+    }
+    configuration.setCacheInvalidationBus(cacheInvalidationBus);
+    configuration.setCacheSnapshotDirectory(props.getProperty("cacheSnapshotDirectory"));
+    configuration.setCacheMetricsEnabled(booleanValueOf(props.getProperty("cacheMetricsEnabled"), false));
+    configuration.setTransactionalCacheStagingLimit(integerValueOf(props.getProperty("transactionalCacheStagingLimit"), 0));
+    configuration.setTransactionalCacheAsyncCommit(booleanValueOf(props.getProperty("transactionalCacheAsyncCommit"), false));
     configuration.setLogPrefix(props.getProperty("logPrefix"));
     configuration.setConfigurationFactory(resolveClass(props.getProperty("configurationFactory")));
   }
@@ -17,6 +17,7 @@ package org.apache.ibatis.builder.xml;
 
 import org.apache.ibatis.builder.*;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.decorators.NearCache;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.mapping.*;
@@ -224,9 +225,16 @@ public class XMLMapperBuilder extends BaseBuilder {
       Integer size = context.getIntAttribute("size");
       boolean readWrite = !context.getBooleanAttribute("readOnly", false);
       boolean blocking = context.getBooleanAttribute("blocking", false);
+      Long timeToLive = context.getLongAttribute("timeToLive");
+      Double refreshAhead = context.getDoubleAttribute("refreshAhead");
+      Integer nearCacheSize = context.getIntAttribute("nearCacheSize");
+      Long nearCacheTimeToLive = context.getLongAttribute("nearCacheTimeToLive");
+      NearCache.WritePolicy nearCacheWritePolicy = NearCache.WritePolicy.valueOf(context.getStringAttribute("nearCacheWritePolicy", "WRITE_THROUGH"));
+      boolean snapshot = context.getBooleanAttribute("snapshot", false);
       Properties props = context.getChildrenAsProperties();
       // 此处创建了— 个Cache，这里是一个二级缓存对象。
-      builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, props);
+      builderAssistant.useNewCache(typeClass, evictionClass, flushInterval, size, readWrite, blocking, timeToLive, refreshAhead,
+          nearCacheSize, nearCacheTimeToLive, nearCacheWritePolicy, snapshot, props);
     }
   }
 
@@ -404,10 +412,12 @@ public class XMLMapperBuilder extends BaseBuilder {
     String resultSet = context.getStringAttribute("resultSet");
     String foreignColumn = context.getStringAttribute("foreignColumn");
     boolean lazy = "lazy".equals(context.getStringAttribute("fetchType", configuration.isLazyLoadingEnabled() ? "lazy" : "eager"));
+    Integer batchSize = context.getIntAttribute("batchSize");
+    String batchKeyProperty = context.getStringAttribute("batchKeyProperty");
     Class<?> javaTypeClass = resolveClass(javaType);
     Class<? extends TypeHandler<?>> typeHandlerClass = resolveClass(typeHandler);
     JdbcType jdbcTypeEnum = resolveJdbcType(jdbcType);
-    return builderAssistant.buildResultMapping(resultType, property, column, javaTypeClass, jdbcTypeEnum, nestedSelect, nestedResultMap, notNullColumn, columnPrefix, typeHandlerClass, flags, resultSet, foreignColumn, lazy);
+    return builderAssistant.buildResultMapping(resultType, property, column, javaTypeClass, jdbcTypeEnum, nestedSelect, nestedResultMap, notNullColumn, columnPrefix, typeHandlerClass, flags, resultSet, foreignColumn, lazy, batchSize, batchKeyProperty);
   }
 
   private String processNestedResultMappings(XNode context, List<ResultMapping> resultMappings, Class<?> enclosingType) throws Exception {
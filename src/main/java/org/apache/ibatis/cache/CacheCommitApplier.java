@@ -0,0 +1,119 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.cache.decorators.TableTaggedCache;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Puts the entries committed by the sessions in the second level caches on a background thread, so a commit
+ * does not wait for the serialization and the eviction of its entries.
+ * <p>
+ * Each cache has an epoch incremented by every commit, or invalidation received from another node, that evicts
+ * entries from it. Entries staged before an eviction committed in the meantime may be stale: they are not put,
+ * or removed again if the eviction ran while they were put. Commits that do not fit in the queue are applied by
+ * the committing thread.
+ */
+public class CacheCommitApplier {
+
+  private static final Log log = LogFactory.getLog(CacheCommitApplier.class);
+  private static final AtomicInteger applierCount = new AtomicInteger();
+
+  private final ThreadPoolExecutor thread;
+  private final Map<String, AtomicLong> epochs = new ConcurrentHashMap<>();
+
+  public CacheCommitApplier() {
+    final String name = "mybatis-cache-commit-" + applierCount.incrementAndGet();
+    this.thread = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1024), runnable -> {
+      Thread applier = new Thread(runnable, name);
+      applier.setDaemon(true);
+      return applier;
+    }, new ThreadPoolExecutor.CallerRunsPolicy());
+    this.thread.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Records that entries are about to be evicted from the cache, the entries staged before are not put anymore.
+   * Call it before evicting them: the entries being put meanwhile are then either removed again or evicted.
+   */
+  public void invalidated(String cacheId) {
+    epochOf(cacheId).incrementAndGet();
+  }
+
+  /**
+   * Puts the entries in the cache unless it evicted entries in the meantime.
+   *
+   * @param tables the tables of the entries, used when the cache is a {@link TableTaggedCache}
+   */
+  public void apply(Cache cache, Map<Object, Object> entries, Map<Object, Collection<String>> tables) {
+    final AtomicLong epoch = epochOf(cache.getId());
+    final long stagedEpoch = epoch.get();
+    thread.execute(() -> {
+      if (epoch.get() != stagedEpoch) {
+        return;
+      }
+      try {
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+          if (cache instanceof TableTaggedCache) {
+            ((TableTaggedCache) cache).putObject(entry.getKey(), entry.getValue(), tables.get(entry.getKey()));
+          } else {
+            cache.putObject(entry.getKey(), entry.getValue());
+          }
+        }
+        if (epoch.get() != stagedEpoch) {
+          for (Object key : entries.keySet()) {
+            cache.removeObject(key);
+          }
+        }
+      } catch (RuntimeException e) {
+        log.warn("Error putting the entries committed in the cache " + cache.getId() + ".  Cause: " + e);
+      }
+    });
+  }
+
+  /**
+   * Waits until the commits submitted so far are applied.
+   */
+  public void awaitPendingCommits() {
+    try {
+      thread.submit(() -> { }).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      throw new CacheException("Error waiting for the cache commits.  Cause: " + e, e);
+    }
+  }
+
+  public int getPendingCount() {
+    return thread.getQueue().size();
+  }
+
+  private AtomicLong epochOf(String cacheId) {
+    return epochs.computeIfAbsent(cacheId, id -> new AtomicLong());
+  }
+
+}
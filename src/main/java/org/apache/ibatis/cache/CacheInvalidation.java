@@ -0,0 +1,104 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Eviction committed on a second level cache, either of the whole cache or of the entries read from some tables.
+ */
+public final class CacheInvalidation implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String cacheId;
+  private final Set<String> tables;
+
+  /**
+   * @param cacheId the id of the cache, its namespace
+   * @param tables the tables whose entries are evicted, or {@code null} when the cache is cleared
+   */
+  public CacheInvalidation(String cacheId, Collection<String> tables) {
+    this.cacheId = cacheId;
+    this.tables = tables == null ? null : Collections.unmodifiableSet(new LinkedHashSet<>(tables));
+  }
+
+  public String getCacheId() {
+    return cacheId;
+  }
+
+  /**
+   * Returns the tables whose entries are evicted, or {@code null} when the whole cache is cleared.
+   */
+  public Set<String> getTables() {
+    return tables;
+  }
+
+  /**
+   * Merges the invalidations of a same cache: clearing it absorbs the others, table evictions are united.
+   */
+  public static List<CacheInvalidation> coalesce(Collection<CacheInvalidation> invalidations) {
+    Map<String, Set<String>> tablesByCache = new LinkedHashMap<>();
+    for (CacheInvalidation invalidation : invalidations) {
+      String cacheId = invalidation.getCacheId();
+      if (tablesByCache.containsKey(cacheId) && tablesByCache.get(cacheId) == null) {
+        continue;
+      }
+      if (invalidation.getTables() == null) {
+        tablesByCache.put(cacheId, null);
+      } else {
+        tablesByCache.computeIfAbsent(cacheId, k -> new LinkedHashSet<>()).addAll(invalidation.getTables());
+      }
+    }
+    List<CacheInvalidation> coalesced = new ArrayList<>(tablesByCache.size());
+    for (Map.Entry<String, Set<String>> entry : tablesByCache.entrySet()) {
+      coalesced.add(new CacheInvalidation(entry.getKey(), entry.getValue()));
+    }
+    return coalesced;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof CacheInvalidation)) {
+      return false;
+    }
+    CacheInvalidation that = (CacheInvalidation) o;
+    return cacheId.equals(that.cacheId) && Objects.equals(tables, that.tables);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(cacheId, tables);
+  }
+
+  @Override
+  public String toString() {
+    return cacheId + (tables == null ? "" : tables);
+  }
+
+}
@@ -0,0 +1,57 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.Collection;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Carries the second level cache invalidations committed on a node to the other nodes sharing the database,
+ * so that their caches do not keep serving rows modified elsewhere.
+ * <p>
+ * The invalidations are applied by the other nodes after the commit, so they may serve stale entries meanwhile.
+ * Implementations must be thread safe.
+ */
+public interface CacheInvalidationBus {
+
+  /**
+   * Receives the properties of the configuration, those of its {@code <properties>} element, before
+   * {@link #subscribe(Consumer)}.
+   */
+  default void setProperties(Properties properties) {
+    // NOP
+  }
+
+  /**
+   * Publishes the invalidations committed by a session of this node. Called by the committing thread,
+   * it should not wait for the other nodes.
+   */
+  void publish(Collection<CacheInvalidation> invalidations);
+
+  /**
+   * Registers the listener applying to the caches of this node the invalidations published by the other nodes.
+   */
+  void subscribe(Consumer<Collection<CacheInvalidation>> listener);
+
+  /**
+   * Stops publishing and receiving invalidations.
+   */
+  default void close() {
+    // nothing to release by default
+  }
+
+}
@@ -17,10 +17,14 @@ package org.apache.ibatis.cache;
 
 import org.apache.ibatis.reflection.ArrayUtil;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringJoiner;
+import java.util.function.Consumer;
 
 /**
  * @author Clinton Begin
@@ -40,48 +44,65 @@ public class CacheKey implements Cloneable, Serializable {
     }
   };
 
-  private static final int DEFAULT_MULTIPLIER = 37;
-  private static final int DEFAULT_HASHCODE = 17;
+  // odd, so that each update is a bijection of the checksum
+  private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
 
-  private final int multiplier;
-  private int hashcode;
   private long checksum;
   private int count;
   // 8/21/2017 - Sonarlint flags this as needing to be marked transient.  While true if content is not serializable, this is not always true and thus should not be marked transient.
   // 这个集合存放了保证key唯一性的要素
   // 并不是一上来就通过这6个要素比较这两个key是否相等，而是通过重写的hashcode先进行判断，然后equals
   private List<Object> updateList;
+  // adds the elements of a lazy key on first use
+  private transient Consumer<CacheKey> initializer;
 
   public CacheKey() {
-    this.hashcode = DEFAULT_HASHCODE;
-    this.multiplier = DEFAULT_MULTIPLIER;
     this.count = 0;
     this.updateList = new ArrayList<>();
   }
 
+  /**
+   * @since 3.5.4
+   */
+  public CacheKey(int expectedUpdateCount) {
+    this.count = 0;
+    this.updateList = new ArrayList<>(expectedUpdateCount);
+  }
+
   public CacheKey(Object[] objects) {
-    this();
+    this(objects.length);
     updateAll(objects);
   }
 
+  /**
+   * Returns a key whose elements are added by the initializer only when the key is first used,
+   * so that a key which is never looked up costs nothing more than its allocation.
+   *
+   * @since 3.5.4
+   */
+  public static CacheKey lazy(int expectedUpdateCount, Consumer<CacheKey> initializer) {
+    CacheKey cacheKey = new CacheKey(expectedUpdateCount);
+    cacheKey.initializer = initializer;
+    return cacheKey;
+  }
+
   public int getUpdateCount() {
+    initialize();
     return updateList.size();
   }
 
   public void update(Object object) {
+    initialize();
     int baseHashCode = object == null ? 1 : ArrayUtil.hashCode(object);
 
     count++;
-    checksum += baseHashCode;
-    baseHashCode *= count;
-
     /**
      * Object中的hashCode(）是— 个本地方法，通过随机数算法生成(O penJD K8 , 默认可以通过－XX:hashCode 修改）。
      * CacheKey 中的hashCode(）方法进行了重写，返回自己生成的hashCode。
-     * 为什么要用37 作为乘法因子呢？跟String 中的31 类似。
+     * 64位的多项式哈希，对要素的顺序敏感，不相等的key几乎不会有相同的校验值，所以很少需要逐个比较要素。
      * CacheKey 中的equals也进行了重写，比较CacheKey 是否相等。
      */
-    hashcode = multiplier * hashcode + baseHashCode;
+    checksum = (checksum + (baseHashCode & 0xFFFFFFFFL)) * MULTIPLIER + count;
 
     updateList.add(object);
   }
@@ -92,6 +113,16 @@ public class CacheKey implements Cloneable, Serializable {
     }
   }
 
+  /**
+   * Returns the first object the key was updated with, the id of the statement for the keys built by executors.
+   *
+   * @since 3.5.4
+   */
+  public Object getFirstUpdate() {
+    initialize();
+    return updateList.isEmpty() ? null : updateList.get(0);
+  }
+
   /**
    * 如果哈希值（乘法哈希）、校验值（加法哈希）、要素个数任何— 个不相等，都不是同一个查询，最后才循环比较要素，防止哈希碰撞。
    * @param object
@@ -107,10 +138,9 @@ public class CacheKey implements Cloneable, Serializable {
     }
 
     final CacheKey cacheKey = (CacheKey) object;
+    initialize();
+    cacheKey.initialize();
 
-    if (hashcode != cacheKey.hashcode) {
-      return false;
-    }
     if (checksum != cacheKey.checksum) {
       return false;
     }
@@ -130,13 +160,18 @@ public class CacheKey implements Cloneable, Serializable {
 
   @Override
   public int hashCode() {
-    return hashcode;
+    initialize();
+    // spreads the last elements over the low bits
+    long hash = checksum ^ (checksum >>> 33);
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    return (int) (hash ^ (hash >>> 32));
   }
 
   @Override
   public String toString() {
     StringJoiner returnValue = new StringJoiner(":");
-    returnValue.add(String.valueOf(hashcode));
+    returnValue.add(String.valueOf(hashCode()));
     returnValue.add(String.valueOf(checksum));
     updateList.stream().map(ArrayUtil::toString).forEach(returnValue::add);
     return returnValue.toString();
@@ -144,9 +179,35 @@ public class CacheKey implements Cloneable, Serializable {
 
   @Override
   public CacheKey clone() throws CloneNotSupportedException {
+    initialize();
     CacheKey clonedCacheKey = (CacheKey) super.clone();
     clonedCacheKey.updateList = new ArrayList<>(updateList);
     return clonedCacheKey;
   }
 
+  private void initialize() {
+    if (initializer != null) {
+      Consumer<CacheKey> pending = initializer;
+      initializer = null;
+      pending.accept(this);
+    }
+  }
+
+  private void writeObject(ObjectOutputStream stream) throws IOException {
+    initialize();
+    stream.defaultWriteObject();
+  }
+
+  private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+    stream.defaultReadObject();
+    // the hash codes of enums, classes and other identity hashed elements change from a JVM to another
+    List<Object> elements = updateList;
+    checksum = 0;
+    count = 0;
+    updateList = new ArrayList<>(elements.size());
+    for (Object element : elements) {
+      update(element);
+    }
+  }
+
 }
@@ -0,0 +1,189 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the tables a SQL statement reads or writes, the ones following {@code FROM}, {@code JOIN}, {@code INTO},
+ * {@code UPDATE}, {@code USING} and {@code TRUNCATE TABLE}. Names are compared lower cased and without schema
+ * or quotes.
+ * <p>
+ * Tables used through views, functions or procedures cannot be seen, statements using them should declare
+ * their tables.
+ */
+public final class SqlTableParser {
+
+  private static final int MAX_CACHED_STATEMENTS = 4096;
+  // least recently used statements are dropped first, so the statements run often stay parsed
+  private static final Map<String, Set<String>> cache = Collections.synchronizedMap(
+      new LinkedHashMap<String, Set<String>>(256, .75F, true) {
+        private static final long serialVersionUID = 4267176411845948333L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+          return size() > MAX_CACHED_STATEMENTS;
+        }
+      });
+  private static final Set<String> NONE = Collections.emptySet();
+
+  private static final Set<String> TABLE_KEYWORDS = new HashSet<>(Arrays.asList("from", "join", "into", "update", "using"));
+  private static final Set<String> RESERVED_WORDS = new HashSet<>(Arrays.asList(
+      "select", "where", "set", "values", "value", "on", "using", "join", "inner", "left", "right", "full", "outer", "cross",
+      "natural", "straight_join", "group", "order", "having", "limit", "offset", "fetch", "for", "union", "except",
+      "intersect", "minus", "window", "returning", "lateral", "only", "ignore", "low_priority", "as", "with", "when",
+      "partition", "start", "connect", "default", "of", "nowait", "skip", "into", "from", "update", "delete", "insert", "merge", "table"));
+
+  private SqlTableParser() {
+    // Prevent Instantiation of Static Class
+  }
+
+  /**
+   * Returns the tables of the statement, or {@code null} when none could be found (e.g. a procedure call).
+   */
+  public static Set<String> parse(String sql) {
+    Set<String> tables = cache.get(sql);
+    if (tables == null) {
+      tables = parseTables(sql);
+      cache.put(sql, tables);
+    }
+    return tables.isEmpty() ? null : tables;
+  }
+
+  /**
+   * Lower cases the name and removes its schema and quotes.
+   */
+  public static String normalize(String table) {
+    String name = table.trim();
+    int dot = lastUnquotedDot(name);
+    if (dot >= 0) {
+      name = name.substring(dot + 1);
+    }
+    if (name.length() > 1 && isQuote(name.charAt(0))) {
+      name = name.substring(1, name.length() - 1);
+    }
+    return name.toLowerCase(Locale.ENGLISH);
+  }
+
+  private static Set<String> parseTables(String sql) {
+    List<String> tokens = tokenize(sql);
+    Set<String> tables = new LinkedHashSet<>();
+    for (int i = 0; i < tokens.size(); i++) {
+      String keyword = tokens.get(i).toLowerCase(Locale.ENGLISH);
+      if ("truncate".equals(keyword)) {
+        int j = i + 1 < tokens.size() && "table".equalsIgnoreCase(tokens.get(i + 1)) ? i + 2 : i + 1;
+        if (j < tokens.size() && isName(tokens.get(j))) {
+          tables.add(normalize(tokens.get(j)));
+        }
+      } else if (TABLE_KEYWORDS.contains(keyword)) {
+        // into and update are followed by their column list, from, join and using by a function call
+        boolean allowsParenthesis = "into".equals(keyword) || "update".equals(keyword);
+        int j = i + 1;
+        while (j < tokens.size() && isName(tokens.get(j))) {
+          String table = tokens.get(j++);
+          if (allowsParenthesis || j >= tokens.size() || !"(".equals(tokens.get(j))) {
+            tables.add(normalize(table));
+          }
+          if (j < tokens.size() && "as".equalsIgnoreCase(tokens.get(j))) {
+            j++;
+          }
+          if (j < tokens.size() && isName(tokens.get(j))) {
+            j++;
+          }
+          if (j >= tokens.size() || !",".equals(tokens.get(j)) || !"from".equals(keyword)) {
+            break;
+          }
+          j++;
+        }
+      }
+    }
+    return tables.isEmpty() ? NONE : Collections.unmodifiableSet(tables);
+  }
+
+  private static boolean isName(String token) {
+    char first = token.charAt(0);
+    return isQuote(first) || ((Character.isLetter(first) || first == '_')
+        && !RESERVED_WORDS.contains(token.toLowerCase(Locale.ENGLISH)));
+  }
+
+  private static List<String> tokenize(String sql) {
+    List<String> tokens = new ArrayList<>();
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        i = skipTo(sql, i + 2, "\n");
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        i = skipTo(sql, i + 2, "*/");
+      } else if (c == '\'') {
+        i = skipTo(sql, i + 1, "'");
+      } else if (isQuote(c) || Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#') {
+        // a name, possibly qualified and quoted like "schema"."table"
+        int start = i;
+        while (i < length) {
+          char current = sql.charAt(i);
+          if (isQuote(current)) {
+            i = skipTo(sql, i + 1, current == '[' ? "]" : String.valueOf(current));
+          } else if (Character.isLetterOrDigit(current) || current == '_' || current == '$' || current == '#' || current == '.') {
+            i++;
+          } else {
+            break;
+          }
+        }
+        tokens.add(sql.substring(start, i));
+      } else {
+        tokens.add(String.valueOf(c));
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  private static int skipTo(String sql, int from, String end) {
+    int index = sql.indexOf(end, from);
+    return index < 0 ? sql.length() : index + end.length();
+  }
+
+  private static boolean isQuote(char c) {
+    return c == '"' || c == '`' || c == '[';
+  }
+
+  private static int lastUnquotedDot(String name) {
+    boolean quoted = false;
+    for (int i = name.length() - 1; i >= 0; i--) {
+      char c = name.charAt(i);
+      if (c == '"' || c == '`' || c == '[' || c == ']') {
+        quoted = !quoted;
+      } else if (c == '.' && !quoted) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+}
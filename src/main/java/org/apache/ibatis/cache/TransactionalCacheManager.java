@@ -16,8 +16,12 @@
 package org.apache.ibatis.cache;
 
 import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.session.Configuration;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -26,11 +30,44 @@ import java.util.Map;
 public class TransactionalCacheManager {
 
   private final Map<Cache, TransactionalCache> transactionalCaches = new HashMap<>();
+  private final CacheInvalidationBus invalidationBus;
+  private final Configuration configuration;
+
+  public TransactionalCacheManager() {
+    this((CacheInvalidationBus) null);
+  }
+
+  /**
+   * @param invalidationBus publishes the evictions of each commit to the other nodes, may be {@code null}
+   * @since 3.5.4
+   */
+  public TransactionalCacheManager(CacheInvalidationBus invalidationBus) {
+    this.invalidationBus = invalidationBus;
+    this.configuration = null;
+  }
+
+  /**
+   * Stages the entries of each cache as the configuration says, see
+   * {@link TransactionalCache#TransactionalCache(Cache, boolean, int, CacheCommitApplier)}.
+   *
+   * @since 3.5.4
+   */
+  public TransactionalCacheManager(Configuration configuration) {
+    this.invalidationBus = configuration.getCacheInvalidationBus();
+    this.configuration = configuration;
+  }
 
   public void clear(Cache cache) {
     getTransactionalCache(cache).clear();
   }
 
+  /**
+   * Evicts the entries read from these tables on commit, see {@link TransactionalCache#invalidate(Collection)}.
+   */
+  public void invalidate(Cache cache, Collection<String> tables) {
+    getTransactionalCache(cache).invalidate(tables);
+  }
+
   public Object getObject(Cache cache, CacheKey key) {
     return getTransactionalCache(cache).getObject(key);
   }
@@ -40,10 +77,27 @@ public class TransactionalCacheManager {
     getTransactionalCache(cache).putObject(key, value);
   }
 
+  public void putObject(Cache cache, CacheKey key, Object value, Collection<String> tables) {
+    getTransactionalCache(cache).putObject(key, value, tables);
+  }
+
   public void commit() {
+    List<CacheInvalidation> invalidations = null;
     for (TransactionalCache txCache : transactionalCaches.values()) {
+      if (invalidationBus != null) {
+        CacheInvalidation invalidation = txCache.getCommitInvalidation();
+        if (invalidation != null) {
+          if (invalidations == null) {
+            invalidations = new ArrayList<>();
+          }
+          invalidations.add(invalidation);
+        }
+      }
       txCache.commit();
     }
+    if (invalidations != null) {
+      invalidationBus.publish(invalidations);
+    }
   }
 
   public void rollback() {
@@ -53,7 +107,16 @@ public class TransactionalCacheManager {
   }
 
   private TransactionalCache getTransactionalCache(Cache cache) {
-    return transactionalCaches.computeIfAbsent(cache, TransactionalCache::new);
+    return transactionalCaches.computeIfAbsent(cache, this::newTransactionalCache);
+  }
+
+  private TransactionalCache newTransactionalCache(Cache cache) {
+    if (configuration == null) {
+      return new TransactionalCache(cache);
+    }
+    boolean blocking = !configuration.isNonBlockingCache(cache.getId());
+    return new TransactionalCache(cache, blocking, configuration.getTransactionalCacheStagingLimit(),
+        configuration.isTransactionalCacheAsyncCommit() && !blocking ? configuration.getCacheCommitApplier() : null);
   }
 
 }
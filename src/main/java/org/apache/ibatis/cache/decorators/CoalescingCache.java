@@ -0,0 +1,174 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Blocking decorator that coalesces concurrent misses of a key into a single load.
+ * <p>
+ * The first thread missing a key registers an in-flight load and gets {@code null}, so it queries the database.
+ * The other threads missing the key wait for the load to complete and read the cache again. The load completes
+ * when any thread puts or removes the key, and is then forgotten, so nothing is retained for keys that are no
+ * longer loaded. A waiter takes the load over when its loader thread is dead or when the {@code timeout}
+ * (in milliseconds, unbounded by default) expires, instead of waiting for the loader to release it.
+ * <p>
+ * Unlike {@link BlockingCache}, {@link #removeObject(Object)} removes the key from the delegate as well.
+ */
+public class CoalescingCache implements Cache {
+
+  private static final Log log = LogFactory.getLog(CoalescingCache.class);
+
+  // how often a waiter without timeout checks that the loader is still alive
+  private static final long LIVENESS_CHECK_INTERVAL = 1000L;
+
+  private final Cache delegate;
+  private final ConcurrentHashMap<Object, Load> loads;
+  private long timeout;
+
+  public CoalescingCache(Cache delegate) {
+    this.delegate = delegate;
+    this.loads = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    try {
+      delegate.putObject(key, value);
+    } finally {
+      complete(key);
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    while (true) {
+      Object value = delegate.getObject(key);
+      if (value != null) {
+        return value;
+      }
+      Load load = new Load();
+      Load current = loads.putIfAbsent(key, load);
+      if (current == null) {
+        // the previous load may have completed since the miss
+        value = delegate.getObject(key);
+        if (value != null) {
+          complete(key);
+        }
+        return value;
+      }
+      if (current.loader == Thread.currentThread()) {
+        return null;
+      }
+      await(key, current);
+    }
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    try {
+      return delegate.removeObject(key);
+    } finally {
+      complete(key);
+    }
+  }
+
+  @Override
+  public void clear() {
+    delegate.clear();
+  }
+
+  /**
+   * Returns the number of keys being loaded.
+   */
+  public int getLoadCount() {
+    return loads.size();
+  }
+
+  public long getTimeout() {
+    return timeout;
+  }
+
+  public void setTimeout(long timeout) {
+    this.timeout = timeout;
+  }
+
+  private void complete(Object key) {
+    Load load = loads.remove(key);
+    if (load != null) {
+      load.done.complete(null);
+    }
+  }
+
+  private void await(Object key, Load load) {
+    final long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0L;
+    while (true) {
+      long wait = LIVENESS_CHECK_INTERVAL;
+      if (timeout > 0) {
+        wait = Math.min(wait, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+      }
+      try {
+        if (wait > 0) {
+          load.done.get(wait, TimeUnit.MILLISECONDS);
+          return;
+        }
+      } catch (TimeoutException e) {
+        if (load.loader.isAlive()) {
+          continue;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CacheException("Got interrupted while waiting for the key " + key + " at the cache " + delegate.getId(), e);
+      } catch (ExecutionException e) {
+        // never completed exceptionally
+        return;
+      }
+      // the loader timed out or died without putting nor removing the key
+      if (loads.remove(key, load)) {
+        load.done.complete(null);
+        if (log.isDebugEnabled()) {
+          log.debug("Abandoned the load of the key " + key + " at the cache " + delegate.getId() + " by " + load.loader.getName());
+        }
+      }
+      return;
+    }
+  }
+
+  private static class Load {
+    private final Thread loader = Thread.currentThread();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+  }
+
+}
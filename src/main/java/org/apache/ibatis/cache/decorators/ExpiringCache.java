@@ -0,0 +1,224 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * Expires each entry on its own after a time to live, shortened by a random jitter so the entries put together
+ * do not all expire together.
+ * <p>
+ * With a refresh ahead factor, the first hit of an entry older than this fraction of its time to live
+ * still returns the entry and requests its reload. The caller polls the request with {@link #pollRefresh(Object)}
+ * and reloads the entry within {@link Refresh#run(Runnable)}: the reload misses the entry while the other
+ * threads keep on reading it, and its result is dropped when the cache was cleared or an entry was
+ * removed from it in the meantime. A caller not reloading the entry must {@link Refresh#cancel()} the request,
+ * so that a later hit requests it again.
+ */
+public class ExpiringCache implements Cache {
+
+  private static final ThreadLocal<Refresh> requestedRefresh = new ThreadLocal<>();
+  private static final ThreadLocal<Refresh> runningRefresh = new ThreadLocal<>();
+
+  private final Cache delegate;
+  private final AtomicLong invalidations = new AtomicLong();
+  private long timeToLive;
+  private double timeToLiveJitter;
+  private double refreshAhead;
+
+  public ExpiringCache(Cache delegate) {
+    this.delegate = delegate;
+    this.timeToLive = TimeUnit.HOURS.toMillis(1);
+    this.timeToLiveJitter = 0.1;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    Refresh refresh = runningRefresh.get();
+    if (refresh != null && refresh.cache == this && refresh.invalidations != invalidations.get()) {
+      // the reload may have read the rows before they were modified
+      return;
+    }
+    if (value == null) {
+      delegate.putObject(key, null);
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long entryTimeToLive = timeToLive - (long) (timeToLive * timeToLiveJitter * ThreadLocalRandom.current().nextDouble());
+    long refreshAt = refreshAhead > 0 ? now + (long) (entryTimeToLive * refreshAhead) : Long.MAX_VALUE;
+    delegate.putObject(key, new Entry(value, now + entryTimeToLive, refreshAt));
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object stored = delegate.getObject(key);
+    if (!(stored instanceof Entry)) {
+      return stored;
+    }
+    Refresh refresh = runningRefresh.get();
+    if (refresh != null && refresh.cache == this && refresh.key.equals(key)) {
+      return null;
+    }
+    Entry entry = (Entry) stored;
+    long now = System.currentTimeMillis();
+    if (now >= entry.expiresAt) {
+      return null;
+    }
+    if (now >= entry.refreshAt && entry.refreshing.compareAndSet(false, true)) {
+      requestedRefresh.set(new Refresh(this, key, invalidations.get(), entry));
+    }
+    return entry.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    invalidations.incrementAndGet();
+    Object stored = delegate.removeObject(key);
+    return stored instanceof Entry ? ((Entry) stored).value : stored;
+  }
+
+  @Override
+  public void clear() {
+    invalidations.incrementAndGet();
+    delegate.clear();
+  }
+
+  public long getTimeToLive() {
+    return timeToLive;
+  }
+
+  /**
+   * Sets the time to live of the entries in milliseconds.
+   */
+  public void setTimeToLive(long timeToLive) {
+    this.timeToLive = timeToLive;
+  }
+
+  public double getTimeToLiveJitter() {
+    return timeToLiveJitter;
+  }
+
+  /**
+   * Sets the largest fraction of the time to live randomly taken off each entry, 0.1 by default.
+   */
+  public void setTimeToLiveJitter(double timeToLiveJitter) {
+    if (timeToLiveJitter < 0 || timeToLiveJitter >= 1) {
+      throw new IllegalArgumentException("The time to live jitter must be between 0 and 1 but was " + timeToLiveJitter);
+    }
+    this.timeToLiveJitter = timeToLiveJitter;
+  }
+
+  public double getRefreshAhead() {
+    return refreshAhead;
+  }
+
+  /**
+   * Sets the fraction of the time to live after which a hit requests a reload, 0 (never) by default.
+   */
+  public void setRefreshAhead(double refreshAhead) {
+    if (refreshAhead < 0 || refreshAhead >= 1) {
+      throw new IllegalArgumentException("The refresh ahead factor must be between 0 and 1 but was " + refreshAhead);
+    }
+    this.refreshAhead = refreshAhead;
+  }
+
+  /**
+   * Returns and forgets the reload requested by the last hit of the current thread, if it was a hit of this key.
+   * A request of another key is cancelled.
+   */
+  public static Refresh pollRefresh(Object key) {
+    Refresh refresh = requestedRefresh.get();
+    if (refresh == null) {
+      return null;
+    }
+    requestedRefresh.remove();
+    if (!refresh.key.equals(key)) {
+      refresh.cancel();
+      return null;
+    }
+    return refresh;
+  }
+
+  /**
+   * Returns whether the current thread is reloading an entry, its puts must not be deferred to another thread.
+   */
+  public static boolean isRefreshing() {
+    return runningRefresh.get() != null;
+  }
+
+  public static final class Refresh {
+
+    private final ExpiringCache cache;
+    private final Object key;
+    private final long invalidations;
+    private final Entry entry;
+
+    private Refresh(ExpiringCache cache, Object key, long invalidations, Entry entry) {
+      this.cache = cache;
+      this.key = key;
+      this.invalidations = invalidations;
+      this.entry = entry;
+    }
+
+    /**
+     * Gives up the reload, the next hit of the entry requests it again.
+     */
+    public void cancel() {
+      entry.refreshing.set(false);
+    }
+
+    /**
+     * Runs the reload of the entry on the current thread.
+     */
+    public void run(Runnable reload) {
+      runningRefresh.set(this);
+      try {
+        reload.run();
+      } finally {
+        runningRefresh.remove();
+      }
+    }
+  }
+
+  private static class Entry {
+    private final Object value;
+    private final long expiresAt;
+    private final long refreshAt;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private Entry(Object value, long expiresAt, long refreshAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+      this.refreshAt = refreshAt;
+    }
+  }
+
+}
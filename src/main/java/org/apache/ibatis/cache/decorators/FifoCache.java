@@ -19,6 +19,7 @@ import java.util.Deque;
 import java.util.LinkedList;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
 
 /**
  * FIFO (first in, first out) cache decorator.
@@ -30,6 +31,7 @@ public class FifoCache implements Cache {
   private final Cache delegate;
   private final Deque<Object> keyList;
   private int size;
+  private CacheMetrics metrics;
 
   public FifoCache(Cache delegate) {
     this.delegate = delegate;
@@ -51,6 +53,15 @@ public class FifoCache implements Cache {
     this.size = size;
   }
 
+  /**
+   * Records the entries evicted.
+   *
+   * @since 3.5.4
+   */
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   @Override
   public void putObject(Object key, Object value) {
     cycleKeyList(key);
@@ -78,6 +89,9 @@ public class FifoCache implements Cache {
     if (keyList.size() > size) {
       Object oldestKey = keyList.removeFirst();
       delegate.removeObject(oldestKey);
+      if (metrics != null) {
+        metrics.recordEvictions(1);
+      }
     }
   }
 
@@ -19,6 +19,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
 
 /**
  * Lru (least recently used) cache decorator.
@@ -30,6 +31,7 @@ public class LruCache implements Cache {
   private final Cache delegate;
   private Map<Object, Object> keyMap;
   private Object eldestKey;
+  private CacheMetrics metrics;
 
   public LruCache(Cache delegate) {
     this.delegate = delegate;
@@ -61,6 +63,15 @@ public class LruCache implements Cache {
     };
   }
 
+  /**
+   * Records the entries evicted.
+   *
+   * @since 3.5.4
+   */
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
   @Override
   public void putObject(Object key, Object value) {
     delegate.putObject(key, value);
@@ -89,6 +100,9 @@ public class LruCache implements Cache {
     if (eldestKey != null) {
       delegate.removeObject(eldestKey);
       eldestKey = null;
+      if (metrics != null) {
+        metrics.recordEvictions(1);
+      }
     }
   }
 
@@ -0,0 +1,109 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.cache.metrics.CacheStats;
+import org.apache.ibatis.executor.resultset.CompactRows;
+
+/**
+ * Counts the hits, misses, puts and removals of a cache, see {@link CacheStats}. The eviction policies below
+ * record their evictions in the same {@link CacheMetrics}.
+ * <p>
+ * Unlike {@link LoggingCache}, the counters are striped and do not need the lock of the cache,
+ * and nothing is computed until the stats are read.
+ */
+public class MetricsCache implements Cache {
+
+  private final Cache delegate;
+  private final CacheMetrics metrics;
+
+  public MetricsCache(Cache delegate) {
+    this(delegate, new CacheMetrics(delegate.getId()));
+  }
+
+  public MetricsCache(Cache delegate, CacheMetrics metrics) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value == null) {
+      // releases the lock taken on a miss by a blocking cache below, does not cache anything
+      delegate.putObject(key, null);
+      return;
+    }
+    delegate.putObject(key, value);
+    metrics.recordPut();
+    if (value instanceof CompactRows) {
+      metrics.recordBytes(((CompactRows) value).getDataSize());
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    if (value == null) {
+      metrics.recordMiss();
+    } else {
+      metrics.recordHit();
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    metrics.recordRemoval();
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    metrics.recordClear();
+    delegate.clear();
+  }
+
+  public CacheMetrics getMetrics() {
+    return metrics;
+  }
+
+  public CacheStats getStats() {
+    return metrics.snapshot(delegate.getSize());
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
@@ -0,0 +1,302 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Keeps the most recently used entries of a remote cache in a small local tier, so hits of hot entries
+ * neither go over the network nor deserialize anything.
+ * <p>
+ * Reads go through the local tier to the remote cache and fill the local tier with what they find. Every entry
+ * of the local tier is stamped with the version of the cache it was stored at: a put, a remove or a clear moves
+ * the version on, and a remote read is not kept locally when a write happened while it was running, nor is an
+ * entry used when it is older than the last clear. Removes and clears invalidate the local tier before they reach
+ * the remote cache, so the writes of this node, and the invalidations other nodes publish to it, are seen at once.
+ * A time to live bounds how long the local tier may serve entries the remote cache no longer holds.
+ * A {@code null} put, which releases a key missed by a session, goes straight to the remote cache.
+ * <p>
+ * With the {@link WritePolicy#WRITE_BEHIND write behind} policy, puts only reach the local tier and are written
+ * to the remote cache in batches by a background thread, the last put of a key winning over the previous ones.
+ * <p>
+ * When given a serializer, the local tier stores copies of the values and returns a copy on each hit,
+ * so callers may modify what they get as they may with a read-write cache.
+ */
+public class NearCache implements Cache {
+
+  private static final Log log = LogFactory.getLog(NearCache.class);
+
+  private static final ScheduledThreadPoolExecutor writer = newWriter();
+
+  private final Cache delegate;
+  private final CacheSerializer serializer;
+  private final Map<Object, LocalEntry> local;
+  private final AtomicLong version = new AtomicLong();
+  private volatile long clearedVersion;
+  private final Map<Object, Object> pendingWrites = new ConcurrentHashMap<>();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  private final Object writeLock = new Object();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private long localTimeToLive;
+  private WritePolicy writePolicy = WritePolicy.WRITE_THROUGH;
+  private long writeBehindDelay = 100;
+
+  /**
+   * @param size
+   *          the number of entries the local tier holds
+   * @param serializer
+   *          copies the values stored and returned by the local tier, or {@code null} to share them
+   */
+  public NearCache(Cache delegate, final int size, CacheSerializer serializer) {
+    if (size < 1) {
+      throw new IllegalArgumentException("The near cache size must be greater than zero but was " + size);
+    }
+    this.delegate = delegate;
+    this.serializer = serializer;
+    this.local = new LinkedHashMap<Object, LocalEntry>(Math.min(size, 1024), .75F, true) {
+      private static final long serialVersionUID = 4267176411845948333L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, LocalEntry> eldest) {
+        return size() > size;
+      }
+    };
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    if (value == null) {
+      // releases the key a session missed, a blocking cache below waits for it
+      delegate.putObject(key, null);
+      return;
+    }
+    Object localValue = copy(value);
+    long stamp = version.incrementAndGet();
+    storeLocally(key, localValue, stamp);
+    if (writePolicy == WritePolicy.WRITE_BEHIND) {
+      pendingWrites.put(key, localValue);
+      scheduleFlush();
+    } else {
+      delegate.putObject(key, value);
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    LocalEntry entry;
+    synchronized (local) {
+      entry = local.get(key);
+    }
+    if (entry != null) {
+      if (entry.version >= clearedVersion && System.currentTimeMillis() < entry.expiresAt) {
+        hits.incrementAndGet();
+        return copy(entry.value);
+      }
+      synchronized (local) {
+        local.remove(key, entry);
+      }
+    }
+    misses.incrementAndGet();
+    Object pending = pendingWrites.get(key);
+    if (pending != null) {
+      return copy(pending);
+    }
+    long stamp = version.get();
+    Object value = delegate.getObject(key);
+    if (value != null && version.get() == stamp) {
+      storeLocally(key, copy(value), stamp);
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    version.incrementAndGet();
+    synchronized (local) {
+      local.remove(key);
+    }
+    synchronized (writeLock) {
+      pendingWrites.remove(key);
+      return delegate.removeObject(key);
+    }
+  }
+
+  @Override
+  public void clear() {
+    clearedVersion = version.incrementAndGet();
+    synchronized (local) {
+      local.clear();
+    }
+    synchronized (writeLock) {
+      pendingWrites.clear();
+      delegate.clear();
+    }
+  }
+
+  /**
+   * Writes the pending puts to the remote cache on the current thread.
+   */
+  public void flushPendingWrites() {
+    for (Object key : pendingWrites.keySet()) {
+      synchronized (writeLock) {
+        // a remove or a clear may have dropped it in the meantime
+        Object value = pendingWrites.remove(key);
+        if (value != null) {
+          try {
+            delegate.putObject(key, value);
+          } catch (RuntimeException e) {
+            log.warn("Error writing an entry behind to the cache " + getId() + ", it is only cached locally.  Cause: " + e);
+          }
+        }
+      }
+    }
+  }
+
+  public int getPendingWriteCount() {
+    return pendingWrites.size();
+  }
+
+  public int getLocalSize() {
+    synchronized (local) {
+      return local.size();
+    }
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getLocalTimeToLive() {
+    return localTimeToLive;
+  }
+
+  /**
+   * Sets how long in milliseconds the local tier serves an entry, 0 (until it is evicted or invalidated) by default.
+   */
+  public void setLocalTimeToLive(long localTimeToLive) {
+    if (localTimeToLive < 0) {
+      throw new IllegalArgumentException("The near cache time to live must not be negative but was " + localTimeToLive);
+    }
+    this.localTimeToLive = localTimeToLive;
+  }
+
+  public WritePolicy getWritePolicy() {
+    return writePolicy;
+  }
+
+  public void setWritePolicy(WritePolicy writePolicy) {
+    this.writePolicy = writePolicy == null ? WritePolicy.WRITE_THROUGH : writePolicy;
+  }
+
+  public long getWriteBehindDelay() {
+    return writeBehindDelay;
+  }
+
+  /**
+   * Sets how long in milliseconds puts are gathered before being written behind, 100 by default.
+   */
+  public void setWriteBehindDelay(long writeBehindDelay) {
+    this.writeBehindDelay = writeBehindDelay;
+  }
+
+  private void storeLocally(Object key, Object value, long stamp) {
+    long expiresAt = localTimeToLive > 0 ? System.currentTimeMillis() + localTimeToLive : Long.MAX_VALUE;
+    synchronized (local) {
+      LocalEntry current = local.get(key);
+      // a concurrent put may have stored a newer value already
+      if (current == null || current.version <= stamp) {
+        local.put(key, new LocalEntry(value, stamp, expiresAt));
+      }
+    }
+  }
+
+  private void scheduleFlush() {
+    if (flushScheduled.compareAndSet(false, true)) {
+      writer.schedule(() -> {
+        flushScheduled.set(false);
+        flushPendingWrites();
+      }, writeBehindDelay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private Object copy(Object value) {
+    return serializer == null || value == null ? value : serializer.copy(value);
+  }
+
+  private static ScheduledThreadPoolExecutor newWriter() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "mybatis-near-cache-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.setKeepAliveTime(60L, TimeUnit.SECONDS);
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * How the puts reach the remote cache.
+   */
+  public enum WritePolicy {
+    /**
+     * Puts are written to the remote cache by the thread putting them.
+     */
+    WRITE_THROUGH,
+    /**
+     * Puts are written to the remote cache in batches by a background thread.
+     */
+    WRITE_BEHIND
+  }
+
+  private static class LocalEntry {
+    private final Object value;
+    private final long version;
+    private final long expiresAt;
+
+    private LocalEntry(Object value, long version, long expiresAt) {
+      this.value = value;
+      this.version = version;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+}
@@ -15,17 +15,18 @@
  */
 package org.apache.ibatis.cache.decorators;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.Serializable;
 
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+import org.apache.ibatis.executor.resultset.CompactRows;
 import org.apache.ibatis.io.Resources;
 
 /**
@@ -34,9 +35,23 @@ import org.apache.ibatis.io.Resources;
 public class SerializedCache implements Cache {
 
   private final Cache delegate;
+  private final CacheSerializer serializer;
+  private final boolean copyOnRead;
+  private CacheMetrics metrics;
 
   public SerializedCache(Cache delegate) {
+    this(delegate, new JavaCacheSerializer(), false);
+  }
+
+  /**
+   * @param copyOnRead
+   *          stores a copy of each object instead of its bytes and returns a copy of it on every read
+   * @since 3.5.4
+   */
+  public SerializedCache(Cache delegate, CacheSerializer serializer, boolean copyOnRead) {
     this.delegate = delegate;
+    this.serializer = serializer;
+    this.copyOnRead = copyOnRead;
   }
 
   @Override
@@ -51,8 +66,21 @@ public class SerializedCache implements Cache {
 
   @Override
   public void putObject(Object key, Object object) {
-    if (object == null || object instanceof Serializable) {
-      delegate.putObject(key, serialize((Serializable) object));
+    if (object instanceof CompactRows) {
+      // immutable, each hit maps new objects from the rows
+      delegate.putObject(key, object);
+    } else if (object == null || object instanceof Serializable) {
+      if (metrics == null) {
+        delegate.putObject(key, copyOnRead ? serializer.copy(object) : serializer.serialize(object));
+        return;
+      }
+      long start = System.nanoTime();
+      Object value = copyOnRead ? serializer.copy(object) : serializer.serialize(object);
+      metrics.recordSerialization(System.nanoTime() - start);
+      if (value instanceof byte[]) {
+        metrics.recordBytes(((byte[]) value).length);
+      }
+      delegate.putObject(key, value);
     } else {
       throw new CacheException("SharedCache failed to make a copy of a non-serializable object: " + object);
     }
@@ -61,7 +89,25 @@ public class SerializedCache implements Cache {
   @Override
   public Object getObject(Object key) {
     Object object = delegate.getObject(key);
-    return object == null ? null : deserialize((byte[]) object);
+    if (object == null || object instanceof CompactRows) {
+      return object;
+    }
+    if (metrics == null) {
+      return copyOnRead ? serializer.copy(object) : serializer.deserialize((byte[]) object);
+    }
+    long start = System.nanoTime();
+    Object value = copyOnRead ? serializer.copy(object) : serializer.deserialize((byte[]) object);
+    metrics.recordSerialization(System.nanoTime() - start);
+    return value;
+  }
+
+  /**
+   * Records the time spent serializing and deserializing values, and their sizes.
+   *
+   * @since 3.5.4
+   */
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
   }
 
   @Override
@@ -84,28 +130,6 @@ public class SerializedCache implements Cache {
     return delegate.equals(obj);
   }
 
-  private byte[] serialize(Serializable value) {
-    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
-         ObjectOutputStream oos = new ObjectOutputStream(bos)) {
-      oos.writeObject(value);
-      oos.flush();
-      return bos.toByteArray();
-    } catch (Exception e) {
-      throw new CacheException("Error serializing object.  Cause: " + e, e);
-    }
-  }
-
-  private Serializable deserialize(byte[] value) {
-    Serializable result;
-    try (ByteArrayInputStream bis = new ByteArrayInputStream(value);
-         ObjectInputStream ois = new CustomObjectInputStream(bis)) {
-      result = (Serializable) ois.readObject();
-    } catch (Exception e) {
-      throw new CacheException("Error deserializing object.  Cause: " + e, e);
-    }
-    return result;
-  }
-
   public static class CustomObjectInputStream extends ObjectInputStream {
 
     public CustomObjectInputStream(InputStream in) throws IOException {
@@ -0,0 +1,238 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.snapshot.SnapshotFile;
+
+/**
+ * Saves the entries of a cache to a file and restores them lazily from a {@link SnapshotFile}: an entry missed by
+ * the cache is looked up in the snapshot and put back in the cache when found. Any put, remove or clear wins over
+ * the snapshot.
+ * <p>
+ * The cache below cannot list its entries, so this decorator remembers the keys of the most recent puts, up to
+ * the size of the cache, and only those are saved, along with the entries of the snapshot never read.
+ */
+public class SnapshotCache implements Cache {
+
+  private final Cache delegate;
+  private final CacheSerializer serializer;
+  private final Map<Object, Object> keys;
+  private final AtomicLong restoredCount = new AtomicLong();
+  private volatile SnapshotFile snapshot;
+  private Consumer<Object> restoreListener;
+  private String snapshotVersion = "";
+
+  public SnapshotCache(Cache delegate, CacheSerializer serializer, final int maxEntries) {
+    this.delegate = delegate;
+    this.serializer = serializer;
+    this.keys = new LinkedHashMap<Object, Object>(Math.min(maxEntries, 1024), .75F, false) {
+      private static final long serialVersionUID = 2795648375924616284L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    track(key);
+    SnapshotFile current = snapshot;
+    if (current != null) {
+      current.remove(key);
+    }
+    delegate.putObject(key, value);
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    Object value = delegate.getObject(key);
+    SnapshotFile current = snapshot;
+    if (value != null || current == null) {
+      return value;
+    }
+    value = current.read(key);
+    if (value == null) {
+      return null;
+    }
+    // concurrent readers may restore it as well before it is removed, they get equal values
+    delegate.putObject(key, value);
+    current.remove(key);
+    track(key);
+    restoredCount.incrementAndGet();
+    if (restoreListener != null) {
+      restoreListener.accept(key);
+    }
+    return value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    synchronized (keys) {
+      keys.remove(key);
+    }
+    SnapshotFile current = snapshot;
+    if (current != null) {
+      current.remove(key);
+    }
+    return delegate.removeObject(key);
+  }
+
+  @Override
+  public void clear() {
+    synchronized (keys) {
+      keys.clear();
+    }
+    snapshot = null;
+    delegate.clear();
+  }
+
+  /**
+   * Restores the entries of the snapshot as they are missed.
+   */
+  public void restore(SnapshotFile snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Drops the entries of the snapshot not restored yet, e.g. when a write may have made them stale.
+   */
+  public void discardSnapshot() {
+    snapshot = null;
+  }
+
+  /**
+   * Restores at once the entries of the snapshot whose keys match.
+   *
+   * @return the number of entries restored
+   */
+  public int warmUp(Predicate<Object> keyFilter) {
+    final SnapshotFile current = snapshot;
+    if (current == null) {
+      return 0;
+    }
+    int restored = 0;
+    for (Object key : new ArrayList<>(current.keys())) {
+      if (keyFilter.test(key) && current.keys().contains(key)) {
+        if (getObject(key) != null) {
+          restored++;
+        } else {
+          releaseMiss(key);
+        }
+      }
+    }
+    return restored;
+  }
+
+  /**
+   * Saves the entries of the cache and the entries of the snapshot not restored yet.
+   *
+   * @return the number of entries saved
+   */
+  public int save(Path file, String stamp) throws IOException {
+    final List<Object> savedKeys;
+    synchronized (keys) {
+      savedKeys = new ArrayList<>(keys.keySet());
+    }
+    final Map<Object, Object> entries = new LinkedHashMap<>();
+    for (Object key : savedKeys) {
+      Object value = delegate.getObject(key);
+      if (value != null) {
+        entries.put(key, value);
+      } else {
+        releaseMiss(key);
+      }
+    }
+    final SnapshotFile current = snapshot;
+    if (current != null) {
+      for (Object key : new ArrayList<>(current.keys())) {
+        if (!entries.containsKey(key)) {
+          Object value = current.read(key);
+          if (value != null) {
+            entries.put(key, value);
+          }
+        }
+      }
+    }
+    return SnapshotFile.write(file, stamp, entries, serializer);
+  }
+
+  public long getRestoredCount() {
+    return restoredCount.get();
+  }
+
+  /**
+   * Returns the number of entries of the snapshot not restored yet.
+   */
+  public int getSnapshotSize() {
+    SnapshotFile current = snapshot;
+    return current == null ? 0 : current.size();
+  }
+
+  public String getSnapshotVersion() {
+    return snapshotVersion;
+  }
+
+  /**
+   * Sets a version saved with the snapshot, a snapshot saved with another version is not restored.
+   * Change it when the rows or the classes of the results change in a way the statements do not show.
+   */
+  public void setSnapshotVersion(String snapshotVersion) {
+    this.snapshotVersion = snapshotVersion == null ? "" : snapshotVersion;
+  }
+
+  /**
+   * Sets a listener called with the key of each entry restored, e.g. to index it.
+   */
+  public void setRestoreListener(Consumer<Object> restoreListener) {
+    this.restoreListener = restoreListener;
+  }
+
+  private void releaseMiss(Object key) {
+    // a blocking cache below waits for the thread that missed a key to put or remove it
+    delegate.removeObject(key);
+  }
+
+  private void track(Object key) {
+    synchronized (keys) {
+      keys.put(key, Boolean.TRUE);
+    }
+  }
+
+}
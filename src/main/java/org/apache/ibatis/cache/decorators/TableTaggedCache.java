@@ -0,0 +1,217 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.apache.ibatis.cache.Cache;
+
+/**
+ * Remembers the tables each entry was read from, so a write only evicts the entries of the tables it modified
+ * instead of clearing the whole cache. An entry put without tables depends on every table.
+ * <p>
+ * An entry found below without having been put through this cache, such as an entry another node put in a shared
+ * cache, is indexed as untagged when it is read.
+ * <p>
+ * The index is bounded: when it is full, the oldest indexed entry is removed from the cache as well, so no entry
+ * can outlive its tags.
+ */
+public class TableTaggedCache implements Cache {
+
+  private static final String ANY_TABLE = "*";
+
+  private final Cache delegate;
+  private final int maxIndexedEntries;
+  private final Map<Object, Collection<String>> tablesByKey = new LinkedHashMap<>();
+  private final Map<String, Set<Object>> keysByTable = new HashMap<>();
+  private Consumer<Collection<String>> invalidationListener;
+
+  public TableTaggedCache(Cache delegate, int maxIndexedEntries) {
+    this.delegate = delegate;
+    this.maxIndexedEntries = maxIndexedEntries;
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return delegate.getSize();
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    putObject(key, value, null);
+  }
+
+  public synchronized void putObject(Object key, Object value, Collection<String> tables) {
+    unindex(key);
+    Collection<String> tags = tables == null || tables.isEmpty() ? null : tables;
+    tablesByKey.put(key, tags);
+    if (tags == null) {
+      keysByTable.computeIfAbsent(ANY_TABLE, k -> new HashSet<>()).add(key);
+    } else {
+      for (String table : tags) {
+        keysByTable.computeIfAbsent(table, k -> new HashSet<>()).add(key);
+      }
+    }
+    delegate.putObject(key, value);
+    evictBeyondBound();
+  }
+
+  /**
+   * Indexes an entry put in the cache below without its tables, such as an entry restored from a snapshot,
+   * so that any table invalidation evicts it.
+   */
+  public synchronized void indexUntagged(Object key) {
+    if (!tablesByKey.containsKey(key)) {
+      tablesByKey.put(key, null);
+      keysByTable.computeIfAbsent(ANY_TABLE, k -> new HashSet<>()).add(key);
+      evictBeyondBound();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    // not synchronized, a blocking cache below may wait for another session to put the entry
+    Object value = delegate.getObject(key);
+    if (value != null) {
+      // a near tier keeps its copy of an entry another node put until this cache removes it
+      indexUntagged(key);
+    }
+    return value;
+  }
+
+  @Override
+  public synchronized Object removeObject(Object key) {
+    unindex(key);
+    return delegate.removeObject(key);
+  }
+
+  /**
+   * Evicts the entries read from any of these tables, and the entries whose tables are unknown.
+   * Unknown tables ({@code null}) clear the cache.
+   */
+  public synchronized void invalidate(Collection<String> tables) {
+    if (tables == null || tables.isEmpty()) {
+      clear();
+      return;
+    }
+    List<Object> keys = new ArrayList<>();
+    for (String table : tables) {
+      Set<Object> tableKeys = keysByTable.get(table);
+      if (tableKeys != null) {
+        keys.addAll(tableKeys);
+      }
+    }
+    Set<Object> untaggedKeys = keysByTable.get(ANY_TABLE);
+    if (untaggedKeys != null) {
+      keys.addAll(untaggedKeys);
+    }
+    for (Object key : keys) {
+      if (tablesByKey.containsKey(key)) {
+        unindex(key);
+        delegate.removeObject(key);
+      }
+    }
+    if (invalidationListener != null) {
+      invalidationListener.accept(tables);
+    }
+  }
+
+  /**
+   * Sets a listener called with the tables of each invalidation, e.g. to drop the entries held below that are not
+   * indexed yet.
+   */
+  public void setInvalidationListener(Consumer<Collection<String>> invalidationListener) {
+    this.invalidationListener = invalidationListener;
+  }
+
+  /**
+   * Returns whether an invalidation of these tables would evict the entry of this key.
+   */
+  public synchronized boolean isInvalidatedBy(Object key, Collection<String> tables) {
+    if (!tablesByKey.containsKey(key)) {
+      // not indexed, its tables are unknown
+      return true;
+    }
+    Collection<String> tags = tablesByKey.get(key);
+    return tags == null || !Collections.disjoint(tags, tables);
+  }
+
+  @Override
+  public synchronized void clear() {
+    tablesByKey.clear();
+    keysByTable.clear();
+    delegate.clear();
+  }
+
+  private void evictBeyondBound() {
+    if (tablesByKey.size() > maxIndexedEntries) {
+      Iterator<Object> eldest = tablesByKey.keySet().iterator();
+      Object eldestKey = eldest.next();
+      delegate.removeObject(eldestKey);
+      unindex(eldestKey);
+    }
+  }
+
+  private void unindex(Object key) {
+    if (!tablesByKey.containsKey(key)) {
+      return;
+    }
+    Collection<String> tables = tablesByKey.remove(key);
+    if (tables == null) {
+      removeKey(ANY_TABLE, key);
+    } else {
+      for (String table : tables) {
+        removeKey(table, key);
+      }
+    }
+  }
+
+  private void removeKey(String table, Object key) {
+    Set<Object> keys = keysByTable.get(table);
+    if (keys != null) {
+      keys.remove(key);
+      if (keys.isEmpty()) {
+        keysByTable.remove(table);
+      }
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return delegate.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return delegate.equals(obj);
+  }
+
+}
@@ -0,0 +1,519 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.decorators;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheWeigher;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * W-TinyLFU cache decorator.
+ * <p>
+ * New entries enter a small LRU window. Entries leaving the window compete with the least recently used entry of the
+ * main segmented LRU space, and the one requested more often, according to a count-min sketch of recent requests, is
+ * kept. This keeps one-off queries from flushing entries that are read again and again.
+ * <p>
+ * Unlike the other eviction decorators, this cache is thread safe: reads do not lock and only record the access in a
+ * lossy buffer that is replayed under the eviction lock. The {@link org.apache.ibatis.mapping.CacheBuilder} does not
+ * add a {@link SynchronizedCache} on top of it.
+ * <p>
+ * For this reason it replaces the storage of the decorated cache rather than decorating it: a cache such as
+ * {@link org.apache.ibatis.cache.impl.PerpetualCache} keeps its entries in a plain map that cannot be read while
+ * another thread writes to it. The entries are kept in a concurrent map of this cache, the decorated cache only
+ * provides the id and is cleared along with it, so the decorators added below this one are never used.
+ * <p>
+ * The size bounds the number of entries, or their total weight when a {@link CacheWeigher} is set.
+ */
+public class TinyLfuCache implements Cache {
+
+  private static final int READ_BUFFER_SIZE = 64;
+  private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+  private static final int DRAIN_THRESHOLD_MASK = 31;
+  private static final int READ_BUFFER_STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+  private final Cache delegate;
+  private final ConcurrentMap<Object, Node> data = new ConcurrentHashMap<>();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final ReadBuffer[] readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+
+  private final AccessOrderDeque window = new AccessOrderDeque();
+  private final AccessOrderDeque probation = new AccessOrderDeque();
+  private final AccessOrderDeque protectedDeque = new AccessOrderDeque();
+  private final FrequencySketch sketch = new FrequencySketch();
+
+  private CacheWeigher weigher;
+  private CacheMetrics metrics;
+  private long maximumWeight;
+  private long windowMaximum;
+  private long protectedMaximum;
+  private long windowWeight;
+  private long protectedWeight;
+  private long totalWeight;
+
+  public TinyLfuCache(Cache delegate) {
+    this.delegate = delegate;
+    for (int i = 0; i < readBuffers.length; i++) {
+      readBuffers[i] = new ReadBuffer();
+    }
+    setSize(1024);
+  }
+
+  @Override
+  public String getId() {
+    return delegate.getId();
+  }
+
+  @Override
+  public int getSize() {
+    return data.size();
+  }
+
+  public void setSize(int size) {
+    if (size < 1) {
+      throw new CacheException("The size of cache " + getId() + " must be greater than zero but was " + size);
+    }
+    evictionLock.lock();
+    try {
+      maximumWeight = size;
+      windowMaximum = Math.max(1, size / 100);
+      protectedMaximum = (long) ((size - windowMaximum) * 0.8);
+      sketch.ensureCapacity(size);
+      evict();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  public void setCacheWeigher(CacheWeigher weigher) {
+    this.weigher = weigher;
+  }
+
+  /**
+   * Sets the {@link CacheWeigher} by class name or type alias, e.g. as a property of the {@code <cache>} element.
+   */
+  public void setWeigher(String weigherClassName) {
+    try {
+      setCacheWeigher((CacheWeigher) Resources.classForName(weigherClassName).getDeclaredConstructor().newInstance());
+    } catch (Exception e) {
+      throw new CacheException("Could not instantiate weigher " + weigherClassName + " for cache " + getId() + ". Cause: " + e, e);
+    }
+  }
+
+  /**
+   * Records the entries evicted.
+   *
+   * @since 3.5.4
+   */
+  public void setMetrics(CacheMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    final Node node = new Node(key, value, weigh(key, value));
+    evictionLock.lock();
+    try {
+      Node previous = data.put(key, node);
+      if (previous != null) {
+        unlink(previous);
+      }
+      sketch.increment(key);
+      window.addLast(node);
+      node.queue = Node.WINDOW;
+      windowWeight += node.weight;
+      totalWeight += node.weight;
+      drainReadBuffers();
+      evict();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    final Node node = data.get(key);
+    // misses are recorded too, a key requested often deserves its place once loaded
+    recordRead(node == null ? key : node);
+    return node == null ? null : node.value;
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    evictionLock.lock();
+    try {
+      Node node = data.remove(key);
+      if (node == null) {
+        return null;
+      }
+      unlink(node);
+      return node.value;
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    evictionLock.lock();
+    try {
+      data.clear();
+      window.clear();
+      probation.clear();
+      protectedDeque.clear();
+      windowWeight = 0;
+      protectedWeight = 0;
+      totalWeight = 0;
+      for (ReadBuffer readBuffer : readBuffers) {
+        readBuffer.clear();
+      }
+      delegate.clear();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private int weigh(Object key, Object value) {
+    if (weigher == null) {
+      return 1;
+    }
+    int weight = weigher.weigh(key, value);
+    if (weight < 1) {
+      throw new CacheException("The weigher of cache " + getId() + " returned " + weight + " for " + key + ", weights must be greater than zero");
+    }
+    return weight;
+  }
+
+  private void recordRead(Object item) {
+    // threads are spread over several buffers so they do not all contend on the same counter
+    ReadBuffer readBuffer = readBuffers[(int) (Thread.currentThread().getId() * 0x9E3779B9L >>> 16) & (readBuffers.length - 1)];
+    if (readBuffer.offer(item) && evictionLock.tryLock()) {
+      try {
+        drainReadBuffers();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  private void drainReadBuffers() {
+    for (ReadBuffer readBuffer : readBuffers) {
+      readBuffer.drain(this);
+    }
+  }
+
+  private void onRead(Object item) {
+    if (item instanceof Node) {
+      Node node = (Node) item;
+      sketch.increment(node.key);
+      onAccess(node);
+    } else {
+      sketch.increment(item);
+    }
+  }
+
+  private void onAccess(Node node) {
+    switch (node.queue) {
+      case Node.WINDOW:
+        window.moveToBack(node);
+        break;
+      case Node.PROBATION:
+        probation.remove(node);
+        protectedDeque.addLast(node);
+        node.queue = Node.PROTECTED;
+        protectedWeight += node.weight;
+        demoteProtected();
+        break;
+      case Node.PROTECTED:
+        protectedDeque.moveToBack(node);
+        break;
+      default:
+        // removed or evicted since it was read
+        break;
+    }
+  }
+
+  private void demoteProtected() {
+    while (protectedWeight > protectedMaximum) {
+      Node demoted = protectedDeque.pollFirst();
+      if (demoted == null) {
+        return;
+      }
+      protectedWeight -= demoted.weight;
+      probation.addLast(demoted);
+      demoted.queue = Node.PROBATION;
+    }
+  }
+
+  private void evict() {
+    // entries leaving the window become candidates of the main space
+    Node candidate = null;
+    while (windowWeight > windowMaximum) {
+      Node node = window.pollFirst();
+      if (node == null) {
+        break;
+      }
+      windowWeight -= node.weight;
+      probation.addLast(node);
+      node.queue = Node.PROBATION;
+      if (candidate == null) {
+        candidate = node;
+      }
+    }
+    while (totalWeight > maximumWeight) {
+      Node victim = probation.peekFirst();
+      if (victim == null) {
+        victim = protectedDeque.peekFirst();
+      }
+      if (victim == null) {
+        victim = window.peekFirst();
+      }
+      if (victim == null) {
+        return;
+      }
+      if (candidate != null && victim != candidate && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+        victim = candidate;
+      }
+      if (victim == candidate) {
+        candidate = nextCandidate(candidate);
+      }
+      data.remove(victim.key, victim);
+      unlink(victim);
+      if (metrics != null) {
+        metrics.recordEvictions(1);
+      }
+    }
+  }
+
+  private Node nextCandidate(Node candidate) {
+    Node next = candidate.next;
+    return next != null && next.queue == Node.PROBATION ? next : null;
+  }
+
+  private void unlink(Node node) {
+    switch (node.queue) {
+      case Node.WINDOW:
+        window.remove(node);
+        windowWeight -= node.weight;
+        break;
+      case Node.PROBATION:
+        probation.remove(node);
+        break;
+      case Node.PROTECTED:
+        protectedDeque.remove(node);
+        protectedWeight -= node.weight;
+        break;
+      default:
+        return;
+    }
+    node.queue = Node.REMOVED;
+    totalWeight -= node.weight;
+  }
+
+  /**
+   * Lossy ring of recent reads, replayed under the eviction lock. A slot that was not drained yet is overwritten.
+   */
+  private static final class ReadBuffer {
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicReferenceArray<Object> slots = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private long drained;
+
+    /**
+     * Records a read and returns whether the buffer should be drained.
+     */
+    boolean offer(Object item) {
+      long index = writes.getAndIncrement();
+      slots.lazySet((int) (index & READ_BUFFER_MASK), item);
+      return (index & DRAIN_THRESHOLD_MASK) == DRAIN_THRESHOLD_MASK;
+    }
+
+    void drain(TinyLfuCache cache) {
+      // only the slots written since the last drain are replayed, older reads were overwritten anyway
+      long written = writes.get();
+      long from = Math.max(drained, written - READ_BUFFER_SIZE);
+      drained = written;
+      for (long index = from; index < written; index++) {
+        Object item = slots.getAndSet((int) (index & READ_BUFFER_MASK), null);
+        if (item != null) {
+          cache.onRead(item);
+        }
+      }
+    }
+
+    void clear() {
+      for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+        slots.set(i, null);
+      }
+      drained = writes.get();
+    }
+  }
+
+  private static final class Node {
+    static final int REMOVED = 0;
+    static final int WINDOW = 1;
+    static final int PROBATION = 2;
+    static final int PROTECTED = 3;
+
+    final Object key;
+    final Object value;
+    final int weight;
+    int queue;
+    Node previous;
+    Node next;
+
+    Node(Object key, Object value, int weight) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * Doubly linked list of nodes from the least to the most recently used, guarded by the eviction lock.
+   */
+  private static final class AccessOrderDeque {
+    private Node first;
+    private Node last;
+
+    Node peekFirst() {
+      return first;
+    }
+
+    Node pollFirst() {
+      Node node = first;
+      if (node != null) {
+        remove(node);
+      }
+      return node;
+    }
+
+    void addLast(Node node) {
+      node.previous = last;
+      node.next = null;
+      if (last == null) {
+        first = node;
+      } else {
+        last.next = node;
+      }
+      last = node;
+    }
+
+    void moveToBack(Node node) {
+      if (node != last) {
+        remove(node);
+        addLast(node);
+      }
+    }
+
+    void remove(Node node) {
+      if (node.previous == null) {
+        first = node.next;
+      } else {
+        node.previous.next = node.next;
+      }
+      if (node.next == null) {
+        last = node.previous;
+      } else {
+        node.next.previous = node.previous;
+      }
+      node.previous = null;
+      node.next = null;
+    }
+
+    void clear() {
+      first = null;
+      last = null;
+    }
+  }
+
+  /**
+   * Count-min sketch of 4-bit counters, halved once enough increments were sampled so old popularity fades away.
+   */
+  static final class FrequencySketch {
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    void ensureCapacity(long maximumSize) {
+      int maximum = (int) Math.min(Math.max(maximumSize, 16), 1 << 24);
+      int length = Integer.highestOneBit(maximum - 1) << 1;
+      if (table != null && table.length >= length) {
+        return;
+      }
+      table = new long[length];
+      tableMask = length - 1;
+      sampleSize = 10 * maximum;
+      size = 0;
+    }
+
+    int frequency(Object key) {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        int index = indexOf(hash, i);
+        int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+        frequency = Math.min(frequency, count);
+      }
+      return frequency;
+    }
+
+    void increment(Object key) {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        int index = indexOf(hash, i);
+        int offset = (start + i) << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+          table[index] += 1L << offset;
+          added = true;
+        }
+      }
+      if (added && ++size == sampleSize) {
+        for (int i = 0; i < table.length; i++) {
+          table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+      }
+    }
+
+    private int indexOf(int hash, int i) {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      return (x >>> 16) ^ x;
+    }
+  }
+
+}
@@ -15,12 +15,17 @@
  */
 package org.apache.ibatis.cache.decorators;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheCommitApplier;
+import org.apache.ibatis.cache.CacheInvalidation;
 import org.apache.ibatis.logging.Log;
 import org.apache.ibatis.logging.LogFactory;
 
@@ -31,6 +36,10 @@ import org.apache.ibatis.logging.LogFactory;
  * Entries are sent to the cache when commit is called or discarded if the Session is rolled back.
  * Blocking cache support has been added. Therefore any get() that returns a cache miss
  * will be followed by a put() so any lock associated with the key can be released.
+ * Misses are not tracked when the cache is known not to block.
+ * <p>
+ * With a {@link CacheCommitApplier}, the entries are put in the cache by a background thread after the commit.
+ * The evictions of the commit are still applied by the committing thread.
  *
  * @author Clinton Begin
  * @author Eduardo Macarron
@@ -40,14 +49,40 @@ public class TransactionalCache implements Cache {
   private static final Log log = LogFactory.getLog(TransactionalCache.class);
 
   private final Cache delegate;
+  private final boolean releaseMisses;
+  private final int stagingLimit;
+  private final CacheCommitApplier commitApplier;
   private boolean clearOnCommit;
-  private final Map<Object, Object> entriesToAddOnCommit;
+  private final Set<String> tablesToInvalidateOnCommit;
+  private Map<Object, Object> entriesToAddOnCommit;
+  private Map<Object, Collection<String>> tablesOfEntriesToAdd;
   private final Set<Object> entriesMissedInCache;
 
   public TransactionalCache(Cache delegate) {
+    this(delegate, true, 0, null);
+  }
+
+  /**
+   * @param releaseMisses
+   *          puts or removes on commit or rollback every key missed, for a cache blocking the other readers of a
+   *          missed key until then
+   * @param stagingLimit
+   *          the number of entries staged until the commit, beyond which the new entries are not cached,
+   *          or 0 for no limit
+   * @param commitApplier
+   *          puts the entries in the cache after the commit, or {@code null} to put them on commit
+   * @since 3.5.4
+   */
+  public TransactionalCache(Cache delegate, boolean releaseMisses, int stagingLimit, CacheCommitApplier commitApplier) {
     this.delegate = delegate;
+    this.releaseMisses = releaseMisses;
+    this.stagingLimit = stagingLimit;
+    // a blocking cache must be released by the thread that missed the key
+    this.commitApplier = releaseMisses ? null : commitApplier;
     this.clearOnCommit = false;
+    this.tablesToInvalidateOnCommit = new HashSet<>();
     this.entriesToAddOnCommit = new HashMap<>();
+    this.tablesOfEntriesToAdd = new HashMap<>();
     this.entriesMissedInCache = new HashSet<>();
   }
 
@@ -65,12 +100,16 @@ public class TransactionalCache implements Cache {
   public Object getObject(Object key) {
     // issue #116
     Object object = delegate.getObject(key);
-    if (object == null) {
+    if (object == null && releaseMisses) {
       entriesMissedInCache.add(key);
     }
     // issue #146
     if (clearOnCommit) {
       return null;
+    } else if (object != null && !tablesToInvalidateOnCommit.isEmpty()
+        && ((TableTaggedCache) delegate).isInvalidatedBy(key, tablesToInvalidateOnCommit)) {
+      // only the entries the commit will evict are hidden
+      return null;
     } else {
       return object;
     }
@@ -78,7 +117,23 @@ public class TransactionalCache implements Cache {
 
   @Override
   public void putObject(Object key, Object object) {
+    putObject(key, object, null);
+  }
+
+  /**
+   * Adds an entry read from these tables, used when the cache is a {@link TableTaggedCache}.
+   */
+  public void putObject(Object key, Object object, Collection<String> tables) {
+    if (stagingLimit > 0 && entriesToAddOnCommit.size() >= stagingLimit && !entriesToAddOnCommit.containsKey(key)) {
+      // a missed key is still released on commit
+      return;
+    }
     entriesToAddOnCommit.put(key, object);
+    if (tables == null) {
+      tablesOfEntriesToAdd.remove(key);
+    } else {
+      tablesOfEntriesToAdd.put(key, tables);
+    }
   }
 
   @Override
@@ -90,13 +145,60 @@ public class TransactionalCache implements Cache {
   public void clear() {
     clearOnCommit = true;
     entriesToAddOnCommit.clear();
+    tablesOfEntriesToAdd.clear();
+  }
+
+  /**
+   * Evicts on commit only the entries read from these tables when the cache is a {@link TableTaggedCache},
+   * clears it otherwise or when the tables are unknown.
+   */
+  public void invalidate(Collection<String> tables) {
+    if (tables == null || tables.isEmpty() || !(delegate instanceof TableTaggedCache)) {
+      clear();
+      return;
+    }
+    tablesToInvalidateOnCommit.addAll(tables);
+    Iterator<Object> keys = entriesToAddOnCommit.keySet().iterator();
+    while (keys.hasNext()) {
+      Object key = keys.next();
+      Collection<String> entryTables = tablesOfEntriesToAdd.get(key);
+      if (entryTables == null || !Collections.disjoint(entryTables, tables)) {
+        keys.remove();
+        tablesOfEntriesToAdd.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Returns the eviction the commit will apply to the cache, or {@code null} if it evicts nothing.
+   */
+  public CacheInvalidation getCommitInvalidation() {
+    if (clearOnCommit) {
+      return new CacheInvalidation(delegate.getId(), null);
+    } else if (!tablesToInvalidateOnCommit.isEmpty()) {
+      return new CacheInvalidation(delegate.getId(), tablesToInvalidateOnCommit);
+    }
+    return null;
   }
 
   public void commit() {
+    if (commitApplier != null && (clearOnCommit || !tablesToInvalidateOnCommit.isEmpty())) {
+      // before the eviction, so the entries the applier is putting are either dropped or evicted
+      commitApplier.invalidated(delegate.getId());
+    }
     if (clearOnCommit) {
       delegate.clear();
+    } else if (!tablesToInvalidateOnCommit.isEmpty()) {
+      ((TableTaggedCache) delegate).invalidate(tablesToInvalidateOnCommit);
+    }
+    if (commitApplier == null || ExpiringCache.isRefreshing()) {
+      flushPendingEntries();
+    } else if (!entriesToAddOnCommit.isEmpty()) {
+      // handed over to the applier, the next transaction stages its entries in new maps
+      commitApplier.apply(delegate, entriesToAddOnCommit, tablesOfEntriesToAdd);
+      entriesToAddOnCommit = new HashMap<>();
+      tablesOfEntriesToAdd = new HashMap<>();
     }
-    flushPendingEntries();
     reset();
   }
 
@@ -107,13 +209,19 @@ public class TransactionalCache implements Cache {
 
   private void reset() {
     clearOnCommit = false;
+    tablesToInvalidateOnCommit.clear();
     entriesToAddOnCommit.clear();
+    tablesOfEntriesToAdd.clear();
     entriesMissedInCache.clear();
   }
 
   private void flushPendingEntries() {
     for (Map.Entry<Object, Object> entry : entriesToAddOnCommit.entrySet()) {
-      delegate.putObject(entry.getKey(), entry.getValue());
+      if (delegate instanceof TableTaggedCache) {
+        ((TableTaggedCache) delegate).putObject(entry.getKey(), entry.getValue(), tablesOfEntriesToAdd.get(entry.getKey()));
+      } else {
+        delegate.putObject(entry.getKey(), entry.getValue());
+      }
     }
     for (Object entry : entriesMissedInCache) {
       if (!entriesToAddOnCommit.containsKey(entry)) {
@@ -0,0 +1,77 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The local (first level) cache of an executor, used by a single thread and thus not synchronized.
+ * <p>
+ * With a maximum number of entries, the least recently used entries above it are evicted by {@link #trim()}.
+ * Nothing is evicted on put, so the executor trims the cache between top level queries, once the entries
+ * that the running statement may still read (e.g. for circular references or deferred loads) are no longer needed.
+ */
+public class LocalCache extends PerpetualCache {
+
+  private final Map<Object, Object> entries;
+  private final int maxEntries;
+  private long evictionCount;
+
+  public LocalCache(String id, int maxEntries) {
+    this(id, maxEntries > 0 ? new LinkedHashMap<>(16, 0.75f, true) : new HashMap<>(), maxEntries);
+  }
+
+  private LocalCache(String id, Map<Object, Object> entries, int maxEntries) {
+    super(id, entries);
+    this.entries = entries;
+    this.maxEntries = maxEntries;
+  }
+
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Evicts the least recently used entries above the maximum number of entries, if any.
+   *
+   * @return the keys of the evicted entries
+   */
+  public List<Object> trim() {
+    int excess = maxEntries > 0 ? entries.size() - maxEntries : 0;
+    if (excess <= 0) {
+      return Collections.emptyList();
+    }
+    List<Object> evicted = new ArrayList<>(excess);
+    Iterator<Object> keys = entries.keySet().iterator();
+    while (evicted.size() < excess) {
+      evicted.add(keys.next());
+      keys.remove();
+    }
+    evictionCount += excess;
+    return evicted;
+  }
+
+}
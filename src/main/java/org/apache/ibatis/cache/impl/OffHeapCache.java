@@ -0,0 +1,417 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.impl;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.ibatis.builder.InitializingObject;
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.serializer.BinaryCacheSerializer;
+import org.apache.ibatis.io.Resources;
+
+/**
+ * Keeps the serialized objects out of the Java heap, in direct buffers or in a memory mapped file, so a large cache
+ * does not lengthen garbage collections. Only the keys and a small index stay on the heap.
+ * <p>
+ * The storage is split in segments written one after the other, like a ring. When the ring is full the oldest
+ * segment is reused and the objects it holds are evicted. The space of removed or replaced objects is reclaimed
+ * the same way. An object larger than a segment is not cached.
+ * <p>
+ * Configured with properties of the {@code <cache>} element: {@code capacity} (bytes, {@code k}, {@code m} and
+ * {@code g} suffixes allowed, 64m by default), {@code segmentSize} (capacity / 16 by default), {@code file} (a
+ * file to map instead of direct buffers, its content is not reloaded on restart) and {@code serializer}
+ * (a {@link CacheSerializer} class name). The {@code size} attribute bounds the number of objects.
+ * <p>
+ * Objects are copied on every read, so the cache is read-write whatever the {@code readOnly} attribute.
+ * It is thread safe and is not wrapped in any decorator but the logging one, as any custom cache.
+ */
+public class OffHeapCache implements Cache, InitializingObject {
+
+  private static final int DEFAULT_SEGMENT_COUNT = 16;
+
+  private final String id;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<Object, Entry> index = new HashMap<>();
+  // entries in writing order, the ones of the next segment to reuse come first
+  private final Deque<Entry> entries = new ArrayDeque<>();
+
+  private CacheSerializer serializer = new BinaryCacheSerializer();
+  private long capacity = 64L << 20;
+  private int segmentSize;
+  private int size = Integer.MAX_VALUE;
+  private String file;
+
+  private Segment[] segments;
+  private int current;
+  private long liveBytes;
+  private long evictionCount;
+  private long rejectionCount;
+
+  public OffHeapCache(String id) {
+    this.id = id;
+  }
+
+  @Override
+  public String getId() {
+    return id;
+  }
+
+  public void setCapacity(String capacity) {
+    this.capacity = parseBytes("capacity", capacity);
+  }
+
+  public void setSegmentSize(String segmentSize) {
+    long bytes = parseBytes("segmentSize", segmentSize);
+    if (bytes > Integer.MAX_VALUE) {
+      throw new CacheException("The segment size of cache " + id + " must not exceed 2g but was " + segmentSize);
+    }
+    this.segmentSize = (int) bytes;
+  }
+
+  public void setFile(String file) {
+    this.file = file;
+  }
+
+  /**
+   * Sets the {@link CacheSerializer} by class name.
+   */
+  public void setSerializer(String serializerClassName) {
+    try {
+      setCacheSerializer((CacheSerializer) Resources.classForName(serializerClassName).getDeclaredConstructor().newInstance());
+    } catch (Exception e) {
+      throw new CacheException("Could not instantiate serializer " + serializerClassName + " for cache " + id + ". Cause: " + e, e);
+    }
+  }
+
+  public void setCacheSerializer(CacheSerializer serializer) {
+    this.serializer = serializer;
+  }
+
+  public void setSize(int size) {
+    if (size < 1) {
+      throw new CacheException("The size of cache " + id + " must be greater than zero but was " + size);
+    }
+    lock.writeLock().lock();
+    try {
+      this.size = size;
+      while (index.size() > size) {
+        evict(entries.pollFirst());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void initialize() throws Exception {
+    if (segmentSize == 0) {
+      segmentSize = (int) Math.min(Integer.MAX_VALUE, Math.max(1, capacity / DEFAULT_SEGMENT_COUNT));
+    }
+    if (capacity < segmentSize) {
+      throw new CacheException("The capacity of cache " + id + " must not be smaller than its segment size " + segmentSize);
+    }
+    segments = new Segment[(int) Math.min(Integer.MAX_VALUE, capacity / segmentSize)];
+    if (file != null) {
+      try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+        randomAccessFile.setLength((long) segments.length * segmentSize);
+        // the mappings stay valid once the file is closed
+        FileChannel channel = randomAccessFile.getChannel();
+        for (int i = 0; i < segments.length; i++) {
+          segments[i] = new Segment(channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSize, segmentSize));
+        }
+      }
+    }
+  }
+
+  @Override
+  public int getSize() {
+    lock.readLock().lock();
+    try {
+      return index.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void putObject(Object key, Object value) {
+    final byte[] bytes = serializer.serialize(value);
+    lock.writeLock().lock();
+    try {
+      ensureInitialized();
+      Entry previous = index.remove(key);
+      if (previous != null) {
+        liveBytes -= previous.length;
+      }
+      if (bytes.length > segmentSize) {
+        rejectionCount++;
+        return;
+      }
+      Segment segment = segmentFor(bytes.length);
+      ByteBuffer buffer = segment.buffer.duplicate();
+      buffer.position(segment.position);
+      buffer.put(bytes);
+      Entry entry = new Entry(key, segment, segment.position, bytes.length);
+      segment.position += bytes.length;
+      liveBytes += bytes.length;
+      index.put(key, entry);
+      entries.addLast(entry);
+      while (index.size() > size) {
+        evict(entries.pollFirst());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Object getObject(Object key) {
+    final byte[] bytes;
+    lock.readLock().lock();
+    try {
+      Entry entry = index.get(key);
+      if (entry == null) {
+        return null;
+      }
+      bytes = entry.read();
+    } finally {
+      lock.readLock().unlock();
+    }
+    return serializer.deserialize(bytes);
+  }
+
+  @Override
+  public Object removeObject(Object key) {
+    final byte[] bytes;
+    lock.writeLock().lock();
+    try {
+      Entry entry = index.remove(key);
+      if (entry == null) {
+        return null;
+      }
+      liveBytes -= entry.length;
+      bytes = entry.read();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return serializer.deserialize(bytes);
+  }
+
+  @Override
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      index.clear();
+      entries.clear();
+      if (segments != null) {
+        for (Segment segment : segments) {
+          if (segment != null) {
+            segment.position = 0;
+          }
+        }
+      }
+      current = 0;
+      liveBytes = 0;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the bytes of the buffers allocated or mapped so far.
+   */
+  public long getAllocatedBytes() {
+    lock.readLock().lock();
+    try {
+      long allocated = 0;
+      if (segments != null) {
+        for (Segment segment : segments) {
+          if (segment != null) {
+            allocated += segmentSize;
+          }
+        }
+      }
+      return allocated;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the bytes of the objects currently cached, the rest of the written bytes is reclaimed with its segment.
+   */
+  public long getLiveBytes() {
+    lock.readLock().lock();
+    try {
+      return liveBytes;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public long getEvictionCount() {
+    lock.readLock().lock();
+    try {
+      return evictionCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the number of objects not cached because they were larger than a segment.
+   */
+  public long getRejectionCount() {
+    lock.readLock().lock();
+    try {
+      return rejectionCount;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void ensureInitialized() {
+    if (segments == null) {
+      try {
+        initialize();
+      } catch (Exception e) {
+        throw new CacheException("Failed cache initialization for '" + id + "'.  Cause: " + e, e);
+      }
+    }
+  }
+
+  private Segment segmentFor(int length) {
+    Segment segment = segments[current];
+    if (segment == null) {
+      segment = segments[current] = new Segment(ByteBuffer.allocateDirect(segmentSize));
+    }
+    if (segment.position + length <= segmentSize) {
+      return segment;
+    }
+    current = (current + 1) % segments.length;
+    segment = segments[current];
+    if (segment == null) {
+      return segments[current] = new Segment(ByteBuffer.allocateDirect(segmentSize));
+    }
+    while (!entries.isEmpty() && entries.peekFirst().segment == segment) {
+      evict(entries.pollFirst());
+    }
+    segment.position = 0;
+    return segment;
+  }
+
+  private void evict(Entry entry) {
+    // entries removed or replaced since they were written are still queued
+    if (index.get(entry.key) == entry) {
+      index.remove(entry.key);
+      liveBytes -= entry.length;
+      evictionCount++;
+    }
+  }
+
+  private static long parseBytes(String name, String value) {
+    String bytes = value.trim().toLowerCase(Locale.ENGLISH);
+    long unit = 1;
+    if (bytes.endsWith("k")) {
+      unit = 1L << 10;
+    } else if (bytes.endsWith("m")) {
+      unit = 1L << 20;
+    } else if (bytes.endsWith("g")) {
+      unit = 1L << 30;
+    }
+    try {
+      long result = Long.parseLong(unit == 1 ? bytes : bytes.substring(0, bytes.length() - 1).trim()) * unit;
+      if (result < 1) {
+        throw new CacheException("The " + name + " of an off-heap cache must be greater than zero but was " + value);
+      }
+      return result;
+    } catch (NumberFormatException e) {
+      throw new CacheException("Invalid " + name + " '" + value + "' for an off-heap cache.  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof Cache)) {
+      return false;
+    }
+
+    Cache otherCache = (Cache) o;
+    return getId().equals(otherCache.getId());
+  }
+
+  @Override
+  public int hashCode() {
+    if (getId() == null) {
+      throw new CacheException("Cache instances require an ID.");
+    }
+    return getId().hashCode();
+  }
+
+  private static final class Segment {
+    private final ByteBuffer buffer;
+    private int position;
+
+    private Segment(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+  }
+
+  private static final class Entry {
+    private final Object key;
+    private final Segment segment;
+    private final int offset;
+    private final int length;
+
+    private Entry(Object key, Segment segment, int offset, int length) {
+      this.key = key;
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    private byte[] read() {
+      byte[] bytes = new byte[length];
+      ByteBuffer buffer = segment.buffer.duplicate();
+      buffer.position(offset);
+      buffer.get(bytes);
+      return bytes;
+    }
+  }
+
+}
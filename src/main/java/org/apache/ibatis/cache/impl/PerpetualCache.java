@@ -28,10 +28,18 @@ public class PerpetualCache implements Cache {
 
   private final String id;
 
-  private final Map<Object, Object> cache = new HashMap<>();
+  private final Map<Object, Object> cache;
 
   public PerpetualCache(String id) {
+    this(id, new HashMap<>());
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  protected PerpetualCache(String id, Map<Object, Object> cache) {
     this.id = id;
+    this.cache = cache;
   }
 
   @Override
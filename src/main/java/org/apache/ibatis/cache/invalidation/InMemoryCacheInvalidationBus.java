@@ -0,0 +1,220 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.apache.ibatis.cache.CacheInvalidation;
+import org.apache.ibatis.cache.CacheInvalidationBus;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * Invalidation bus between the configurations of a same JVM joining the same channel, e.g. to test a cluster locally.
+ * Created from the {@code IN_MEMORY_INVALIDATION} alias, it joins the channel named by the
+ * {@code cacheInvalidationChannel} property of the configuration, and waits for the number of milliseconds of its
+ * {@code cacheInvalidationBatchDelay} property if set. A channel is dropped, with its thread, when its last member
+ * is closed.
+ * <p>
+ * Invalidations are not delivered as soon as published: a channel waits for the batch delay (10 milliseconds
+ * by default) after the first one, then delivers to each member in one call those published by the other members
+ * meanwhile, merged by {@link CacheInvalidation#coalesce(Collection)}. A burst of writes thus costs each member
+ * a single eviction per cache.
+ */
+public class InMemoryCacheInvalidationBus implements CacheInvalidationBus {
+
+  private static final Log log = LogFactory.getLog(InMemoryCacheInvalidationBus.class);
+  private static final ConcurrentHashMap<String, Channel> channels = new ConcurrentHashMap<>();
+
+  private static final long DEFAULT_BATCH_DELAY = 10L;
+
+  private volatile Channel channel;
+  private final AtomicLong deliveredBatchCount = new AtomicLong();
+  private volatile Consumer<Collection<CacheInvalidation>> listener;
+
+  /**
+   * Creates a bus joining the channel given by {@link #setProperties(Properties)}.
+   */
+  public InMemoryCacheInvalidationBus() {
+  }
+
+  /**
+   * @param channelName the name of the channel, shared by the members
+   * @param batchDelay the milliseconds waited for more invalidations before delivering, used by the first member
+   */
+  public InMemoryCacheInvalidationBus(String channelName, long batchDelay) {
+    join(channelName, batchDelay);
+  }
+
+  @Override
+  public synchronized void setProperties(Properties properties) {
+    String channelName = properties.getProperty("cacheInvalidationChannel");
+    if (channelName == null || channelName.isEmpty()) {
+      throw new IllegalArgumentException("InMemoryCacheInvalidationBus requires the cacheInvalidationChannel property.");
+    }
+    String batchDelay = properties.getProperty("cacheInvalidationBatchDelay");
+    if (channel != null) {
+      close();
+    }
+    join(channelName, batchDelay == null ? DEFAULT_BATCH_DELAY : Long.parseLong(batchDelay));
+  }
+
+  @Override
+  public void publish(Collection<CacheInvalidation> invalidations) {
+    Channel currentChannel = channel;
+    if (!invalidations.isEmpty() && currentChannel != null && currentChannel.members.contains(this)) {
+      currentChannel.publish(this, invalidations);
+    }
+  }
+
+  @Override
+  public void subscribe(Consumer<Collection<CacheInvalidation>> listener) {
+    if (channel == null) {
+      throw new IllegalStateException("InMemoryCacheInvalidationBus has joined no channel, "
+          + "set its cacheInvalidationChannel property.");
+    }
+    this.listener = listener;
+  }
+
+  @Override
+  public synchronized void close() {
+    Channel currentChannel = channel;
+    if (currentChannel == null) {
+      return;
+    }
+    channels.computeIfPresent(currentChannel.name, (name, existing) -> {
+      existing.members.remove(this);
+      if (existing.members.isEmpty()) {
+        existing.dispatcher.shutdown();
+        return null;
+      }
+      return existing;
+    });
+    channel = null;
+  }
+
+  /**
+   * Returns whether a member joined this channel and was not closed since.
+   */
+  static boolean isOpen(String channelName) {
+    return channels.containsKey(channelName);
+  }
+
+  /**
+   * Returns the number of batches delivered to this member.
+   */
+  public long getDeliveredBatchCount() {
+    return deliveredBatchCount.get();
+  }
+
+  private synchronized void join(String channelName, long batchDelay) {
+    // in compute, so that a channel is not dropped by its last member while another one joins it
+    channel = channels.compute(channelName, (name, existing) -> {
+      Channel joined = existing == null ? new Channel(name, batchDelay) : existing;
+      joined.members.add(this);
+      return joined;
+    });
+  }
+
+  private void deliver(List<Message> messages) {
+    Consumer<Collection<CacheInvalidation>> currentListener = listener;
+    if (currentListener == null) {
+      return;
+    }
+    List<CacheInvalidation> invalidations = new ArrayList<>();
+    for (Message message : messages) {
+      if (message.origin != this) {
+        invalidations.addAll(message.invalidations);
+      }
+    }
+    if (invalidations.isEmpty()) {
+      return;
+    }
+    deliveredBatchCount.incrementAndGet();
+    try {
+      currentListener.accept(CacheInvalidation.coalesce(invalidations));
+    } catch (Exception e) {
+      log.warn("Error applying the cache invalidations " + invalidations + ".  Cause: " + e);
+    }
+  }
+
+  private static class Message {
+    private final InMemoryCacheInvalidationBus origin;
+    private final List<CacheInvalidation> invalidations;
+
+    private Message(InMemoryCacheInvalidationBus origin, Collection<CacheInvalidation> invalidations) {
+      this.origin = origin;
+      this.invalidations = new ArrayList<>(invalidations);
+    }
+  }
+
+  private static class Channel {
+
+    private final String name;
+    private final Set<InMemoryCacheInvalidationBus> members = new CopyOnWriteArraySet<>();
+    private final ScheduledThreadPoolExecutor dispatcher;
+    private final long batchDelay;
+    private List<Message> pending = new ArrayList<>();
+
+    private Channel(String name, long batchDelay) {
+      this.name = name;
+      this.batchDelay = batchDelay;
+      final String threadName = "mybatis-cache-invalidation-" + name;
+      this.dispatcher = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, threadName);
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.dispatcher.setKeepAliveTime(60L, TimeUnit.SECONDS);
+      this.dispatcher.allowCoreThreadTimeOut(true);
+    }
+
+    private synchronized void publish(InMemoryCacheInvalidationBus origin, Collection<CacheInvalidation> invalidations) {
+      if (pending.isEmpty()) {
+        try {
+          dispatcher.schedule(this::dispatch, batchDelay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+          // the last member was closed meanwhile, nobody is left to deliver to
+          return;
+        }
+      }
+      pending.add(new Message(origin, invalidations));
+    }
+
+    private void dispatch() {
+      List<Message> messages;
+      synchronized (this) {
+        messages = pending;
+        pending = new ArrayList<>();
+      }
+      for (InMemoryCacheInvalidationBus member : members) {
+        member.deliver(messages);
+      }
+    }
+  }
+
+}
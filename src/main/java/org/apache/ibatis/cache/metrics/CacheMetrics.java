@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a second level cache. They are striped, so the sessions recording them concurrently do not contend
+ * on a single memory location.
+ */
+public class CacheMetrics {
+
+  private final String id;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder puts = new LongAdder();
+  private final LongAdder removals = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder clears = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder loadTime = new LongAdder();
+  private final LongAdder serializations = new LongAdder();
+  private final LongAdder serializationTime = new LongAdder();
+  private final LongAdder weighedEntries = new LongAdder();
+  private final LongAdder weighedBytes = new LongAdder();
+
+  public CacheMetrics(String id) {
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public void recordHit() {
+    hits.increment();
+  }
+
+  public void recordMiss() {
+    misses.increment();
+  }
+
+  public void recordPut() {
+    puts.increment();
+  }
+
+  public void recordRemoval() {
+    removals.increment();
+  }
+
+  public void recordEvictions(int count) {
+    evictions.add(count);
+  }
+
+  public void recordClear() {
+    clears.increment();
+  }
+
+  /**
+   * Records the time taken to load from the database a result missed by the cache.
+   */
+  public void recordLoad(long nanos) {
+    loads.increment();
+    loadTime.add(nanos);
+  }
+
+  /**
+   * Records the time taken to serialize or deserialize a value.
+   */
+  public void recordSerialization(long nanos) {
+    serializations.increment();
+    serializationTime.add(nanos);
+  }
+
+  /**
+   * Records the size in bytes of a value put in the cache, from which the size of the cache is estimated.
+   */
+  public void recordBytes(long bytes) {
+    weighedEntries.increment();
+    weighedBytes.add(bytes);
+  }
+
+  /**
+   * Returns the current values of the counters.
+   *
+   * @param size the number of entries of the cache
+   */
+  public CacheStats snapshot(int size) {
+    long weighed = weighedEntries.sum();
+    long estimatedBytes = weighed == 0 ? -1 : (long) ((double) weighedBytes.sum() / weighed * size);
+    return new CacheStats(id, hits.sum(), misses.sum(), puts.sum(), removals.sum(), evictions.sum(), clears.sum(),
+        size, estimatedBytes, loads.sum(), loadTime.sum(), serializations.sum(), serializationTime.sum());
+  }
+
+}
@@ -0,0 +1,63 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.ibatis.cache.decorators.MetricsCache;
+
+/**
+ * Caches built with metrics, by id.
+ */
+public class CacheMetricsRegistry {
+
+  private final Map<String, MetricsCache> caches = new ConcurrentSkipListMap<>();
+
+  public void register(MetricsCache cache) {
+    caches.put(cache.getId(), cache);
+  }
+
+  /**
+   * Returns the counters of a cache, or {@code null} when it was built without metrics.
+   */
+  public CacheMetrics getMetrics(String cacheId) {
+    MetricsCache cache = caches.get(cacheId);
+    return cache == null ? null : cache.getMetrics();
+  }
+
+  /**
+   * Returns the stats of a cache, or {@code null} when it was built without metrics.
+   */
+  public CacheStats getStats(String cacheId) {
+    MetricsCache cache = caches.get(cacheId);
+    return cache == null ? null : cache.getStats();
+  }
+
+  /**
+   * Returns the stats of all the caches built with metrics, ordered by id.
+   */
+  public List<CacheStats> getStats() {
+    List<CacheStats> stats = new ArrayList<>(caches.size());
+    for (MetricsCache cache : caches.values()) {
+      stats.add(cache.getStats());
+    }
+    return stats;
+  }
+
+}
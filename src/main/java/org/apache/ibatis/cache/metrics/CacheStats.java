@@ -0,0 +1,150 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.metrics;
+
+/**
+ * Values of the counters of a second level cache at a point in time.
+ */
+public final class CacheStats {
+
+  private final String cacheId;
+  private final long hitCount;
+  private final long missCount;
+  private final long putCount;
+  private final long removeCount;
+  private final long evictionCount;
+  private final long clearCount;
+  private final int size;
+  private final long estimatedBytes;
+  private final long loadCount;
+  private final long totalLoadTime;
+  private final long serializationCount;
+  private final long totalSerializationTime;
+
+  public CacheStats(String cacheId, long hitCount, long missCount, long putCount, long removeCount, long evictionCount,
+      long clearCount, int size, long estimatedBytes, long loadCount, long totalLoadTime, long serializationCount,
+      long totalSerializationTime) {
+    this.cacheId = cacheId;
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.putCount = putCount;
+    this.removeCount = removeCount;
+    this.evictionCount = evictionCount;
+    this.clearCount = clearCount;
+    this.size = size;
+    this.estimatedBytes = estimatedBytes;
+    this.loadCount = loadCount;
+    this.totalLoadTime = totalLoadTime;
+    this.serializationCount = serializationCount;
+    this.totalSerializationTime = totalSerializationTime;
+  }
+
+  public String getCacheId() {
+    return cacheId;
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  public long getRequestCount() {
+    return hitCount + missCount;
+  }
+
+  /**
+   * Returns the ratio of the lookups that hit the cache, or 0 when it was never looked up.
+   */
+  public double getHitRatio() {
+    long requests = getRequestCount();
+    return requests == 0 ? 0 : (double) hitCount / requests;
+  }
+
+  public long getPutCount() {
+    return putCount;
+  }
+
+  public long getRemoveCount() {
+    return removeCount;
+  }
+
+  /**
+   * Returns the number of entries evicted by the LRU, FIFO or W-TinyLFU policy to make room for others,
+   * always 0 for the other caches.
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  public long getClearCount() {
+    return clearCount;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Returns the size of the entries in bytes, estimated from the serialized values put in the cache,
+   * or -1 when the values are not serialized.
+   */
+  public long getEstimatedBytes() {
+    return estimatedBytes;
+  }
+
+  public long getLoadCount() {
+    return loadCount;
+  }
+
+  /**
+   * Returns the time spent in nanoseconds loading from the database the results missed by the cache.
+   */
+  public long getTotalLoadTime() {
+    return totalLoadTime;
+  }
+
+  public double getAverageLoadTime() {
+    return loadCount == 0 ? 0 : (double) totalLoadTime / loadCount;
+  }
+
+  public long getSerializationCount() {
+    return serializationCount;
+  }
+
+  /**
+   * Returns the time spent in nanoseconds serializing and deserializing the values of a read-write cache.
+   */
+  public long getTotalSerializationTime() {
+    return totalSerializationTime;
+  }
+
+  public double getAverageSerializationTime() {
+    return serializationCount == 0 ? 0 : (double) totalSerializationTime / serializationCount;
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{cacheId=" + cacheId + ", hitCount=" + hitCount + ", missCount=" + missCount + ", putCount="
+        + putCount + ", removeCount=" + removeCount + ", evictionCount=" + evictionCount + ", clearCount=" + clearCount
+        + ", size=" + size + ", estimatedBytes=" + estimatedBytes + ", loadCount=" + loadCount + ", totalLoadTime="
+        + totalLoadTime + ", serializationCount=" + serializationCount + ", totalSerializationTime="
+        + totalSerializationTime + "}";
+  }
+
+}
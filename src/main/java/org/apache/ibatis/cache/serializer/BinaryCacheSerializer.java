@@ -0,0 +1,655 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.ReflectorFactory;
+import org.apache.ibatis.reflection.invoker.Invoker;
+import org.apache.ibatis.reflection.invoker.InvokerFactory;
+import org.apache.ibatis.reflection.invoker.ReflectiveInvokerFactory;
+
+/**
+ * A compact binary format for the usual contents of a cache: lists and maps of beans holding strings, numbers,
+ * dates and enums. A bean is written field by field through invokers built once per class from its {@link Reflector},
+ * so class descriptors are neither written nor parsed on every entry. Shared and cyclic references are kept.
+ * <p>
+ * A bean must be {@link Serializable}, have a default constructor and must not customize its Java serialization
+ * (e.g. lazy loading proxies define {@code writeReplace}). A value reaching any other type is entirely written with
+ * the standard Java serialization instead.
+ */
+public class BinaryCacheSerializer implements CacheSerializer {
+
+  private static final byte BINARY_FORMAT = 1;
+  private static final byte JAVA_FORMAT = 2;
+
+  private static final byte NULL = 0;
+  private static final byte REFERENCE = 1;
+  private static final byte STRING = 2;
+  private static final byte INTEGER = 3;
+  private static final byte LONG = 4;
+  private static final byte SHORT = 5;
+  private static final byte BYTE = 6;
+  private static final byte BOOLEAN = 7;
+  private static final byte CHARACTER = 8;
+  private static final byte FLOAT = 9;
+  private static final byte DOUBLE = 10;
+  private static final byte BIG_DECIMAL = 11;
+  private static final byte BIG_INTEGER = 12;
+  private static final byte DATE = 13;
+  private static final byte SQL_DATE = 14;
+  private static final byte SQL_TIME = 15;
+  private static final byte TIMESTAMP = 16;
+  private static final byte LOCAL_DATE = 17;
+  private static final byte LOCAL_TIME = 18;
+  private static final byte LOCAL_DATE_TIME = 19;
+  private static final byte INSTANT = 20;
+  private static final byte BYTE_ARRAY = 21;
+  private static final byte ENUM = 22;
+  private static final byte ARRAY_LIST = 23;
+  private static final byte LINKED_LIST = 24;
+  private static final byte HASH_SET = 25;
+  private static final byte LINKED_HASH_SET = 26;
+  private static final byte HASH_MAP = 27;
+  private static final byte LINKED_HASH_MAP = 28;
+  private static final byte BEAN = 29;
+
+  private static final BeanCodec UNSUPPORTED = new BeanCodec(null, null, null);
+
+  private final ConcurrentMap<Class<?>, BeanCodec> codecs = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<>();
+  private ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+
+  public void setReflectorFactory(ReflectorFactory reflectorFactory) {
+    this.reflectorFactory = reflectorFactory;
+    codecs.clear();
+  }
+
+  @Override
+  public byte[] serialize(Object value) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    try {
+      try {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(BINARY_FORMAT);
+        new Writer(out).writeValue(value);
+        out.flush();
+      } catch (UnsupportedTypeException e) {
+        bytes.reset();
+        bytes.write(JAVA_FORMAT);
+        JavaCacheSerializer.write(value, bytes);
+      }
+      return bytes.toByteArray();
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error serializing object.  Cause: " + e, e);
+    }
+  }
+
+  @Override
+  public Object deserialize(byte[] data) {
+    try {
+      ByteArrayInputStream bytes = new ByteArrayInputStream(data, 1, data.length - 1);
+      if (data[0] == JAVA_FORMAT) {
+        return JavaCacheSerializer.read(bytes);
+      }
+      return new Reader(new DataInputStream(bytes)).readValue();
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error deserializing object.  Cause: " + e, e);
+    }
+  }
+
+  /**
+   * Copies the value without going through bytes: immutable values are shared and the rest is copied
+   * with the same per-class invokers as {@link #serialize(Object)}.
+   */
+  @Override
+  public Object copy(Object value) {
+    try {
+      return new Copier().copy(value);
+    } catch (UnsupportedTypeException e) {
+      return deserialize(serialize(value));
+    } catch (CacheException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new CacheException("Error copying object.  Cause: " + e, e);
+    }
+  }
+
+  private BeanCodec codecFor(Class<?> type) {
+    BeanCodec codec = codecs.computeIfAbsent(type, this::createCodec);
+    if (codec == UNSUPPORTED) {
+      throw new UnsupportedTypeException();
+    }
+    return codec;
+  }
+
+  private BeanCodec createCodec(Class<?> type) {
+    if (!Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type) || type.isArray()) {
+      return UNSUPPORTED;
+    }
+    // fields of non serializable super classes are left to the constructor, as Java serialization does
+    List<Field> fields = new ArrayList<>();
+    for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+      if (customizesSerialization(current)) {
+        return UNSUPPORTED;
+      }
+      if (Serializable.class.isAssignableFrom(current)) {
+        for (Field field : current.getDeclaredFields()) {
+          if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
+            fields.add(field);
+          }
+        }
+      }
+    }
+    Reflector reflector = reflectorFactory.findForClass(type);
+    if (!reflector.hasDefaultConstructor()) {
+      return UNSUPPORTED;
+    }
+    InvokerFactory invokerFactory = reflectorFactory instanceof DefaultReflectorFactory
+        ? ((DefaultReflectorFactory) reflectorFactory).getInvokerFactory() : new ReflectiveInvokerFactory();
+    Invoker[] getters = new Invoker[fields.size()];
+    Invoker[] setters = new Invoker[fields.size()];
+    try {
+      Constructor<?> constructor = reflector.getDefaultConstructor();
+      constructor.setAccessible(true);
+      for (int i = 0; i < getters.length; i++) {
+        Field field = fields.get(i);
+        field.setAccessible(true);
+        getters[i] = invokerFactory.createGetFieldInvoker(field);
+        setters[i] = invokerFactory.createSetFieldInvoker(field);
+      }
+      return new BeanCodec(constructor, getters, setters);
+    } catch (RuntimeException e) {
+      // e.g. a class of a module that is not open
+      return UNSUPPORTED;
+    }
+  }
+
+  private static boolean customizesSerialization(Class<?> type) {
+    try {
+      type.getDeclaredField("serialPersistentFields");
+      return true;
+    } catch (NoSuchFieldException e) {
+      // expected
+    }
+    return hasDeclaredMethod(type, "writeReplace") || hasDeclaredMethod(type, "readResolve")
+        || hasDeclaredMethod(type, "readObjectNoData") || hasDeclaredMethod(type, "writeObject", ObjectOutputStream.class)
+        || hasDeclaredMethod(type, "readObject", ObjectInputStream.class);
+  }
+
+  private static boolean hasDeclaredMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+    try {
+      type.getDeclaredMethod(name, parameterTypes);
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private Class<?> classForName(String name) {
+    return classes.computeIfAbsent(name, n -> {
+      try {
+        return Resources.classForName(n);
+      } catch (ClassNotFoundException e) {
+        throw new CacheException("Error deserializing object.  Cause: " + e, e);
+      }
+    });
+  }
+
+  private static boolean isEnum(Class<?> type) {
+    return type.isEnum() || (type.getSuperclass() != null && type.getSuperclass().isEnum());
+  }
+
+  private static boolean isImmutable(Class<?> type) {
+    return type == String.class || type == Integer.class || type == Long.class || type == Short.class || type == Byte.class
+        || type == Boolean.class || type == Character.class || type == Float.class || type == Double.class
+        || type == BigDecimal.class || type == BigInteger.class || type == LocalDate.class || type == LocalTime.class
+        || type == LocalDateTime.class || type == Instant.class || isEnum(type);
+  }
+
+  private final class Writer {
+
+    private final DataOutputStream out;
+    private final Map<Object, Integer> references = new IdentityHashMap<>();
+    private final Map<Class<?>, Integer> classIds = new HashMap<>();
+
+    private Writer(DataOutputStream out) {
+      this.out = out;
+    }
+
+    private void writeValue(Object value) throws IOException, ReflectiveOperationException {
+      if (value == null) {
+        out.writeByte(NULL);
+        return;
+      }
+      Class<?> type = value.getClass();
+      if (type == String.class) {
+        out.writeByte(STRING);
+        writeString((String) value);
+      } else if (type == Integer.class) {
+        out.writeByte(INTEGER);
+        out.writeInt((Integer) value);
+      } else if (type == Long.class) {
+        out.writeByte(LONG);
+        out.writeLong((Long) value);
+      } else if (type == Short.class) {
+        out.writeByte(SHORT);
+        out.writeShort((Short) value);
+      } else if (type == Byte.class) {
+        out.writeByte(BYTE);
+        out.writeByte((Byte) value);
+      } else if (type == Boolean.class) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean((Boolean) value);
+      } else if (type == Character.class) {
+        out.writeByte(CHARACTER);
+        out.writeChar((Character) value);
+      } else if (type == Float.class) {
+        out.writeByte(FLOAT);
+        out.writeFloat((Float) value);
+      } else if (type == Double.class) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) value);
+      } else if (type == BigDecimal.class) {
+        out.writeByte(BIG_DECIMAL);
+        writeBytes(((BigDecimal) value).unscaledValue().toByteArray());
+        out.writeInt(((BigDecimal) value).scale());
+      } else if (type == BigInteger.class) {
+        out.writeByte(BIG_INTEGER);
+        writeBytes(((BigInteger) value).toByteArray());
+      } else if (type == Date.class) {
+        out.writeByte(DATE);
+        out.writeLong(((Date) value).getTime());
+      } else if (type == java.sql.Date.class) {
+        out.writeByte(SQL_DATE);
+        out.writeLong(((Date) value).getTime());
+      } else if (type == Time.class) {
+        out.writeByte(SQL_TIME);
+        out.writeLong(((Date) value).getTime());
+      } else if (type == Timestamp.class) {
+        out.writeByte(TIMESTAMP);
+        out.writeLong(((Timestamp) value).getTime());
+        out.writeInt(((Timestamp) value).getNanos());
+      } else if (type == LocalDate.class) {
+        out.writeByte(LOCAL_DATE);
+        out.writeLong(((LocalDate) value).toEpochDay());
+      } else if (type == LocalTime.class) {
+        out.writeByte(LOCAL_TIME);
+        out.writeLong(((LocalTime) value).toNanoOfDay());
+      } else if (type == LocalDateTime.class) {
+        out.writeByte(LOCAL_DATE_TIME);
+        out.writeLong(((LocalDateTime) value).toLocalDate().toEpochDay());
+        out.writeLong(((LocalDateTime) value).toLocalTime().toNanoOfDay());
+      } else if (type == Instant.class) {
+        out.writeByte(INSTANT);
+        out.writeLong(((Instant) value).getEpochSecond());
+        out.writeInt(((Instant) value).getNano());
+      } else if (isEnum(type)) {
+        out.writeByte(ENUM);
+        writeClass(((Enum<?>) value).getDeclaringClass());
+        writeString(((Enum<?>) value).name());
+      } else {
+        writeObject(type, value);
+      }
+    }
+
+    private void writeObject(Class<?> type, Object value) throws IOException, ReflectiveOperationException {
+      Integer reference = references.get(value);
+      if (reference != null) {
+        out.writeByte(REFERENCE);
+        out.writeInt(reference);
+        return;
+      }
+      // the codec is resolved before the reference is registered, an unsupported type aborts the whole value
+      BeanCodec codec = type == byte[].class || collectionTag(type) != 0 ? null : codecFor(type);
+      references.put(value, references.size());
+      if (type == byte[].class) {
+        out.writeByte(BYTE_ARRAY);
+        writeBytes((byte[]) value);
+      } else if (codec != null) {
+        out.writeByte(BEAN);
+        writeClass(type);
+        for (Invoker getter : codec.getters) {
+          writeValue(getter.invoke(value, null));
+        }
+      } else if (value instanceof Collection) {
+        out.writeByte(collectionTag(type));
+        out.writeInt(((Collection<?>) value).size());
+        for (Object element : (Collection<?>) value) {
+          writeValue(element);
+        }
+      } else {
+        out.writeByte(collectionTag(type));
+        out.writeInt(((Map<?, ?>) value).size());
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+          writeValue(entry.getKey());
+          writeValue(entry.getValue());
+        }
+      }
+    }
+
+    private void writeClass(Class<?> type) throws IOException {
+      Integer id = classIds.get(type);
+      if (id == null) {
+        out.writeInt(-1);
+        writeString(type.getName());
+        classIds.put(type, classIds.size());
+      } else {
+        out.writeInt(id);
+      }
+    }
+
+    private void writeString(String value) throws IOException {
+      writeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeBytes(byte[] value) throws IOException {
+      out.writeInt(value.length);
+      out.write(value);
+    }
+  }
+
+  /**
+   * Access ordered {@link LinkedHashMap}s come back ordered by insertion, the access order cannot be read.
+   */
+  private static byte collectionTag(Class<?> type) {
+    if (type == ArrayList.class) {
+      return ARRAY_LIST;
+    } else if (type == LinkedList.class) {
+      return LINKED_LIST;
+    } else if (type == HashSet.class) {
+      return HASH_SET;
+    } else if (type == LinkedHashSet.class) {
+      return LINKED_HASH_SET;
+    } else if (type == HashMap.class) {
+      return HASH_MAP;
+    } else if (type == LinkedHashMap.class) {
+      return LINKED_HASH_MAP;
+    }
+    return 0;
+  }
+
+  private final class Reader {
+
+    private final DataInputStream in;
+    private final List<Object> references = new ArrayList<>();
+    private final List<Class<?>> classList = new ArrayList<>();
+
+    private Reader(DataInputStream in) {
+      this.in = in;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object readValue() throws IOException, ReflectiveOperationException {
+      byte tag = in.readByte();
+      switch (tag) {
+        case NULL:
+          return null;
+        case REFERENCE:
+          return references.get(in.readInt());
+        case STRING:
+          return readString();
+        case INTEGER:
+          return in.readInt();
+        case LONG:
+          return in.readLong();
+        case SHORT:
+          return in.readShort();
+        case BYTE:
+          return in.readByte();
+        case BOOLEAN:
+          return in.readBoolean();
+        case CHARACTER:
+          return in.readChar();
+        case FLOAT:
+          return in.readFloat();
+        case DOUBLE:
+          return in.readDouble();
+        case BIG_DECIMAL:
+          return new BigDecimal(new BigInteger(readBytes()), in.readInt());
+        case BIG_INTEGER:
+          return new BigInteger(readBytes());
+        case DATE:
+          return new Date(in.readLong());
+        case SQL_DATE:
+          return new java.sql.Date(in.readLong());
+        case SQL_TIME:
+          return new Time(in.readLong());
+        case TIMESTAMP:
+          Timestamp timestamp = new Timestamp(in.readLong());
+          timestamp.setNanos(in.readInt());
+          return timestamp;
+        case LOCAL_DATE:
+          return LocalDate.ofEpochDay(in.readLong());
+        case LOCAL_TIME:
+          return LocalTime.ofNanoOfDay(in.readLong());
+        case LOCAL_DATE_TIME:
+          return LocalDateTime.of(LocalDate.ofEpochDay(in.readLong()), LocalTime.ofNanoOfDay(in.readLong()));
+        case INSTANT:
+          return Instant.ofEpochSecond(in.readLong(), in.readInt());
+        case ENUM:
+          return Enum.valueOf((Class) readClass(), readString());
+        case BYTE_ARRAY:
+          byte[] bytes = readBytes();
+          references.add(bytes);
+          return bytes;
+        case ARRAY_LIST:
+        case LINKED_LIST:
+        case HASH_SET:
+        case LINKED_HASH_SET:
+          return readCollection(tag);
+        case HASH_MAP:
+        case LINKED_HASH_MAP:
+          return readMap(tag);
+        case BEAN:
+          return readBean();
+        default:
+          throw new CacheException("Error deserializing object.  Cause: unknown tag " + tag);
+      }
+    }
+
+    private Object readCollection(byte tag) throws IOException, ReflectiveOperationException {
+      int size = in.readInt();
+      Collection<Object> collection = newCollection(tag, size);
+      references.add(collection);
+      for (int i = 0; i < size; i++) {
+        collection.add(readValue());
+      }
+      return collection;
+    }
+
+    private Object readMap(byte tag) throws IOException, ReflectiveOperationException {
+      int size = in.readInt();
+      Map<Object, Object> map = newMap(tag, size);
+      references.add(map);
+      for (int i = 0; i < size; i++) {
+        Object key = readValue();
+        map.put(key, readValue());
+      }
+      return map;
+    }
+
+    private Object readBean() throws IOException, ReflectiveOperationException {
+      BeanCodec codec = codecFor(readClass());
+      Object bean = codec.constructor.newInstance();
+      references.add(bean);
+      for (Invoker setter : codec.setters) {
+        setter.set(bean, readValue());
+      }
+      return bean;
+    }
+
+    private Class<?> readClass() throws IOException {
+      int id = in.readInt();
+      if (id < 0) {
+        Class<?> type = classForName(readString());
+        classList.add(type);
+        return type;
+      }
+      return classList.get(id);
+    }
+
+    private String readString() throws IOException {
+      return new String(readBytes(), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBytes() throws IOException {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return bytes;
+    }
+  }
+
+  private final class Copier {
+
+    private final Map<Object, Object> copies = new IdentityHashMap<>();
+
+    private Object copy(Object value) throws ReflectiveOperationException {
+      if (value == null) {
+        return null;
+      }
+      Class<?> type = value.getClass();
+      if (isImmutable(type)) {
+        return value;
+      } else if (type == Date.class) {
+        return new Date(((Date) value).getTime());
+      } else if (type == java.sql.Date.class) {
+        return new java.sql.Date(((Date) value).getTime());
+      } else if (type == Time.class) {
+        return new Time(((Date) value).getTime());
+      } else if (type == Timestamp.class) {
+        Timestamp timestamp = new Timestamp(((Timestamp) value).getTime());
+        timestamp.setNanos(((Timestamp) value).getNanos());
+        return timestamp;
+      }
+      Object copy = copies.get(value);
+      if (copy != null) {
+        return copy;
+      }
+      byte tag = collectionTag(type);
+      if (type == byte[].class) {
+        copy = ((byte[]) value).clone();
+        copies.put(value, copy);
+      } else if (tag == 0) {
+        BeanCodec codec = codecFor(type);
+        copy = codec.constructor.newInstance();
+        copies.put(value, copy);
+        for (int i = 0; i < codec.getters.length; i++) {
+          codec.setters[i].set(copy, copy(codec.getters[i].invoke(value, null)));
+        }
+      } else if (value instanceof Collection) {
+        Collection<Object> collection = newCollection(tag, ((Collection<?>) value).size());
+        copies.put(value, collection);
+        for (Object element : (Collection<?>) value) {
+          collection.add(copy(element));
+        }
+        copy = collection;
+      } else {
+        Map<Object, Object> map = newMap(tag, ((Map<?, ?>) value).size());
+        copies.put(value, map);
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+          map.put(copy(entry.getKey()), copy(entry.getValue()));
+        }
+        copy = map;
+      }
+      return copy;
+    }
+  }
+
+  private static Collection<Object> newCollection(byte tag, int size) {
+    switch (tag) {
+      case ARRAY_LIST:
+        return new ArrayList<>(size);
+      case LINKED_LIST:
+        return new LinkedList<>();
+      case HASH_SET:
+        return new HashSet<>(capacity(size));
+      default:
+        return new LinkedHashSet<>(capacity(size));
+    }
+  }
+
+  private static Map<Object, Object> newMap(byte tag, int size) {
+    return tag == HASH_MAP ? new HashMap<>(capacity(size)) : new LinkedHashMap<>(capacity(size));
+  }
+
+  private static int capacity(int size) {
+    return Math.max((int) (size / .75f) + 1, 16);
+  }
+
+  private static final class BeanCodec {
+    private final Constructor<?> constructor;
+    private final Invoker[] getters;
+    private final Invoker[] setters;
+
+    private BeanCodec(Constructor<?> constructor, Invoker[] getters, Invoker[] setters) {
+      this.constructor = constructor;
+      this.getters = getters;
+      this.setters = setters;
+    }
+  }
+
+  private static final class UnsupportedTypeException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private UnsupportedTypeException() {
+      super(null, null, false, false);
+    }
+  }
+
+}
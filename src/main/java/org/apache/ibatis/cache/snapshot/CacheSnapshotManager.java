@@ -0,0 +1,216 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.snapshot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.decorators.SnapshotCache;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.session.Configuration;
+
+/**
+ * Saves the caches declared with {@code snapshot="true"} to the {@code cacheSnapshotDirectory} when the JVM shuts
+ * down, and restores them when the session factory is built.
+ * <p>
+ * The cache of a namespace is saved to {@code <namespace>.snapshot}. Its entries are restored as they are missed,
+ * except the entries of the statements listed in {@code <namespace>.warmup}, one id per line, which are restored
+ * at once by a background thread. A snapshot is only restored when the statements using the cache still have the
+ * same ids, result maps and result types, and when the {@code snapshotVersion} property of the cache did not change.
+ * <p>
+ * Applications stopping without the JVM, e.g. when redeployed, should call {@link #close()}.
+ */
+public class CacheSnapshotManager {
+
+  private static final Log log = LogFactory.getLog(CacheSnapshotManager.class);
+
+  private final Configuration configuration;
+  private final List<SnapshotCache> caches = new CopyOnWriteArrayList<>();
+  private Thread shutdownHook;
+
+  public CacheSnapshotManager(Configuration configuration) {
+    this.configuration = configuration;
+  }
+
+  public void register(SnapshotCache cache) {
+    caches.add(cache);
+  }
+
+  /**
+   * Restores the caches from their snapshots, warms them up in the background and saves them on shutdown.
+   */
+  public synchronized void restore() {
+    final Path directory = getDirectory();
+    if (directory == null || caches.isEmpty()) {
+      return;
+    }
+    final Map<SnapshotCache, Set<String>> warmUps = new TreeMap<>((a, b) -> a.getId().compareTo(b.getId()));
+    for (SnapshotCache cache : caches) {
+      try {
+        SnapshotFile snapshot = SnapshotFile.open(directory.resolve(fileName(cache, ".snapshot")), stampOf(cache),
+            configuration.getCacheSerializer());
+        if (snapshot == null) {
+          continue;
+        }
+        cache.restore(snapshot);
+        Path manifest = directory.resolve(fileName(cache, ".warmup"));
+        if (Files.isRegularFile(manifest)) {
+          warmUps.put(cache, readManifest(manifest));
+        }
+      } catch (IOException e) {
+        log.warn("Error restoring the cache " + cache.getId() + " from its snapshot.  Cause: " + e);
+      }
+    }
+    if (!warmUps.isEmpty()) {
+      Thread thread = new Thread(() -> warmUp(warmUps), "mybatis-cache-warm-up");
+      thread.setDaemon(true);
+      thread.start();
+    }
+    if (shutdownHook == null) {
+      shutdownHook = new Thread(this::save, "mybatis-cache-snapshot");
+      Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+  }
+
+  /**
+   * Saves the caches and removes the shutdown hook, which would otherwise keep the configuration and its class
+   * loader alive until the JVM exits. Call it when the application stops without the JVM, e.g. on undeploy.
+   */
+  public synchronized void close() {
+    if (shutdownHook != null) {
+      try {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      } catch (IllegalStateException e) {
+        // the JVM is shutting down, the hook saves the caches
+        return;
+      }
+      shutdownHook = null;
+    }
+    save();
+  }
+
+  /**
+   * Saves the caches to their snapshots.
+   */
+  public synchronized void save() {
+    final Path directory = getDirectory();
+    if (directory == null) {
+      return;
+    }
+    for (SnapshotCache cache : caches) {
+      try {
+        int count = cache.save(directory.resolve(fileName(cache, ".snapshot")), stampOf(cache));
+        if (log.isDebugEnabled()) {
+          log.debug("Saved " + count + " entries of the cache " + cache.getId() + ".");
+        }
+      } catch (IOException | RuntimeException e) {
+        log.warn("Error saving the cache " + cache.getId() + " to its snapshot.  Cause: " + e);
+      }
+    }
+  }
+
+  /**
+   * Returns the stamp a snapshot of the cache must have been saved with to be restored.
+   */
+  public String stampOf(SnapshotCache cache) {
+    final StringBuilder statements = new StringBuilder();
+    final Map<String, MappedStatement> sorted = new TreeMap<>();
+    // short names are mapped to an ambiguity marker when two namespaces share them
+    for (Object statement : (Collection<?>) configuration.getMappedStatements()) {
+      if (statement instanceof MappedStatement) {
+        MappedStatement mappedStatement = (MappedStatement) statement;
+        if (mappedStatement.getCache() != null && cache.getId().equals(mappedStatement.getCache().getId())) {
+          sorted.put(mappedStatement.getId(), mappedStatement);
+        }
+      }
+    }
+    for (MappedStatement mappedStatement : sorted.values()) {
+      statements.append(mappedStatement.getId()).append('(');
+      for (ResultMap resultMap : mappedStatement.getResultMaps()) {
+        appendResultMap(statements, resultMap, new HashSet<>());
+      }
+      statements.append(')');
+    }
+    return cache.getSnapshotVersion() + '/' + configuration.getCacheSerializer().getClass().getName() + '/'
+        + Integer.toHexString(statements.toString().hashCode()) + '/' + sorted.size();
+  }
+
+  private void appendResultMap(StringBuilder statements, ResultMap resultMap, Set<String> visited) {
+    statements.append(resultMap.getId()).append(':').append(resultMap.getType().getName()).append('[');
+    if (visited.add(resultMap.getId())) {
+      for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+        statements.append(resultMapping.getProperty()).append('=').append(resultMapping.getColumn()).append(':')
+            .append(resultMapping.getJavaType() == null ? null : resultMapping.getJavaType().getName());
+        if (resultMapping.getNestedResultMapId() != null && configuration.hasResultMap(resultMapping.getNestedResultMapId())) {
+          appendResultMap(statements, configuration.getResultMap(resultMapping.getNestedResultMapId()), visited);
+        }
+        statements.append(',');
+      }
+    }
+    statements.append(']');
+  }
+
+  private void warmUp(Map<SnapshotCache, Set<String>> warmUps) {
+    for (Map.Entry<SnapshotCache, Set<String>> warmUp : warmUps.entrySet()) {
+      final Set<String> statementIds = warmUp.getValue();
+      try {
+        int count = warmUp.getKey().warmUp(key -> key instanceof CacheKey
+            && statementIds.contains(String.valueOf(((CacheKey) key).getFirstUpdate())));
+        if (log.isDebugEnabled()) {
+          log.debug("Warmed up " + count + " entries of the cache " + warmUp.getKey().getId() + ".");
+        }
+      } catch (RuntimeException e) {
+        log.warn("Error warming up the cache " + warmUp.getKey().getId() + ".  Cause: " + e);
+      }
+    }
+  }
+
+  private Set<String> readManifest(Path manifest) throws IOException {
+    final Set<String> statementIds = new HashSet<>();
+    for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+      String statementId = line.trim();
+      if (!statementId.isEmpty() && !statementId.startsWith("#")) {
+        statementIds.add(statementId);
+      }
+    }
+    return statementIds;
+  }
+
+  private Path getDirectory() {
+    final String directory = configuration.getCacheSnapshotDirectory();
+    return directory == null ? null : Paths.get(directory);
+  }
+
+  private static String fileName(SnapshotCache cache, String extension) {
+    return cache.getId().replaceAll("[^A-Za-z0-9._-]", "_") + extension;
+  }
+
+}
@@ -0,0 +1,189 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+
+/**
+ * The entries of a cache saved to a file, read through a memory mapping of the file.
+ * <p>
+ * Opening a snapshot only reads its keys, each value is deserialized when it is read for the first time, so
+ * the pages of the values that are never read are never loaded. The snapshot is only opened when its stamp is
+ * the one expected, which changes with the statements of the namespace and the version given to the cache.
+ * <p>
+ * The keys are written with the Java serialization and the values with the serializer of the cache.
+ */
+public final class SnapshotFile {
+
+  private static final Log log = LogFactory.getLog(SnapshotFile.class);
+
+  private static final int MAGIC = 0x4D424353;
+  private static final int FORMAT = 1;
+  private static final CacheSerializer keySerializer = new JavaCacheSerializer();
+
+  private final ByteBuffer buffer;
+  private final CacheSerializer serializer;
+  // the offset of each value in the high bits and its length in the low bits
+  private final Map<Object, Long> index;
+
+  private SnapshotFile(ByteBuffer buffer, CacheSerializer serializer, Map<Object, Long> index) {
+    this.buffer = buffer;
+    this.serializer = serializer;
+    this.index = index;
+  }
+
+  /**
+   * Opens a snapshot, or returns {@code null} when there is none or when it was saved with another stamp.
+   */
+  public static SnapshotFile open(Path file, String stamp, CacheSerializer serializer) throws IOException {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    final ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // the mapping stays valid once the channel is closed
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+        log.warn("Ignoring the cache snapshot " + file + ", it is not a snapshot or was saved by another version.");
+        return null;
+      }
+      String savedStamp = new String(readBytes(buffer), StandardCharsets.UTF_8);
+      if (!savedStamp.equals(stamp)) {
+        log.debug("Ignoring the cache snapshot " + file + ", the statements or the version of the cache changed.");
+        return null;
+      }
+      final int count = buffer.getInt();
+      final Map<Object, Long> index = new ConcurrentHashMap<>(count * 4 / 3 + 1);
+      for (int i = 0; i < count; i++) {
+        Object key = keySerializer.deserialize(readBytes(buffer));
+        int length = buffer.getInt();
+        index.put(key, ((long) buffer.position() << 32) | length);
+        buffer.position(buffer.position() + length);
+      }
+      return new SnapshotFile(buffer, serializer, index);
+    } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException | CacheException e) {
+      log.warn("Ignoring the cache snapshot " + file + ", it cannot be read.  Cause: " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Writes the entries to the file, replacing it at once when complete. Entries that cannot be serialized are left out.
+   *
+   * @return the number of entries written
+   */
+  public static int write(Path file, String stamp, Map<Object, Object> entries, CacheSerializer serializer) throws IOException {
+    final List<byte[]> serialized = new ArrayList<>(entries.size() * 2);
+    for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+      try {
+        byte[] key = keySerializer.serialize(entry.getKey());
+        byte[] value = serializer.serialize(entry.getValue());
+        serialized.add(key);
+        serialized.add(value);
+      } catch (CacheException e) {
+        log.debug("Leaving an entry out of the cache snapshot " + file + ".  Cause: " + e);
+      }
+    }
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    final Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT);
+        writeBytes(out, stamp.getBytes(StandardCharsets.UTF_8));
+        out.writeInt(serialized.size() / 2);
+        for (byte[] bytes : serialized) {
+          writeBytes(out, bytes);
+        }
+      }
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    return serialized.size() / 2;
+  }
+
+  /**
+   * Returns the value saved for this key, or {@code null} when there is none or it cannot be deserialized anymore.
+   */
+  public Object read(Object key) {
+    final Long location = index.get(key);
+    if (location == null) {
+      return null;
+    }
+    final ByteBuffer value = buffer.duplicate();
+    value.position((int) (location >>> 32));
+    final byte[] bytes = new byte[(int) (location & 0xFFFFFFFFL)];
+    value.get(bytes);
+    try {
+      return serializer.deserialize(bytes);
+    } catch (CacheException e) {
+      index.remove(key);
+      log.debug("Dropping an entry of a cache snapshot that cannot be deserialized.  Cause: " + e);
+      return null;
+    }
+  }
+
+  public void remove(Object key) {
+    index.remove(key);
+  }
+
+  /**
+   * Returns the keys not removed yet.
+   */
+  public Set<Object> keys() {
+    return index.keySet();
+  }
+
+  public int size() {
+    return index.size();
+  }
+
+  private static byte[] readBytes(ByteBuffer buffer) {
+    final byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+}
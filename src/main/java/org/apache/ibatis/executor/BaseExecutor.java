@@ -16,6 +16,7 @@
 package org.apache.ibatis.executor;
 
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.impl.LocalCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
 import org.apache.ibatis.cursor.Cursor;
 import org.apache.ibatis.executor.statement.StatementUtil;
@@ -59,11 +60,14 @@ public abstract class BaseExecutor implements Executor {
 
   protected int queryStack;
   private boolean closed;
+  private boolean dirty;
+  private long localCacheHitCount;
+  private long localCacheMissCount;
 
   protected BaseExecutor(Configuration configuration, Transaction transaction) {
     this.transaction = transaction;
     this.deferredLoads = new ConcurrentLinkedQueue<>();
-    this.localCache = new PerpetualCache("LocalCache");
+    this.localCache = new LocalCache("LocalCache", configuration.getLocalCacheMaxEntries());
     this.localOutputParameterCache = new PerpetualCache("LocalOutputParameterCache");
     this.closed = false;
     this.configuration = configuration;
@@ -112,6 +116,7 @@ public abstract class BaseExecutor implements Executor {
       throw new ExecutorException("Executor was closed.");
     }
     clearLocalCache();
+    dirty = true;
     return doUpdate(ms, parameter);
   }
 
@@ -149,12 +154,21 @@ public abstract class BaseExecutor implements Executor {
     List<E> list;
     try {
       queryStack++;
-      list = resultHandler == null ? (List<E>) localCache.getObject(key) : null;
-      if (list != null) {
-        handleLocallyCachedOutputParameters(ms, key, parameter, boundSql);
+      if (queryStack == 1 && !usesLocalCache(ms)) {
+        // the local cache would be cleared before anything could read it, the key is not even built
+        list = doQuery(ms, parameter, rowBounds, resultHandler, boundSql);
       } else {
-        // 如果没有缓存，会从数据库查询
-        list = queryFromDatabase(ms, parameter, rowBounds, resultHandler, key, boundSql);
+        list = resultHandler == null ? (List<E>) localCache.getObject(key) : null;
+        if (list != null) {
+          localCacheHitCount++;
+          handleLocallyCachedOutputParameters(ms, key, parameter, boundSql);
+        } else {
+          if (resultHandler == null) {
+            localCacheMissCount++;
+          }
+          // 如果没有缓存，会从数据库查询
+          list = queryFromDatabase(ms, parameter, rowBounds, resultHandler, key, boundSql);
+        }
       }
     } finally {
       queryStack--;
@@ -169,6 +183,8 @@ public abstract class BaseExecutor implements Executor {
       if (configuration.getLocalCacheScope() == LocalCacheScope.STATEMENT) {
         // issue #482
         clearLocalCache();
+      } else {
+        trimLocalCache();
       }
     }
     return list;
@@ -206,36 +222,43 @@ public abstract class BaseExecutor implements Executor {
     if (closed) {
       throw new ExecutorException("Executor was closed.");
     }
-    CacheKey cacheKey = new CacheKey();
-    cacheKey.update(ms.getId());    //MappedStatement方法
-    cacheKey.update(rowBounds.getOffset()); //翻页偏移
-    cacheKey.update(rowBounds.getLimit());  //页面数量
-    cacheKey.update(boundSql.getSql());   //SQL语句
-    List<ParameterMapping> parameterMappings = boundSql.getParameterMappings(); //参数值
-    TypeHandlerRegistry typeHandlerRegistry = ms.getConfiguration().getTypeHandlerRegistry(); //类型转换
-    // mimic DefaultParameterHandler logic
-    for (ParameterMapping parameterMapping : parameterMappings) {
-      if (parameterMapping.getMode() != ParameterMode.OUT) {
-        Object value;
-        String propertyName = parameterMapping.getProperty();
-        if (boundSql.hasAdditionalParameter(propertyName)) {
-          value = boundSql.getAdditionalParameter(propertyName);
-        } else if (parameterObject == null) {
-          value = null;
-        } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
-          value = parameterObject;
-        } else {
-          MetaObject metaObject = configuration.newMetaObject(parameterObject);
-          value = metaObject.getValue(propertyName);
+    // 参数值只在key第一次被使用(查找一级或二级缓存)时才取出
+    return CacheKey.lazy(boundSql.getParameterMappings().size() + 5, cacheKey -> {
+      cacheKey.update(ms.getId());    //MappedStatement方法
+      cacheKey.update(rowBounds.getOffset()); //翻页偏移
+      cacheKey.update(rowBounds.getLimit());  //页面数量
+      cacheKey.update(ms.getSqlIdentity(boundSql.getSql()));   //SQL语句
+      List<ParameterMapping> parameterMappings = boundSql.getParameterMappings(); //参数值
+      TypeHandlerRegistry typeHandlerRegistry = ms.getConfiguration().getTypeHandlerRegistry(); //类型转换
+      // mimic DefaultParameterHandler logic
+      for (ParameterMapping parameterMapping : parameterMappings) {
+        if (parameterMapping.getMode() != ParameterMode.OUT) {
+          Object value;
+          String propertyName = parameterMapping.getProperty();
+          if (boundSql.hasAdditionalParameter(propertyName)) {
+            value = boundSql.getAdditionalParameter(propertyName);
+          } else if (parameterObject == null) {
+            value = null;
+          } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
+            value = parameterObject;
+          } else {
+            MetaObject metaObject = configuration.newMetaObject(parameterObject);
+            value = metaObject.getValue(propertyName);
+          }
+          cacheKey.update(value);
         }
-        cacheKey.update(value);
       }
-    }
-    if (configuration.getEnvironment() != null) {   //数据源环境
-      // issue #176
-      cacheKey.update(configuration.getEnvironment().getId());
-    }
-    return cacheKey;
+      if (configuration.getEnvironment() != null) {   //数据源环境
+        // issue #176
+        cacheKey.update(configuration.getEnvironment().getId());
+      }
+    });
+  }
+
+  private boolean usesLocalCache(MappedStatement ms) {
+    return configuration.getLocalCacheScope() != LocalCacheScope.STATEMENT
+        || ms.getStatementType() == StatementType.CALLABLE
+        || ms.hasNestedQueries();
   }
 
   @Override
@@ -253,6 +276,7 @@ public abstract class BaseExecutor implements Executor {
     if (required) {
       transaction.commit();
     }
+    dirty = false;
   }
 
   @Override
@@ -265,6 +289,30 @@ public abstract class BaseExecutor implements Executor {
         if (required) {
           transaction.rollback();
         }
+        dirty = false;
+      }
+    }
+  }
+
+  @Override
+  public boolean isDirty() {
+    return dirty;
+  }
+
+  @Override
+  public long getLocalCacheHitCount() {
+    return localCacheHitCount;
+  }
+
+  @Override
+  public long getLocalCacheMissCount() {
+    return localCacheMissCount;
+  }
+
+  private void trimLocalCache() {
+    if (localCache instanceof LocalCache) {
+      for (Object key : ((LocalCache) localCache).trim()) {
+        localOutputParameterCache.removeObject(key);
       }
     }
   }
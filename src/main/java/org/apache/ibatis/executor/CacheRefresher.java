@@ -0,0 +1,166 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+
+/**
+ * Reloads the second level cache entries close to their expiry, see {@link ExpiringCache}, on a small pool of
+ * daemon threads.
+ * <p>
+ * Each reload runs the select again with the parameter values of the hit that requested it, resolved before
+ * the hit returns since the caller may change its parameter object afterwards, on an executor and a connection
+ * of its own, and puts the result in the cache when it completes. Reloads that do not fit in the queue are
+ * dropped, a later hit of their entries requests them again.
+ */
+public class CacheRefresher {
+
+  private static final Log log = LogFactory.getLog(CacheRefresher.class);
+  private static final AtomicInteger poolCount = new AtomicInteger();
+
+  private final Configuration configuration;
+  private final ThreadPoolExecutor threadPool;
+
+  public CacheRefresher(Configuration configuration) {
+    this.configuration = configuration;
+    final String namePrefix = "mybatis-cache-refresh-" + poolCount.incrementAndGet() + "-";
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.threadPool = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1024), runnable -> {
+      Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }, new ThreadPoolExecutor.AbortPolicy());
+    this.threadPool.allowCoreThreadTimeOut(true);
+  }
+
+  public void refresh(ExpiringCache.Refresh refresh, MappedStatement ms, Object parameterObject, RowBounds rowBounds,
+      CacheKey key, BoundSql boundSql) {
+    BoundSql resolvedBoundSql;
+    try {
+      resolvedBoundSql = new ResolvedBoundSql(ms, parameterObject, boundSql);
+    } catch (RuntimeException e) {
+      refresh.cancel();
+      log.warn("Error resolving the parameters to reload a cache entry of " + ms.getId() + ".  Cause: " + e);
+      return;
+    }
+    try {
+      threadPool.execute(() -> refresh.run(() -> reload(ms, rowBounds, key, resolvedBoundSql)));
+    } catch (RejectedExecutionException e) {
+      refresh.cancel();
+    }
+  }
+
+  private void reload(MappedStatement ms, RowBounds rowBounds, CacheKey key, BoundSql boundSql) {
+    Executor executor = null;
+    boolean failed = false;
+    try {
+      executor = newExecutor();
+      // misses the entry, then puts the result when closing
+      executor.query(ms, null, rowBounds, Executor.NO_RESULT_HANDLER, key, boundSql);
+    } catch (Exception e) {
+      failed = true;
+      log.warn("Error reloading a cache entry of " + ms.getId() + ", it will expire.  Cause: " + e);
+    } finally {
+      if (executor != null) {
+        executor.close(failed);
+      }
+    }
+  }
+
+  public void shutdown() {
+    threadPool.shutdown();
+  }
+
+  private Executor newExecutor() {
+    final Environment environment = configuration.getEnvironment();
+    if (environment == null) {
+      throw new ExecutorException("CacheRefresher could not reload.  Environment was not configured.");
+    }
+    final DataSource ds = environment.getDataSource();
+    if (ds == null) {
+      throw new ExecutorException("CacheRefresher could not reload.  DataSource was not configured.");
+    }
+    final Transaction tx = environment.getTransactionFactory().newTransaction(ds, null, false);
+    return configuration.newExecutor(tx, ExecutorType.SIMPLE);
+  }
+
+  /**
+   * The SQL of a hit with the values of its parameters, as the parameter handler would read them.
+   */
+  private static class ResolvedBoundSql extends BoundSql {
+
+    private final Map<String, Object> values = new HashMap<>();
+
+    ResolvedBoundSql(MappedStatement ms, Object parameterObject, BoundSql boundSql) {
+      super(ms.getConfiguration(), boundSql.getSql(), boundSql.getParameterMappings(), null);
+      Configuration configuration = ms.getConfiguration();
+      TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+      MetaObject metaObject = null;
+      // mimic DefaultParameterHandler logic
+      for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+        String propertyName = parameterMapping.getProperty();
+        Object value;
+        if (boundSql.hasAdditionalParameter(propertyName)) {
+          value = boundSql.getAdditionalParameter(propertyName);
+        } else if (parameterObject == null) {
+          value = null;
+        } else if (typeHandlerRegistry.hasTypeHandler(parameterObject.getClass())) {
+          value = parameterObject;
+        } else {
+          if (metaObject == null) {
+            metaObject = configuration.newMetaObject(parameterObject);
+          }
+          value = metaObject.getValue(propertyName);
+        }
+        values.put(propertyName, value);
+      }
+    }
+
+    @Override
+    public boolean hasAdditionalParameter(String name) {
+      return values.containsKey(name);
+    }
+
+    @Override
+    public Object getAdditionalParameter(String name) {
+      return values.get(name);
+    }
+  }
+
+}
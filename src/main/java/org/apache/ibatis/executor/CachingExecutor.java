@@ -16,17 +16,27 @@
 package org.apache.ibatis.executor;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheInvalidationBus;
 import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cache.SqlTableParser;
 import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.TableTaggedCache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
 import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.resultset.CompactRows;
+import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
 import org.apache.ibatis.mapping.*;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.scripting.defaults.DefaultParameterHandler;
+import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.apache.ibatis.transaction.Transaction;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @author Clinton Begin
@@ -35,10 +45,27 @@ import java.util.List;
 public class CachingExecutor implements Executor {
 
   private final Executor delegate;
-  private final TransactionalCacheManager tcm = new TransactionalCacheManager();
+  private final TransactionalCacheManager tcm;
 
   public CachingExecutor(Executor delegate) {
+    this(delegate, (CacheInvalidationBus) null);
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public CachingExecutor(Executor delegate, CacheInvalidationBus invalidationBus) {
+    this.delegate = delegate;
+    this.tcm = new TransactionalCacheManager(invalidationBus);
+    delegate.setExecutorWrapper(this);
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public CachingExecutor(Executor delegate, Configuration configuration) {
     this.delegate = delegate;
+    this.tcm = new TransactionalCacheManager(configuration);
     delegate.setExecutorWrapper(this);
   }
 
@@ -68,7 +95,7 @@ public class CachingExecutor implements Executor {
 
   @Override
   public int update(MappedStatement ms, Object parameterObject) throws SQLException {
-    flushCacheIfRequired(ms);
+    flushCacheIfRequired(ms, parameterObject, null);
     return delegate.update(ms, parameterObject);
   }
 
@@ -91,7 +118,7 @@ public class CachingExecutor implements Executor {
 
   @Override
   public <E> Cursor<E> queryCursor(MappedStatement ms, Object parameter, RowBounds rowBounds) throws SQLException {
-    flushCacheIfRequired(ms);
+    flushCacheIfRequired(ms, parameter, null);
     return delegate.queryCursor(ms, parameter, rowBounds);
   }
 
@@ -115,18 +142,49 @@ public class CachingExecutor implements Executor {
     // 只有M apper.xm l中的<cache>标签不为空才解析。
     Cache cache = ms.getCache();
     if (cache != null) {
-      flushCacheIfRequired(ms);
+      flushCacheIfRequired(ms, parameterObject, boundSql);
       if (ms.isUseCache() && resultHandler == null) {
         ensureNoOutParams(ms, boundSql);
         // 获取二级缓存
         // 从map 中拿出TransactionaICache 对象，这个对象也是对PerpetualCache 经过层层装饰的缓存对象
         // 这个是— 个会递归调用的方法，直到到达PerpetualCache 拿到value。
+        Object cached = tcm.getObject(cache, key);
+        ExpiringCache.Refresh refresh = ExpiringCache.pollRefresh(key);
+        if (refresh != null) {
+          if (cached != null) {
+            ms.getConfiguration().getCacheRefresher().refresh(refresh, ms, parameterObject, rowBounds, key, boundSql);
+          } else {
+            // the hit was hidden by the pending invalidations of this session
+            refresh.cancel();
+          }
+        }
+        if (cached instanceof CompactRows) {
+          return mapRows(ms, parameterObject, rowBounds, boundSql, (CompactRows) cached);
+        }
         @SuppressWarnings("unchecked")
-        List<E> list = (List<E>) tcm.getObject(cache, key);
+        List<E> list = (List<E>) cached;
         if (list == null) {
-          list = delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+          CompactRows.Capture capture = canStoreRows(ms, rowBounds) ? CompactRows.capture(ms) : null;
+          CacheMetrics metrics = ms.getConfiguration().getCacheMetricsRegistry().getMetrics(cache.getId());
+          long start = metrics == null ? 0 : System.nanoTime();
+          try {
+            list = delegate.query(ms, parameterObject, rowBounds, resultHandler, key, boundSql);
+          } finally {
+            if (capture != null) {
+              capture.close();
+            }
+          }
+          if (metrics != null) {
+            metrics.recordLoad(System.nanoTime() - start);
+          }
+          // the rows are not read again when the results come from the local cache
+          Object value = capture != null && capture.getRows() != null ? capture.getRows() : list;
           // 写入二级缓存   此时缓存还没有真正地写入。 只有事务提交的时候缓存才真正写入(close 或者commit 最后分析）。
-          tcm.putObject(cache, key, list); // issue #578 and #116
+          if (cache instanceof TableTaggedCache) {
+            tcm.putObject(cache, key, value, resolveTables(ms, parameterObject, boundSql));
+          } else {
+            tcm.putObject(cache, key, value); // issue #578 and #116
+          }
         }
         return list;
       }
@@ -156,6 +214,25 @@ public class CachingExecutor implements Executor {
     }
   }
 
+  private boolean canStoreRows(MappedStatement ms, RowBounds rowBounds) {
+    // nested selects would run again on each hit, so their results are cached as objects
+    return ms.getConfiguration().isCompactRowCacheEnabled()
+        && ms.getStatementType() != StatementType.CALLABLE
+        && ms.getResultMaps().size() == 1
+        && ms.getResultSets() == null
+        && !ms.hasNestedQueries()
+        && rowBounds.getOffset() == RowBounds.NO_ROW_OFFSET
+        && rowBounds.getLimit() == RowBounds.NO_ROW_LIMIT;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <E> List<E> mapRows(MappedStatement ms, Object parameterObject, RowBounds rowBounds, BoundSql boundSql,
+      CompactRows rows) throws SQLException {
+    DefaultResultSetHandler resultSetHandler = new DefaultResultSetHandler(delegate, ms,
+        new DefaultParameterHandler(ms, parameterObject, boundSql), null, boundSql, rowBounds);
+    return (List<E>) resultSetHandler.handleRows(rows);
+  }
+
   private void ensureNoOutParams(MappedStatement ms, BoundSql boundSql) {
     if (ms.getStatementType() == StatementType.CALLABLE) {
       for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
@@ -176,6 +253,11 @@ public class CachingExecutor implements Executor {
     return delegate.isCached(ms, key);
   }
 
+  @Override
+  public boolean isDirty() {
+    return delegate.isDirty();
+  }
+
   @Override
   public void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType) {
     delegate.deferLoad(ms, resultObject, property, key, targetType);
@@ -186,11 +268,36 @@ public class CachingExecutor implements Executor {
     delegate.clearLocalCache();
   }
 
-  private void flushCacheIfRequired(MappedStatement ms) {
+  @Override
+  public long getLocalCacheHitCount() {
+    return delegate.getLocalCacheHitCount();
+  }
+
+  @Override
+  public long getLocalCacheMissCount() {
+    return delegate.getLocalCacheMissCount();
+  }
+
+  private void flushCacheIfRequired(MappedStatement ms, Object parameterObject, BoundSql boundSql) {
     Cache cache = ms.getCache();
     if (cache != null && ms.isFlushCacheRequired()) {
-      tcm.clear(cache);
+      // a select flushing the cache asks for fresh results, it is not scoped to its tables
+      if (cache instanceof TableTaggedCache && ms.getSqlCommandType() != SqlCommandType.SELECT) {
+        tcm.invalidate(cache, resolveTables(ms, parameterObject, boundSql));
+      } else {
+        tcm.clear(cache);
+      }
+    }
+  }
+
+  private Set<String> resolveTables(MappedStatement ms, Object parameterObject, BoundSql boundSql) {
+    if (ms.getTables() != null) {
+      return ms.getTables();
+    }
+    if (ms.getStatementType() == StatementType.CALLABLE) {
+      return null;
     }
+    return SqlTableParser.parse(boundSql != null ? boundSql.getSql() : ms.getBoundSql(parameterObject).getSql());
   }
 
   @Override
@@ -54,6 +54,34 @@ public interface Executor {
 
   void clearLocalCache();
 
+  /**
+   * Returns the number of queries answered by the local cache.
+   *
+   * @since 3.5.4
+   */
+  default long getLocalCacheHitCount() {
+    return 0;
+  }
+
+  /**
+   * Returns the number of queries that looked up the local cache in vain.
+   *
+   * @since 3.5.4
+   */
+  default long getLocalCacheMissCount() {
+    return 0;
+  }
+
+  /**
+   * Returns whether the executor ran updates that are not committed or rolled back yet.
+   * Executors that do not track their updates are always considered dirty.
+   *
+   * @since 3.5.4
+   */
+  default boolean isDirty() {
+    return true;
+  }
+
   void deferLoad(MappedStatement ms, MetaObject resultObject, String property, CacheKey key, Class<?> targetType);
 
   Transaction getTransaction();
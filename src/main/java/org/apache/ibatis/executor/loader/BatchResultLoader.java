@@ -0,0 +1,254 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.binding.MapperMethod.ParamMap;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.executor.ResultExtractor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+
+/**
+ * Collects the keys of a batch fetched nested select for all the parents of a result set and
+ * runs the nested select once per chunk of {@link ResultMapping#getBatchSize()} keys.
+ * <p>
+ * The nested select receives the keys as a {@code List} parameter (available as {@code list} and {@code collection},
+ * as for a mapper method taking a single {@code List}) and each returned row is handed to the parents whose key
+ * matches its {@link ResultMapping#getBatchKeyProperty() batch key property}. Keys are matched by value, numbers of
+ * different types (such as an {@code Integer} parent key and a {@code Long} or {@code BigDecimal} child key) match
+ * when they are numerically equal.
+ * <p>
+ * Lazy loaders created by {@link #addLazyTarget(Object)} are grouped as well: the first one to be triggered
+ * loads the keys of up to {@code batchSize} unloaded siblings with a single query, and the siblings
+ * take their results from this loader when they are triggered later on.
+ */
+public class BatchResultLoader {
+
+  private final Configuration configuration;
+  private final Executor executor;
+  private final MappedStatement mappedStatement;
+  private final ResultMapping resultMapping;
+  private final ResultExtractor resultExtractor;
+  private final Map<Object, Object> keys = new LinkedHashMap<>();
+  private final List<Target> targets = new ArrayList<>();
+  private final Map<Object, Object> lazyKeys = new LinkedHashMap<>();
+  private final Map<Object, List<Object>> lazyResults = new HashMap<>();
+
+  public BatchResultLoader(Configuration configuration, Executor executor, MappedStatement mappedStatement, ResultMapping resultMapping) {
+    this.configuration = configuration;
+    this.executor = executor;
+    this.mappedStatement = mappedStatement;
+    this.resultMapping = resultMapping;
+    this.resultExtractor = new ResultExtractor(configuration, configuration.getObjectFactory());
+  }
+
+  public void addTarget(MetaObject metaResultObject, Object key) {
+    Object keyValue = normalizeKey(key);
+    keys.putIfAbsent(keyValue, key);
+    targets.add(new Target(metaResultObject, keyValue));
+  }
+
+  public synchronized ResultLoader addLazyTarget(Object key) {
+    Object keyValue = normalizeKey(key);
+    if (!lazyResults.containsKey(keyValue)) {
+      lazyKeys.putIfAbsent(keyValue, key);
+    }
+    // the single key parameter is only used to reload the property after deserialization
+    return new LazyTarget(keyValue, wrapKeys(new ArrayList<>(Collections.singletonList(key))));
+  }
+
+  public boolean isEmpty() {
+    return targets.isEmpty();
+  }
+
+  public void load() throws SQLException {
+    if (targets.isEmpty()) {
+      return;
+    }
+    final String keyProperty = resolveKeyProperty();
+    final List<Object> pendingKeys = new ArrayList<>(keys.values());
+    final Map<Object, List<Object>> resultsByKey = new HashMap<>();
+    final Set<Object> singleKeys = new HashSet<>();
+    final int batchSize = resultMapping.getBatchSize();
+    for (int from = 0; from < pendingKeys.size(); from += batchSize) {
+      List<Object> chunk = new ArrayList<>(pendingKeys.subList(from, Math.min(from + batchSize, pendingKeys.size())));
+      Object parameterObject = wrapKeys(chunk);
+      BoundSql boundSql = mappedStatement.getBoundSql(parameterObject);
+      CacheKey cacheKey = executor.createCacheKey(mappedStatement, parameterObject, RowBounds.DEFAULT, boundSql);
+      if (executor.isCached(mappedStatement, cacheKey)) {
+        // the chunk may be the parameter of an enclosing query still running (a cyclic mapping),
+        // its keys are loaded one by one so that the running ones are deferred
+        for (Object key : chunk) {
+          singleKeys.add(normalizeKey(key));
+        }
+      } else {
+        groupByKey(executor.query(mappedStatement, parameterObject, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER, cacheKey, boundSql),
+            keyProperty, resultsByKey);
+      }
+    }
+    for (Target target : targets) {
+      if (singleKeys.contains(target.key)) {
+        loadSingleKey(target);
+        continue;
+      }
+      List<Object> results = new ArrayList<>(resultsByKey.getOrDefault(target.key, Collections.emptyList()));
+      Object value = resultExtractor.extractObjectFromList(results, resultMapping.getJavaType());
+      if (value != null) {
+        target.metaObject.setValue(resultMapping.getProperty(), value);
+      }
+    }
+    keys.clear();
+    targets.clear();
+  }
+
+  private void loadSingleKey(Target target) throws SQLException {
+    Object parameterObject = wrapKeys(new ArrayList<>(Collections.singletonList(keys.get(target.key))));
+    BoundSql boundSql = mappedStatement.getBoundSql(parameterObject);
+    CacheKey cacheKey = executor.createCacheKey(mappedStatement, parameterObject, RowBounds.DEFAULT, boundSql);
+    if (executor.isCached(mappedStatement, cacheKey)) {
+      executor.deferLoad(mappedStatement, target.metaObject, resultMapping.getProperty(), cacheKey, resultMapping.getJavaType());
+    } else {
+      List<Object> results = executor.query(mappedStatement, parameterObject, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER, cacheKey, boundSql);
+      Object value = resultExtractor.extractObjectFromList(results, resultMapping.getJavaType());
+      if (value != null) {
+        target.metaObject.setValue(resultMapping.getProperty(), value);
+      }
+    }
+  }
+
+  private synchronized Object loadLazily(LazyTarget target) throws SQLException {
+    if (!lazyResults.containsKey(target.key)) {
+      final List<Object> chunk = new ArrayList<>();
+      chunk.add(lazyKeys.remove(target.key));
+      final Iterator<Object> siblingKeys = lazyKeys.values().iterator();
+      while (chunk.size() < resultMapping.getBatchSize() && siblingKeys.hasNext()) {
+        chunk.add(siblingKeys.next());
+        siblingKeys.remove();
+      }
+      final Map<Object, List<Object>> resultsByKey = new HashMap<>();
+      groupByKey(target.selectList(chunk), resolveKeyProperty(), resultsByKey);
+      for (Object key : chunk) {
+        Object keyValue = normalizeKey(key);
+        lazyResults.put(keyValue, resultsByKey.getOrDefault(keyValue, Collections.emptyList()));
+      }
+    }
+    return resultExtractor.extractObjectFromList(new ArrayList<>(lazyResults.get(target.key)), resultMapping.getJavaType());
+  }
+
+  private void groupByKey(List<Object> results, String keyProperty, Map<Object, List<Object>> resultsByKey) {
+    for (Object result : results) {
+      if (result != null) {
+        Object key = configuration.newMetaObject(result).getValue(keyProperty);
+        resultsByKey.computeIfAbsent(normalizeKey(key), k -> new ArrayList<>()).add(result);
+      }
+    }
+  }
+
+  private String resolveKeyProperty() {
+    if (resultMapping.getBatchKeyProperty() != null) {
+      return resultMapping.getBatchKeyProperty();
+    }
+    ResultMap resultMap = mappedStatement.getResultMaps().get(0);
+    if (resultMap.getIdResultMappings().size() == 1 && resultMap.getIdResultMappings().get(0).getProperty() != null) {
+      return resultMap.getIdResultMappings().get(0).getProperty();
+    }
+    throw new ExecutorException("Cannot batch fetch property '" + resultMapping.getProperty() + "' with '" + mappedStatement.getId()
+        + "'. Specify a batchKeyProperty or map a single id property in its result map.");
+  }
+
+  private static Object normalizeKey(Object key) {
+    if (key instanceof BigDecimal) {
+      return ((BigDecimal) key).stripTrailingZeros();
+    } else if (key instanceof Byte || key instanceof Short || key instanceof Integer || key instanceof Long) {
+      return BigDecimal.valueOf(((Number) key).longValue()).stripTrailingZeros();
+    } else if (key instanceof BigInteger) {
+      return new BigDecimal((BigInteger) key).stripTrailingZeros();
+    } else if ((key instanceof Float || key instanceof Double) && Double.isFinite(((Number) key).doubleValue())) {
+      // the decimal representation keeps 1.1f equal to 1.1
+      return new BigDecimal(key.toString()).stripTrailingZeros();
+    }
+    return key;
+  }
+
+  public static Object wrapKeys(List<Object> keys) {
+    ParamMap<Object> parameterObject = new ParamMap<>();
+    parameterObject.put("collection", keys);
+    parameterObject.put("list", keys);
+    return parameterObject;
+  }
+
+  private class LazyTarget extends ResultLoader {
+
+    private final Object key;
+
+    private LazyTarget(Object key, Object parameterObject) {
+      super(BatchResultLoader.this.configuration, BatchResultLoader.this.executor, BatchResultLoader.this.mappedStatement,
+          parameterObject, BatchResultLoader.this.resultMapping.getJavaType(), null, null);
+      this.key = key;
+    }
+
+    @Override
+    public Object loadResult() throws SQLException {
+      resultObject = loadLazily(this);
+      return resultObject;
+    }
+
+    private List<Object> selectList(List<Object> keys) throws SQLException {
+      Executor localExecutor = executor;
+      if (Thread.currentThread().getId() != this.creatorThreadId || localExecutor.isClosed()) {
+        localExecutor = newExecutor();
+      }
+      try {
+        return localExecutor.query(mappedStatement, wrapKeys(keys), RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+      } finally {
+        if (localExecutor != executor) {
+          localExecutor.close(false);
+        }
+      }
+    }
+  }
+
+  private static class Target {
+    private final MetaObject metaObject;
+    private final Object key;
+
+    private Target(MetaObject metaObject, Object key) {
+      this.metaObject = metaObject;
+      this.key = key;
+    }
+  }
+
+}
@@ -0,0 +1,121 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.executor.ExecutorException;
+
+/**
+ * Runs eager nested selects on a bounded pool of daemon threads.
+ * <p>
+ * A {@link ResultLoader} used from another thread than the one that created it opens its own executor,
+ * so each nested select runs on a connection of its own obtained from the environment's data source.
+ * Nested selects issued by a pool thread run sequentially on that thread, and tasks that do not fit
+ * in the queue run on the caller thread, so the pool cannot starve itself.
+ * <p>
+ * Idle threads end after a minute, so that a pool which is no longer used holds no thread and is collected
+ * along with the configuration that owns it.
+ */
+public class ParallelResultLoader {
+
+  private static final ThreadLocal<Boolean> worker = ThreadLocal.withInitial(() -> Boolean.FALSE);
+  private static final AtomicInteger poolCount = new AtomicInteger();
+
+  private final ThreadPoolExecutor threadPool;
+
+  public ParallelResultLoader(int parallelism) {
+    checkParallelism(parallelism);
+    final String namePrefix = "mybatis-nested-query-" + poolCount.incrementAndGet() + "-";
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.threadPool = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(parallelism * 16), runnable -> {
+          Thread thread = new Thread(() -> {
+            worker.set(Boolean.TRUE);
+            runnable.run();
+          }, namePrefix + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    this.threadPool.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Resizes the pool, the threads beyond the new parallelism end once their current task is done.
+   */
+  public void setParallelism(int parallelism) {
+    checkParallelism(parallelism);
+    synchronized (threadPool) {
+      if (parallelism > threadPool.getMaximumPoolSize()) {
+        threadPool.setMaximumPoolSize(parallelism);
+        threadPool.setCorePoolSize(parallelism);
+      } else {
+        threadPool.setCorePoolSize(parallelism);
+        threadPool.setMaximumPoolSize(parallelism);
+      }
+    }
+  }
+
+  public int getParallelism() {
+    return threadPool.getMaximumPoolSize();
+  }
+
+  private static void checkParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("The parallelism must be greater than zero but was " + parallelism);
+    }
+  }
+
+  /**
+   * Returns whether nested selects issued by the current thread may be loaded in parallel.
+   */
+  public static boolean canLoadInParallel() {
+    return !worker.get();
+  }
+
+  /**
+   * Runs the select of the loader and returns its rows, so that the rows of a key can be extracted
+   * for each property loaded with it.
+   */
+  public Future<List<Object>> submit(ResultLoader resultLoader) {
+    return threadPool.submit(() -> resultLoader.<Object>selectList());
+  }
+
+  public static <T> T getResult(Future<T> future) throws SQLException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ExecutorException("Interrupted while waiting for a nested query.  Cause: " + e, e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new ExecutorException("Error loading a nested query.  Cause: " + cause, cause);
+    }
+  }
+
+}
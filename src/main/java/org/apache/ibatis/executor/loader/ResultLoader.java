@@ -72,7 +72,7 @@ public class ResultLoader {
     return resultObject;
   }
 
-  private <E> List<E> selectList() throws SQLException {
+  <E> List<E> selectList() throws SQLException {
     Executor localExecutor = executor;
     if (Thread.currentThread().getId() != this.creatorThreadId || localExecutor.isClosed()) {
       localExecutor = newExecutor();
@@ -86,7 +86,7 @@ public class ResultLoader {
     }
   }
 
-  private Executor newExecutor() {
+  protected Executor newExecutor() {
     final Environment environment = configuration.getEnvironment();
     if (environment == null) {
       throw new ExecutorException("ResultLoader could not load lazily.  Environment was not configured.");
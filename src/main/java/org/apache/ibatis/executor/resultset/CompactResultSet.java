@@ -0,0 +1,440 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+
+import org.apache.ibatis.reflection.ExceptionUtil;
+
+/**
+ * A read-only, forward only result set over {@link CompactRows}, converting the stored values as JDBC drivers do.
+ */
+final class CompactResultSet implements InvocationHandler {
+
+  private final CompactRows rows;
+  private final Object[][] columns;
+  private final Map<String, Integer> columnIndexes = new HashMap<>();
+  private int row = -1;
+  private boolean wasNull;
+  private boolean closed;
+
+  private CompactResultSet(CompactRows rows, Object[][] columns) {
+    this.rows = rows;
+    this.columns = columns;
+    for (int i = rows.getColumnCount() - 1; i >= 0; i--) {
+      // the first column of a label wins, as with drivers
+      columnIndexes.put(rows.getColumnName(i).toUpperCase(Locale.ENGLISH), i + 1);
+      columnIndexes.put(rows.getColumnLabel(i).toUpperCase(Locale.ENGLISH), i + 1);
+    }
+  }
+
+  static ResultSet newInstance(CompactRows rows, Object[][] columns) {
+    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+        new CompactResultSet(rows, columns));
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] params) throws Throwable {
+    try {
+      if (Object.class.equals(method.getDeclaringClass())) {
+        return method.invoke(this, params);
+      }
+      return invoke(proxy, method.getName(), params);
+    } catch (Throwable t) {
+      throw ExceptionUtil.unwrapThrowable(t);
+    }
+  }
+
+  private Object invoke(Object proxy, String name, Object[] params) throws SQLException {
+    final int rowCount = rows.getRowCount();
+    switch (name) {
+      case "next":
+        ensureOpen();
+        if (row < rowCount) {
+          row++;
+        }
+        return row < rowCount;
+      case "close":
+        closed = true;
+        return null;
+      case "isClosed":
+        return closed;
+      case "wasNull":
+        return wasNull;
+      case "getMetaData":
+        return Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(), new Class<?>[] { ResultSetMetaData.class },
+            new MetaData(rows));
+      case "findColumn":
+        return findColumn((String) params[0]);
+      case "getType":
+        return ResultSet.TYPE_FORWARD_ONLY;
+      case "getConcurrency":
+        return ResultSet.CONCUR_READ_ONLY;
+      case "getHoldability":
+        return ResultSet.HOLD_CURSORS_OVER_COMMIT;
+      case "getFetchDirection":
+        return ResultSet.FETCH_FORWARD;
+      case "getFetchSize":
+        return 0;
+      case "setFetchSize":
+      case "setFetchDirection":
+      case "clearWarnings":
+        return null;
+      case "getWarnings":
+      case "getStatement":
+        return null;
+      case "getRow":
+        return row >= 0 && row < rowCount ? row + 1 : 0;
+      case "isBeforeFirst":
+        return row < 0 && rowCount > 0;
+      case "isAfterLast":
+        return row >= rowCount && rowCount > 0;
+      case "isFirst":
+        return row == 0 && rowCount > 0;
+      case "isLast":
+        return row == rowCount - 1 && rowCount > 0;
+      case "unwrap":
+        if (((Class<?>) params[0]).isInstance(proxy)) {
+          return proxy;
+        }
+        throw new SQLException("Cannot unwrap to " + params[0]);
+      case "isWrapperFor":
+        return ((Class<?>) params[0]).isInstance(proxy);
+      default:
+        if (name.startsWith("get") && params != null && params.length > 0) {
+          return getValue(name, params);
+        }
+        throw new SQLFeatureNotSupportedException("Cached rows do not support " + name);
+    }
+  }
+
+  private int findColumn(String columnLabel) throws SQLException {
+    Integer index = columnIndexes.get(columnLabel.toUpperCase(Locale.ENGLISH));
+    if (index == null) {
+      throw new SQLException("Column '" + columnLabel + "' not found.");
+    }
+    return index;
+  }
+
+  private void ensureOpen() throws SQLException {
+    if (closed) {
+      throw new SQLException("The result set is closed.");
+    }
+  }
+
+  private Object getValue(String name, Object[] params) throws SQLException {
+    ensureOpen();
+    if (row < 0 || row >= rows.getRowCount()) {
+      throw new SQLException("The result set has no current row.");
+    }
+    final int column = params[0] instanceof Integer ? (Integer) params[0] : findColumn((String) params[0]);
+    if (column < 1 || column > columns.length) {
+      throw new SQLException("Column index " + column + " out of range.");
+    }
+    final Object value = columns[column - 1][row];
+    wasNull = value == null;
+    switch (name) {
+      case "getString":
+      case "getNString":
+        return toString(value);
+      case "getBoolean":
+        return value != null && toBoolean(value);
+      case "getByte":
+        return value == null ? (byte) 0 : toBigDecimal(value).byteValue();
+      case "getShort":
+        return value == null ? (short) 0 : toBigDecimal(value).shortValue();
+      case "getInt":
+        return value == null ? 0 : value instanceof Number ? ((Number) value).intValue() : toBigDecimal(value).intValue();
+      case "getLong":
+        return value == null ? 0L : value instanceof Number ? ((Number) value).longValue() : toBigDecimal(value).longValue();
+      case "getFloat":
+        return value == null ? 0F : toBigDecimal(value).floatValue();
+      case "getDouble":
+        return value == null ? 0D : value instanceof Number ? ((Number) value).doubleValue() : toBigDecimal(value).doubleValue();
+      case "getBigDecimal":
+        BigDecimal decimal = value == null ? null : toBigDecimal(value);
+        return decimal != null && params.length == 2 ? decimal.setScale((Integer) params[1], RoundingMode.HALF_UP) : decimal;
+      case "getBytes":
+        return toBytes(value);
+      case "getDate":
+        return value == null ? null : value instanceof Date ? new Date(((Date) value).getTime()) : new Date(toTimestamp(value).getTime());
+      case "getTime":
+        return value == null ? null : value instanceof Time ? new Time(((Time) value).getTime()) : new Time(toTimestamp(value).getTime());
+      case "getTimestamp":
+        return value == null ? null : toTimestamp(value);
+      case "getObject":
+        if (params.length == 1) {
+          return toColumnObject(value, rows.getColumnClassName(column - 1));
+        } else if (params[1] instanceof Class) {
+          return toObject(value, (Class<?>) params[1]);
+        }
+        break;
+      case "getClob":
+        return value == null ? null : new SerialClob(toString(value).toCharArray());
+      case "getBlob":
+        return value == null ? null : new SerialBlob(toBytes(value));
+      case "getCharacterStream":
+      case "getNCharacterStream":
+        return value == null ? null : new StringReader(toString(value));
+      case "getBinaryStream":
+        return value == null ? null : new ByteArrayInputStream(toBytes(value));
+      case "getAsciiStream":
+        return value == null ? null : new ByteArrayInputStream(toString(value).getBytes(StandardCharsets.US_ASCII));
+      case "getURL":
+        try {
+          return value == null ? null : new URL(toString(value));
+        } catch (MalformedURLException e) {
+          throw new SQLException("Cannot convert '" + value + "' to an URL.", e);
+        }
+      default:
+        break;
+    }
+    throw new SQLFeatureNotSupportedException("Cached rows do not support " + name + " with these parameters");
+  }
+
+  private static Object toColumnObject(Object value, String className) throws SQLException {
+    if (value == null || className == null) {
+      return toObject(value, Object.class);
+    }
+    switch (className) {
+      case "java.lang.Integer":
+        return toObject(value, Integer.class);
+      case "java.lang.Short":
+        return toObject(value, Short.class);
+      case "java.lang.Byte":
+        return toObject(value, Byte.class);
+      case "java.lang.Float":
+        return toObject(value, Float.class);
+      case "java.math.BigInteger":
+        return toObject(value, BigInteger.class);
+      default:
+        return toObject(value, Object.class);
+    }
+  }
+
+  private static Object toObject(Object value, Class<?> type) throws SQLException {
+    if (value == null) {
+      return null;
+    }
+    if (type == String.class) {
+      return toString(value);
+    } else if (type == Integer.class || type == int.class) {
+      return toBigDecimal(value).intValue();
+    } else if (type == Long.class || type == long.class) {
+      return toBigDecimal(value).longValue();
+    } else if (type == Short.class || type == short.class) {
+      return toBigDecimal(value).shortValue();
+    } else if (type == Byte.class || type == byte.class) {
+      return toBigDecimal(value).byteValue();
+    } else if (type == Float.class || type == float.class) {
+      return toBigDecimal(value).floatValue();
+    } else if (type == Double.class || type == double.class) {
+      return toBigDecimal(value).doubleValue();
+    } else if (type == BigDecimal.class) {
+      return toBigDecimal(value);
+    } else if (type == BigInteger.class) {
+      return toBigDecimal(value).toBigInteger();
+    } else if (type == Boolean.class || type == boolean.class) {
+      return toBoolean(value);
+    } else if (type == byte[].class) {
+      return toBytes(value);
+    } else if (type == Timestamp.class || type == java.util.Date.class) {
+      return toTimestamp(value);
+    } else if (type == Date.class) {
+      return value instanceof Date ? new Date(((Date) value).getTime()) : new Date(toTimestamp(value).getTime());
+    } else if (type == Time.class) {
+      return value instanceof Time ? new Time(((Time) value).getTime()) : new Time(toTimestamp(value).getTime());
+    } else if (type == LocalDateTime.class) {
+      return toTimestamp(value).toLocalDateTime();
+    } else if (type == LocalDate.class) {
+      return value instanceof Date ? ((Date) value).toLocalDate() : toTimestamp(value).toLocalDateTime().toLocalDate();
+    } else if (type == LocalTime.class) {
+      return value instanceof Time ? ((Time) value).toLocalTime() : toTimestamp(value).toLocalDateTime().toLocalTime();
+    } else if (type == OffsetDateTime.class) {
+      return toTimestamp(value).toLocalDateTime().atZone(ZoneId.systemDefault()).toOffsetDateTime();
+    } else if (type == ZonedDateTime.class) {
+      return toTimestamp(value).toLocalDateTime().atZone(ZoneId.systemDefault());
+    } else if (type == Instant.class) {
+      return toTimestamp(value).toInstant();
+    } else if (value instanceof byte[]) {
+      return toBytes(value);
+    } else if (value instanceof java.util.Date) {
+      // dates are mutable, each read gets its own
+      return value instanceof Date ? new Date(((Date) value).getTime())
+          : value instanceof Time ? new Time(((Time) value).getTime()) : toTimestamp(value);
+    } else if (type.isInstance(value)) {
+      return value;
+    }
+    throw new SQLException("Cannot convert '" + value + "' to " + type.getName() + ".");
+  }
+
+  private static String toString(Object value) {
+    if (value == null) {
+      return null;
+    } else if (value instanceof byte[]) {
+      return new String((byte[]) value, StandardCharsets.UTF_8);
+    } else if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).toPlainString();
+    }
+    return value.toString();
+  }
+
+  private static boolean toBoolean(Object value) throws SQLException {
+    if (value instanceof Boolean) {
+      return (Boolean) value;
+    } else if (value instanceof String) {
+      String string = ((String) value).trim();
+      return "1".equals(string) || "true".equalsIgnoreCase(string);
+    }
+    return toBigDecimal(value).signum() != 0;
+  }
+
+  private static BigDecimal toBigDecimal(Object value) throws SQLException {
+    if (value instanceof BigDecimal) {
+      return (BigDecimal) value;
+    } else if (value instanceof Long) {
+      return BigDecimal.valueOf((Long) value);
+    } else if (value instanceof Double) {
+      return BigDecimal.valueOf((Double) value);
+    } else if (value instanceof Boolean) {
+      return (Boolean) value ? BigDecimal.ONE : BigDecimal.ZERO;
+    } else if (value instanceof String) {
+      try {
+        return new BigDecimal(((String) value).trim());
+      } catch (NumberFormatException e) {
+        throw new SQLException("Cannot convert '" + value + "' to a number.", e);
+      }
+    }
+    throw new SQLException("Cannot convert '" + value + "' to a number.");
+  }
+
+  private static byte[] toBytes(Object value) {
+    if (value == null) {
+      return null;
+    } else if (value instanceof byte[]) {
+      return ((byte[]) value).clone();
+    }
+    return toString(value).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static Timestamp toTimestamp(Object value) throws SQLException {
+    if (value instanceof Timestamp) {
+      Timestamp timestamp = new Timestamp(((Timestamp) value).getTime());
+      timestamp.setNanos(((Timestamp) value).getNanos());
+      return timestamp;
+    } else if (value instanceof java.util.Date) {
+      return new Timestamp(((java.util.Date) value).getTime());
+    } else if (value instanceof String) {
+      try {
+        return Timestamp.valueOf(((String) value).trim());
+      } catch (IllegalArgumentException e) {
+        throw new SQLException("Cannot convert '" + value + "' to a timestamp.", e);
+      }
+    }
+    throw new SQLException("Cannot convert '" + value + "' to a timestamp.");
+  }
+
+  private static class MetaData implements InvocationHandler {
+
+    private final CompactRows rows;
+
+    private MetaData(CompactRows rows) {
+      this.rows = rows;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] params) throws Throwable {
+      if (Object.class.equals(method.getDeclaringClass())) {
+        try {
+          return method.invoke(this, params);
+        } catch (Throwable t) {
+          throw ExceptionUtil.unwrapThrowable(t);
+        }
+      }
+      final String name = method.getName();
+      if ("getColumnCount".equals(name)) {
+        return rows.getColumnCount();
+      } else if ("unwrap".equals(name) || "isWrapperFor".equals(name)) {
+        boolean wrapper = ((Class<?>) params[0]).isInstance(proxy);
+        if ("isWrapperFor".equals(name)) {
+          return wrapper;
+        } else if (wrapper) {
+          return proxy;
+        }
+        throw new SQLException("Cannot unwrap to " + params[0]);
+      }
+      final int column = (Integer) params[0] - 1;
+      if (column < 0 || column >= rows.getColumnCount()) {
+        throw new SQLException("Column index " + (column + 1) + " out of range.");
+      }
+      switch (name) {
+        case "getColumnLabel":
+          return rows.getColumnLabel(column);
+        case "getColumnName":
+          return rows.getColumnName(column);
+        case "getColumnType":
+          return rows.getColumnType(column);
+        case "getColumnClassName":
+          return rows.getColumnClassName(column);
+        case "isNullable":
+          return ResultSetMetaData.columnNullableUnknown;
+        case "getColumnTypeName":
+        case "getSchemaName":
+        case "getTableName":
+        case "getCatalogName":
+          return "";
+        case "isReadOnly":
+          return true;
+        case "isCaseSensitive":
+        case "isSigned":
+          return false;
+        default:
+          throw new SQLFeatureNotSupportedException("Cached rows do not support " + name);
+      }
+    }
+  }
+
+}
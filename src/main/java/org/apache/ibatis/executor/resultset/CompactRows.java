@@ -0,0 +1,571 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ibatis.mapping.MappedStatement;
+
+/**
+ * The rows of a result set stored column by column in a compact byte format, so the second level cache can keep
+ * them instead of the objects mapped from them, see the {@code compactRowCacheEnabled} setting.
+ * <p>
+ * Each column holds a bitmap of its nulls followed by its values: integers, dates and times are delta and variable
+ * length encoded, booleans are packed in a bitmap, and the strings of a column that repeat are stored once in a
+ * dictionary. Rows are immutable once read and {@link #newResultSet()} returns a read-only result set over them,
+ * so each hit maps fresh objects.
+ * <p>
+ * Only the columns of the standard numeric, character, binary, date and time types can be stored.
+ */
+public final class CompactRows implements Serializable {
+
+  private static final long serialVersionUID = -2187409735871208874L;
+
+  private static final ThreadLocal<Capture> currentCapture = new ThreadLocal<>();
+
+  static final byte LONG = 0;
+  static final byte BOOLEAN = 1;
+  static final byte DOUBLE = 2;
+  static final byte DECIMAL = 3;
+  static final byte STRING = 4;
+  static final byte BYTES = 5;
+  static final byte DATE = 6;
+  static final byte TIME = 7;
+  static final byte TIMESTAMP = 8;
+
+  private final String[] columnLabels;
+  private final String[] columnNames;
+  private final String[] columnClassNames;
+  private final int[] columnTypes;
+  private final byte[] kinds;
+  private final int rowCount;
+  private final byte[] data;
+  // the values just read, handed to the first result set instead of decoding them again
+  private transient Object[][] columns;
+
+  private CompactRows(String[] columnLabels, String[] columnNames, String[] columnClassNames, int[] columnTypes,
+      byte[] kinds, int rowCount, byte[] data, Object[][] columns) {
+    this.columnLabels = columnLabels;
+    this.columnNames = columnNames;
+    this.columnClassNames = columnClassNames;
+    this.columnTypes = columnTypes;
+    this.kinds = kinds;
+    this.rowCount = rowCount;
+    this.data = data;
+    this.columns = columns;
+  }
+
+  /**
+   * Reads the remaining rows of the result set without closing it, or returns {@code null} before reading
+   * any row when one of its columns cannot be stored.
+   */
+  public static CompactRows read(ResultSet rs) throws SQLException {
+    final ResultSetMetaData metaData = rs.getMetaData();
+    final int columnCount = metaData.getColumnCount();
+    final String[] columnLabels = new String[columnCount];
+    final String[] columnNames = new String[columnCount];
+    final String[] columnClassNames = new String[columnCount];
+    final int[] columnTypes = new int[columnCount];
+    final byte[] kinds = new byte[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      columnClassNames[i] = metaData.getColumnClassName(i + 1);
+      columnTypes[i] = metaData.getColumnType(i + 1);
+      int kind = kindOf(columnTypes[i], columnClassNames[i]);
+      if (kind < 0) {
+        return null;
+      }
+      kinds[i] = (byte) kind;
+      columnLabels[i] = metaData.getColumnLabel(i + 1);
+      columnNames[i] = metaData.getColumnName(i + 1);
+    }
+    final List<Object[]> rows = new ArrayList<>();
+    while (rs.next()) {
+      Object[] row = new Object[columnCount];
+      for (int i = 0; i < columnCount; i++) {
+        row[i] = readValue(rs, i + 1, kinds[i]);
+      }
+      rows.add(row);
+    }
+    final Object[][] columns = new Object[columnCount][rows.size()];
+    for (int r = 0; r < rows.size(); r++) {
+      Object[] row = rows.get(r);
+      for (int i = 0; i < columnCount; i++) {
+        columns[i][r] = row[i];
+      }
+    }
+    final Output out = new Output();
+    for (int i = 0; i < columnCount; i++) {
+      encode(out, kinds[i], columns[i]);
+    }
+    return new CompactRows(columnLabels, columnNames, columnClassNames, columnTypes, kinds, rows.size(), out.toByteArray(), columns);
+  }
+
+  /**
+   * Returns a read-only, forward only result set over the rows.
+   */
+  public ResultSet newResultSet() {
+    Object[][] values = columns;
+    if (values == null) {
+      values = decode();
+    } else {
+      columns = null;
+    }
+    return CompactResultSet.newInstance(this, values);
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Returns the size in bytes of the encoded values.
+   */
+  public int getDataSize() {
+    return data.length;
+  }
+
+  int getColumnCount() {
+    return kinds.length;
+  }
+
+  String getColumnLabel(int column) {
+    return columnLabels[column];
+  }
+
+  String getColumnName(int column) {
+    return columnNames[column];
+  }
+
+  String getColumnClassName(int column) {
+    return columnClassNames[column];
+  }
+
+  int getColumnType(int column) {
+    return columnTypes[column];
+  }
+
+  /**
+   * Starts capturing the rows the current thread reads for the statement, until the capture is closed.
+   * Only the first result set handled for this very statement is captured.
+   */
+  public static Capture capture(MappedStatement mappedStatement) {
+    Capture capture = new Capture(mappedStatement, currentCapture.get());
+    currentCapture.set(capture);
+    return capture;
+  }
+
+  static Capture claimCapture(MappedStatement mappedStatement) {
+    Capture capture = currentCapture.get();
+    if (capture == null || capture.mappedStatement != mappedStatement || capture.claimed) {
+      return null;
+    }
+    capture.claimed = true;
+    return capture;
+  }
+
+  public static final class Capture implements AutoCloseable {
+
+    private final MappedStatement mappedStatement;
+    private final Capture previous;
+    private boolean claimed;
+    private CompactRows rows;
+
+    private Capture(MappedStatement mappedStatement, Capture previous) {
+      this.mappedStatement = mappedStatement;
+      this.previous = previous;
+    }
+
+    /**
+     * Returns the captured rows, or {@code null} when none could be captured.
+     */
+    public CompactRows getRows() {
+      return rows;
+    }
+
+    void setRows(CompactRows rows) {
+      this.rows = rows;
+    }
+
+    @Override
+    public void close() {
+      if (previous == null) {
+        currentCapture.remove();
+      } else {
+        currentCapture.set(previous);
+      }
+    }
+  }
+
+  private static int kindOf(int type, String className) {
+    if (BigInteger.class.getName().equals(className)) {
+      // e.g. unsigned BIGINT
+      return DECIMAL;
+    }
+    switch (type) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+        return LONG;
+      case Types.BIT:
+      case Types.BOOLEAN:
+        return BOOLEAN;
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        return DOUBLE;
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+        return DECIMAL;
+      case Types.CHAR:
+      case Types.VARCHAR:
+      case Types.LONGVARCHAR:
+      case Types.NCHAR:
+      case Types.NVARCHAR:
+      case Types.LONGNVARCHAR:
+      case Types.CLOB:
+      case Types.NCLOB:
+      case Types.NULL:
+        return STRING;
+      case Types.BINARY:
+      case Types.VARBINARY:
+      case Types.LONGVARBINARY:
+      case Types.BLOB:
+        return BYTES;
+      case Types.DATE:
+        return DATE;
+      case Types.TIME:
+        return TIME;
+      case Types.TIMESTAMP:
+        return TIMESTAMP;
+      default:
+        return -1;
+    }
+  }
+
+  private static Object readValue(ResultSet rs, int column, byte kind) throws SQLException {
+    Object value;
+    switch (kind) {
+      case LONG:
+        value = rs.getLong(column);
+        break;
+      case BOOLEAN:
+        value = rs.getBoolean(column);
+        break;
+      case DOUBLE:
+        value = rs.getDouble(column);
+        break;
+      case DECIMAL:
+        value = rs.getBigDecimal(column);
+        break;
+      case STRING:
+        value = rs.getString(column);
+        break;
+      case BYTES:
+        value = rs.getBytes(column);
+        break;
+      case DATE:
+        value = rs.getDate(column);
+        break;
+      case TIME:
+        value = rs.getTime(column);
+        break;
+      default:
+        value = rs.getTimestamp(column);
+        break;
+    }
+    return rs.wasNull() ? null : value;
+  }
+
+  private static void encode(Output out, byte kind, Object[] values) {
+    final int count = values.length;
+    final byte[] nulls = new byte[(count + 7) / 8];
+    for (int r = 0; r < count; r++) {
+      if (values[r] == null) {
+        nulls[r >> 3] |= 1 << (r & 7);
+      }
+    }
+    out.write(nulls, 0, nulls.length);
+    switch (kind) {
+      case BOOLEAN:
+        final byte[] bits = new byte[(count + 7) / 8];
+        for (int r = 0; r < count; r++) {
+          if (Boolean.TRUE.equals(values[r])) {
+            bits[r >> 3] |= 1 << (r & 7);
+          }
+        }
+        out.write(bits, 0, bits.length);
+        break;
+      case STRING:
+        encodeStrings(out, values);
+        break;
+      default:
+        long previous = 0;
+        for (Object value : values) {
+          if (value != null) {
+            previous = encodeValue(out, kind, value, previous);
+          }
+        }
+        break;
+    }
+  }
+
+  private static long encodeValue(Output out, byte kind, Object value, long previous) {
+    switch (kind) {
+      case LONG:
+        long number = (Long) value;
+        out.writeSignedVarLong(number - previous);
+        return number;
+      case DOUBLE:
+        out.writeLong(Double.doubleToLongBits((Double) value));
+        return previous;
+      case DECIMAL:
+        BigDecimal decimal = (BigDecimal) value;
+        out.writeSignedVarLong(decimal.scale());
+        out.writeLengthPrefixed(decimal.unscaledValue().toByteArray());
+        return previous;
+      case BYTES:
+        out.writeLengthPrefixed((byte[]) value);
+        return previous;
+      case TIMESTAMP:
+        Timestamp timestamp = (Timestamp) value;
+        out.writeSignedVarLong(timestamp.getTime() - previous);
+        out.writeVarLong(timestamp.getNanos() % 1000000);
+        return timestamp.getTime();
+      default:
+        // DATE and TIME
+        long time = ((java.util.Date) value).getTime();
+        out.writeSignedVarLong(time - previous);
+        return time;
+    }
+  }
+
+  private static void encodeStrings(Output out, Object[] values) {
+    final Map<Object, Integer> dictionary = new HashMap<>();
+    int nonNulls = 0;
+    for (Object value : values) {
+      if (value != null) {
+        nonNulls++;
+        dictionary.putIfAbsent(value, dictionary.size());
+      }
+    }
+    if (dictionary.size() * 2 <= nonNulls) {
+      out.write(1);
+      final Object[] entries = new Object[dictionary.size()];
+      dictionary.forEach((value, index) -> entries[index] = value);
+      out.writeVarLong(entries.length);
+      for (Object entry : entries) {
+        out.writeLengthPrefixed(((String) entry).getBytes(StandardCharsets.UTF_8));
+      }
+      for (Object value : values) {
+        if (value != null) {
+          out.writeVarLong(dictionary.get(value));
+        }
+      }
+    } else {
+      out.write(0);
+      for (Object value : values) {
+        if (value != null) {
+          out.writeLengthPrefixed(((String) value).getBytes(StandardCharsets.UTF_8));
+        }
+      }
+    }
+  }
+
+  private Object[][] decode() {
+    final Input in = new Input(data);
+    final Object[][] values = new Object[kinds.length][rowCount];
+    for (int i = 0; i < kinds.length; i++) {
+      decode(in, kinds[i], values[i]);
+    }
+    return values;
+  }
+
+  private static void decode(Input in, byte kind, Object[] values) {
+    final int count = values.length;
+    final byte[] nulls = in.readRaw((count + 7) / 8);
+    switch (kind) {
+      case BOOLEAN:
+        final byte[] bits = in.readRaw((count + 7) / 8);
+        for (int r = 0; r < count; r++) {
+          if (!isSet(nulls, r)) {
+            values[r] = isSet(bits, r);
+          }
+        }
+        break;
+      case STRING:
+        if (in.read() == 1) {
+          final String[] dictionary = new String[(int) in.readVarLong()];
+          for (int d = 0; d < dictionary.length; d++) {
+            dictionary[d] = new String(in.readBytes(), StandardCharsets.UTF_8);
+          }
+          for (int r = 0; r < count; r++) {
+            if (!isSet(nulls, r)) {
+              values[r] = dictionary[(int) in.readVarLong()];
+            }
+          }
+        } else {
+          for (int r = 0; r < count; r++) {
+            if (!isSet(nulls, r)) {
+              values[r] = new String(in.readBytes(), StandardCharsets.UTF_8);
+            }
+          }
+        }
+        break;
+      default:
+        long previous = 0;
+        for (int r = 0; r < count; r++) {
+          if (!isSet(nulls, r)) {
+            previous = decodeValue(in, kind, values, r, previous);
+          }
+        }
+        break;
+    }
+  }
+
+  private static long decodeValue(Input in, byte kind, Object[] values, int row, long previous) {
+    switch (kind) {
+      case LONG:
+        long number = previous + in.readSignedVarLong();
+        values[row] = number;
+        return number;
+      case DOUBLE:
+        values[row] = Double.longBitsToDouble(in.readLong());
+        return previous;
+      case DECIMAL:
+        int scale = (int) in.readSignedVarLong();
+        values[row] = new BigDecimal(new BigInteger(in.readBytes()), scale);
+        return previous;
+      case BYTES:
+        values[row] = in.readBytes();
+        return previous;
+      case TIMESTAMP:
+        long millis = previous + in.readSignedVarLong();
+        Timestamp timestamp = new Timestamp(millis);
+        timestamp.setNanos(timestamp.getNanos() + (int) in.readVarLong());
+        values[row] = timestamp;
+        return millis;
+      case DATE:
+        long date = previous + in.readSignedVarLong();
+        values[row] = new Date(date);
+        return date;
+      default:
+        long time = previous + in.readSignedVarLong();
+        values[row] = new Time(time);
+        return time;
+    }
+  }
+
+  private static boolean isSet(byte[] bitmap, int index) {
+    return (bitmap[index >> 3] & (1 << (index & 7))) != 0;
+  }
+
+  private static class Output extends ByteArrayOutputStream {
+
+    private Output() {
+      super(256);
+    }
+
+    private void writeVarLong(long value) {
+      while ((value & ~0x7FL) != 0) {
+        write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      write((int) value);
+    }
+
+    private void writeSignedVarLong(long value) {
+      writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    private void writeLong(long value) {
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        write((int) (value >>> shift));
+      }
+    }
+
+    private void writeLengthPrefixed(byte[] bytes) {
+      writeVarLong(bytes.length);
+      write(bytes, 0, bytes.length);
+    }
+  }
+
+  private static class Input {
+
+    private final byte[] data;
+    private int position;
+
+    private Input(byte[] data) {
+      this.data = data;
+    }
+
+    private int read() {
+      return data[position++] & 0xFF;
+    }
+
+    private long readVarLong() {
+      long value = 0;
+      int shift = 0;
+      int b;
+      do {
+        b = read();
+        value |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return value;
+    }
+
+    private long readSignedVarLong() {
+      long value = readVarLong();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readLong() {
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value = (value << 8) | read();
+      }
+      return value;
+    }
+
+    private byte[] readRaw(int length) {
+      byte[] bytes = new byte[length];
+      System.arraycopy(data, position, bytes, 0, length);
+      position += length;
+      return bytes;
+    }
+
+    private byte[] readBytes() {
+      return readRaw((int) readVarLong());
+    }
+  }
+
+}
@@ -23,6 +23,9 @@ import org.apache.ibatis.cursor.defaults.DefaultCursor;
 import org.apache.ibatis.executor.ErrorContext;
 import org.apache.ibatis.executor.Executor;
 import org.apache.ibatis.executor.ExecutorException;
+import org.apache.ibatis.executor.ResultExtractor;
+import org.apache.ibatis.executor.loader.BatchResultLoader;
+import org.apache.ibatis.executor.loader.ParallelResultLoader;
 import org.apache.ibatis.executor.loader.ResultLoader;
 import org.apache.ibatis.executor.loader.ResultLoaderMap;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
@@ -35,6 +38,7 @@ import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.ReflectorFactory;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
 import org.apache.ibatis.session.*;
+import org.apache.ibatis.transaction.jdbc.JdbcTransaction;
 import org.apache.ibatis.type.JdbcType;
 import org.apache.ibatis.type.TypeHandler;
 import org.apache.ibatis.type.TypeHandlerRegistry;
@@ -45,6 +49,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.Future;
 
 /**
  * @author Clinton Begin
@@ -71,14 +76,27 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private final Map<CacheKey, Object> nestedResultObjects = new HashMap<>();
   private final Map<String, Object> ancestorObjects = new HashMap<>();
   private Object previousRowValue;
+  private boolean streamingCursor;
+  private boolean handlingCursor;
 
   // multiple resultsets
   private final Map<String, ResultMapping> nextResultMaps = new HashMap<>();
   private final Map<CacheKey, List<PendingRelation>> pendingRelations = new HashMap<>();
 
+  // batch fetched nested queries
+  private final Map<ResultMapping, BatchResultLoader> pendingBatchLoaders = new IdentityHashMap<>();
+
+  // nested queries loaded in parallel, each cache key is loaded once for all the rows that share it
+  private final Map<CacheKey, Future<List<Object>>> parallelNestedQueries = new HashMap<>();
+  private final List<PendingNestedQuery> pendingNestedQueries = new ArrayList<>();
+
   // Cached Automappings
   private final Map<String, List<UnMappedColumnAutoMapping>> autoMappingsCache = new HashMap<>();
 
+  // meta object re-pointed to each row of simple result maps whose rows never hand it out
+  private final Map<String, Boolean> rowMetaObjectReusable = new HashMap<>();
+  private MetaObject rowMetaObject;
+
   // temporary marking flag that indicate using constructor mapping (use field to reduce memory usage)
   private boolean useConstructorMappings;
 
@@ -87,6 +105,20 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     public ResultMapping propertyMapping;
   }
 
+  private static class PendingNestedQuery {
+    private final MetaObject metaObject;
+    private final String property;
+    private final Class<?> targetType;
+    private final Future<List<Object>> result;
+
+    private PendingNestedQuery(MetaObject metaObject, String property, Class<?> targetType, Future<List<Object>> result) {
+      this.metaObject = metaObject;
+      this.property = property;
+      this.targetType = targetType;
+      this.result = result;
+    }
+  }
+
   private static class UnMappedColumnAutoMapping {
     private final String column;
     private final String property;
@@ -135,6 +167,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         }
       }
     }
+    loadPendingNestedQueries();
   }
 
   private void handleRefCursorOutputParameter(ResultSet rs, ParameterMapping parameterMapping, MetaObject metaParam) throws SQLException {
@@ -175,7 +208,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
 
     // 首先我们会先拿到—第个结果集，如果没有配置—个查询返回多个结果集的情况，
     // 一般只有一个结果集。如果下面的这个while 循环我们也不用，就是执行一次。
-    ResultSetWrapper rsw = getFirstResultSet(stmt);
+    ResultSetWrapper rsw = captureRows(getFirstResultSet(stmt));
 
     List<ResultMap> resultMaps = mappedStatement.getResultMaps();
     int resultMapCount = resultMaps.size();
@@ -204,6 +237,21 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       }
     }
 
+    loadPendingNestedQueries();
+    return collapseSingleResultList(multipleResults);
+  }
+
+  /**
+   * Maps the rows of a second level cache entry as the rows of the first result set of the statement.
+   *
+   * @since 3.5.4
+   */
+  public List<Object> handleRows(CompactRows rows) throws SQLException {
+    ErrorContext.instance().activity("handling cached rows").object(mappedStatement.getId());
+    final List<Object> multipleResults = new ArrayList<>();
+    handleResultSet(new ResultSetWrapper(rows.newResultSet(), configuration), mappedStatement.getResultMaps().get(0), multipleResults, null);
+    cleanUpAfterHandlingResultSet();
+    loadPendingNestedQueries();
     return collapseSingleResultList(multipleResults);
   }
 
@@ -222,6 +270,8 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     }
 
     ResultMap resultMap = resultMaps.get(0);
+    streamingCursor = resultMap.hasNestedResultMaps() && configuration.isNestedCursorStreamingEnabled();
+    handlingCursor = true;
     return new DefaultCursor<>(this, resultMap, rsw, rowBounds);
   }
 
@@ -242,6 +292,23 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return rs != null ? new ResultSetWrapper(rs, configuration) : null;
   }
 
+  /**
+   * Reads the whole result set beforehand when the second level cache is capturing the rows of the statement.
+   */
+  private ResultSetWrapper captureRows(ResultSetWrapper rsw) throws SQLException {
+    CompactRows.Capture capture = rsw == null ? null : CompactRows.claimCapture(mappedStatement);
+    if (capture == null) {
+      return rsw;
+    }
+    CompactRows rows = CompactRows.read(rsw.getResultSet());
+    if (rows == null) {
+      return rsw;
+    }
+    closeResultSet(rsw.getResultSet());
+    capture.setRows(rows);
+    return new ResultSetWrapper(rows.newResultSet(), configuration);
+  }
+
   private ResultSetWrapper getNextResultSet(Statement stmt) {
     // Making this method tolerant of bad JDBC drivers
     try {
@@ -329,13 +396,18 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   }
 
   protected void checkResultHandler() {
-    if (resultHandler != null && configuration.isSafeResultHandlerEnabled() && !mappedStatement.isResultOrdered()) {
+    if (resultHandler != null && configuration.isSafeResultHandlerEnabled() && !isResultOrdered()) {
       throw new ExecutorException("Mapped Statements with nested result mappings cannot be safely used with a custom ResultHandler. "
           + "Use safeResultHandlerEnabled=false setting to bypass this check "
           + "or ensure your statement returns ordered data and set resultOrdered=true on it.");
     }
   }
 
+  private boolean isResultOrdered() {
+    // a streaming cursor assumes rows are grouped by parent so that only one parent's subtree is retained
+    return mappedStatement.isResultOrdered() || streamingCursor;
+  }
+
   private void handleRowValuesForSimpleResultMap(ResultSetWrapper rsw, ResultMap resultMap, ResultHandler<?> resultHandler, RowBounds rowBounds, ResultMapping parentMapping)
       throws SQLException {
     DefaultResultContext<Object> resultContext = new DefaultResultContext<>();
@@ -352,6 +424,10 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     if (parentMapping != null) {
       linkToParents(rs, parentMapping, rowValue);
     } else {
+      if (this.resultHandler != null) {
+        // a custom result handler may keep the row, its deferred nested queries must be loaded before it sees it
+        loadPendingNestedQueries();
+      }
       callResultHandler(resultHandler, resultContext, rowValue);
     }
   }
@@ -388,7 +464,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     final ResultLoaderMap lazyLoader = new ResultLoaderMap();
     Object rowValue = createResultObject(rsw, resultMap, lazyLoader, columnPrefix);
     if (rowValue != null && !hasTypeHandlerForResultObject(rsw, resultMap.getType())) {
-      final MetaObject metaObject = configuration.newMetaObject(rowValue);
+      final MetaObject metaObject = newRowMetaObject(resultMap, rowValue);
       boolean foundValues = this.useConstructorMappings;
       if (shouldApplyAutomaticMappings(resultMap, false)) {
         foundValues = applyAutomaticMappings(rsw, resultMap, metaObject, columnPrefix) || foundValues;
@@ -400,6 +476,29 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return rowValue;
   }
 
+  private MetaObject newRowMetaObject(ResultMap resultMap, Object rowValue) {
+    if (!rowMetaObjectReusable.computeIfAbsent(resultMap.getId(), id -> isRowMetaObjectReusable(resultMap))) {
+      return configuration.newMetaObject(rowValue);
+    }
+    if (rowMetaObject == null || !rowMetaObject.reset(rowValue)) {
+      rowMetaObject = configuration.newMetaObject(rowValue);
+    }
+    return rowMetaObject;
+  }
+
+  private boolean isRowMetaObjectReusable(ResultMap resultMap) {
+    // lazy loaders, deferred loads and pending relations keep the meta object of the row
+    if (resultMap.hasNestedQueries() || resultMap.hasNestedResultMaps()) {
+      return false;
+    }
+    for (ResultMapping resultMapping : resultMap.getPropertyResultMappings()) {
+      if (resultMapping.getResultSet() != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private boolean shouldApplyAutomaticMappings(ResultMap resultMap, boolean isNested) {
     if (resultMap.getAutoMapping() != null) {
       return resultMap.getAutoMapping();
@@ -598,13 +697,12 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   private Object createResultObject(ResultSetWrapper rsw, ResultMap resultMap, List<Class<?>> constructorArgTypes, List<Object> constructorArgs, String columnPrefix)
       throws SQLException {
     final Class<?> resultType = resultMap.getType();
-    final MetaClass metaType = MetaClass.forClass(resultType, reflectorFactory);
     final List<ResultMapping> constructorMappings = resultMap.getConstructorResultMappings();
     if (hasTypeHandlerForResultObject(rsw, resultType)) {
       return createPrimitiveResultObject(rsw, resultMap, columnPrefix);
     } else if (!constructorMappings.isEmpty()) {
       return createParameterizedResultObject(rsw, resultType, constructorMappings, constructorArgTypes, constructorArgs, columnPrefix);
-    } else if (resultType.isInterface() || metaType.hasDefaultConstructor()) {
+    } else if (resultType.isInterface() || reflectorFactory.findForClass(resultType).hasDefaultConstructor()) {
       return objectFactory.create(resultType);
     } else if (shouldApplyAutomaticMappings(resultMap, false)) {
       return createByConstructorSignature(rsw, resultType, constructorArgTypes, constructorArgs);
@@ -640,25 +738,35 @@ public class DefaultResultSetHandler implements ResultSetHandler {
   }
 
   private Object createByConstructorSignature(ResultSetWrapper rsw, Class<?> resultType, List<Class<?>> constructorArgTypes, List<Object> constructorArgs) throws SQLException {
+    // the constructor only depends on the types of the columns, resolve it once instead of on every row
+    final Constructor<?> constructor = rsw.getAutoMappingConstructor(resultType, type -> resolveConstructorForAutoMapping(rsw, type));
+    if (constructor == null) {
+      throw new ExecutorException("No constructor found in " + resultType.getName() + " matching " + rsw.getClassNames());
+    }
+    return createUsingConstructor(rsw, resultType, constructorArgTypes, constructorArgs, constructor);
+  }
+
+  private Constructor<?> resolveConstructorForAutoMapping(ResultSetWrapper rsw, Class<?> resultType) {
     final Constructor<?>[] constructors = resultType.getDeclaredConstructors();
     final Constructor<?> defaultConstructor = findDefaultConstructor(constructors);
     if (defaultConstructor != null) {
-      return createUsingConstructor(rsw, resultType, constructorArgTypes, constructorArgs, defaultConstructor);
-    } else {
-      for (Constructor<?> constructor : constructors) {
-        if (allowedConstructorUsingTypeHandlers(constructor, rsw.getJdbcTypes())) {
-          return createUsingConstructor(rsw, resultType, constructorArgTypes, constructorArgs, constructor);
-        }
+      return defaultConstructor;
+    }
+    for (Constructor<?> constructor : constructors) {
+      if (allowedConstructorUsingTypeHandlers(constructor, rsw.getJdbcTypes())) {
+        return constructor;
       }
     }
-    throw new ExecutorException("No constructor found in " + resultType.getName() + " matching " + rsw.getClassNames());
+    return null;
   }
 
   private Object createUsingConstructor(ResultSetWrapper rsw, Class<?> resultType, List<Class<?>> constructorArgTypes, List<Object> constructorArgs, Constructor<?> constructor) throws SQLException {
     boolean foundValues = false;
-    for (int i = 0; i < constructor.getParameterTypes().length; i++) {
-      Class<?> parameterType = constructor.getParameterTypes()[i];
-      String columnName = rsw.getColumnNames().get(i);
+    final Class<?>[] parameterTypes = constructor.getParameterTypes();
+    final List<String> columnNames = rsw.getColumnNames();
+    for (int i = 0; i < parameterTypes.length; i++) {
+      Class<?> parameterType = parameterTypes[i];
+      String columnName = columnNames.get(i);
       TypeHandler<?> typeHandler = rsw.getTypeHandler(parameterType, columnName);
       Object value = typeHandler.getResult(rsw.getResultSet(), columnName);
       constructorArgTypes.add(parameterType);
@@ -736,7 +844,9 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     final Class<?> nestedQueryParameterType = nestedQuery.getParameterMap().getType();
     final Object nestedQueryParameterObject = prepareParameterForNestedQuery(rs, propertyMapping, nestedQueryParameterType, columnPrefix);
     Object value = null;
-    if (nestedQueryParameterObject != null) {
+    if (nestedQueryParameterObject != null && propertyMapping.isBatchFetch()) {
+      value = getBatchNestedQueryMappingValue(metaResultObject, propertyMapping, nestedQuery, nestedQueryParameterObject, lazyLoader);
+    } else if (nestedQueryParameterObject != null) {
       final BoundSql nestedBoundSql = nestedQuery.getBoundSql(nestedQueryParameterObject);
       final CacheKey key = executor.createCacheKey(nestedQuery, nestedQueryParameterObject, RowBounds.DEFAULT, nestedBoundSql);
       final Class<?> targetType = propertyMapping.getJavaType();
@@ -748,6 +858,11 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         if (propertyMapping.isLazy()) {
           lazyLoader.addLoader(property, metaResultObject, resultLoader);
           value = DEFERRED;
+        } else if (canLoadInParallel()) {
+          final Future<List<Object>> result = parallelNestedQueries.computeIfAbsent(key,
+              k -> configuration.getParallelResultLoader().submit(resultLoader));
+          pendingNestedQueries.add(new PendingNestedQuery(metaResultObject, property, targetType, result));
+          value = DEFERRED;
         } else {
           value = resultLoader.loadResult();
         }
@@ -756,6 +871,65 @@ public class DefaultResultSetHandler implements ResultSetHandler {
     return value;
   }
 
+  private Object getBatchNestedQueryMappingValue(MetaObject metaResultObject, ResultMapping propertyMapping, MappedStatement nestedQuery,
+                                                 Object key, ResultLoaderMap lazyLoader) throws SQLException {
+    if (handlingCursor) {
+      // cursors never complete the result set up front, so their rows run the batch select with their own key only
+      final Object nestedQueryParameterObject = BatchResultLoader.wrapKeys(new ArrayList<>(Collections.singletonList(key)));
+      final BoundSql nestedBoundSql = nestedQuery.getBoundSql(nestedQueryParameterObject);
+      final CacheKey cacheKey = executor.createCacheKey(nestedQuery, nestedQueryParameterObject, RowBounds.DEFAULT, nestedBoundSql);
+      if (executor.isCached(nestedQuery, cacheKey)) {
+        executor.deferLoad(nestedQuery, metaResultObject, propertyMapping.getProperty(), cacheKey, propertyMapping.getJavaType());
+        return DEFERRED;
+      }
+      final ResultLoader resultLoader = new ResultLoader(configuration, executor, nestedQuery, nestedQueryParameterObject, propertyMapping.getJavaType(), cacheKey, nestedBoundSql);
+      if (propertyMapping.isLazy()) {
+        lazyLoader.addLoader(propertyMapping.getProperty(), metaResultObject, resultLoader);
+        return DEFERRED;
+      }
+      return resultLoader.loadResult();
+    }
+    final BatchResultLoader batchResultLoader = pendingBatchLoaders.computeIfAbsent(propertyMapping,
+        k -> new BatchResultLoader(configuration, executor, nestedQuery, propertyMapping));
+    if (propertyMapping.isLazy()) {
+      // sibling rows share the batch loader, the first one to be triggered loads them all
+      lazyLoader.addLoader(propertyMapping.getProperty(), metaResultObject, batchResultLoader.addLazyTarget(key));
+    } else {
+      batchResultLoader.addTarget(metaResultObject, key);
+    }
+    return DEFERRED;
+  }
+
+  private boolean canLoadInParallel() {
+    // the nested selects run on connections of their own, which neither see the uncommitted changes of the session
+    // nor take part in a managed transaction
+    return mappedStatement.isParallel() && configuration.getParallelResultLoader() != null && !handlingCursor
+        && ParallelResultLoader.canLoadInParallel() && !executor.isDirty() && executor.getTransaction() instanceof JdbcTransaction;
+  }
+
+  private void loadPendingNestedQueries() throws SQLException {
+    for (BatchResultLoader batchResultLoader : pendingBatchLoaders.values()) {
+      batchResultLoader.load();
+    }
+    pendingBatchLoaders.clear();
+    if (pendingNestedQueries.isEmpty()) {
+      return;
+    }
+    try {
+      final ResultExtractor resultExtractor = new ResultExtractor(configuration, objectFactory);
+      for (PendingNestedQuery pendingNestedQuery : pendingNestedQueries) {
+        final List<Object> list = ParallelResultLoader.getResult(pendingNestedQuery.result);
+        final Object value = resultExtractor.extractObjectFromList(list, pendingNestedQuery.targetType);
+        if (value != null) {
+          pendingNestedQuery.metaObject.setValue(pendingNestedQuery.property, value);
+        }
+      }
+    } finally {
+      parallelNestedQueries.clear();
+      pendingNestedQueries.clear();
+    }
+  }
+
   private Object prepareParameterForNestedQuery(ResultSet rs, ResultMapping resultMapping, Class<?> parameterType, String columnPrefix) throws SQLException {
     if (resultMapping.isCompositeResult()) {
       return prepareCompositeKeyParameter(rs, resultMapping, parameterType, columnPrefix);
@@ -852,7 +1026,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
       final CacheKey rowKey = createRowKey(discriminatedResultMap, rsw, null);
       Object partialObject = nestedResultObjects.get(rowKey);
       // issue #577 && #542
-      if (mappedStatement.isResultOrdered()) {
+      if (isResultOrdered()) {
         if (partialObject == null && rowValue != null) {
           nestedResultObjects.clear();
           storeObject(resultHandler, resultContext, rowValue, parentMapping, resultSet);
@@ -865,7 +1039,7 @@ public class DefaultResultSetHandler implements ResultSetHandler {
         }
       }
     }
-    if (rowValue != null && mappedStatement.isResultOrdered() && shouldProcessMoreRows(resultContext, rowBounds)) {
+    if (rowValue != null && isResultOrdered() && shouldProcessMoreRows(resultContext, rowBounds)) {
       storeObject(resultHandler, resultContext, rowValue, parentMapping, resultSet);
       previousRowValue = null;
     } else if (rowValue != null) {
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.executor.resultset;
 
+import java.lang.reflect.Constructor;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -26,6 +27,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Function;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.mapping.ResultMap;
 import org.apache.ibatis.session.Configuration;
@@ -41,6 +43,7 @@ import org.apache.ibatis.type.UnknownTypeHandler;
 public class ResultSetWrapper {
 
   private final ResultSet resultSet;
+  private final Configuration configuration;
   private final TypeHandlerRegistry typeHandlerRegistry;
   private final List<String> columnNames = new ArrayList<>();
   private final List<String> classNames = new ArrayList<>();
@@ -48,9 +51,11 @@ public class ResultSetWrapper {
   private final Map<String, Map<Class<?>, TypeHandler<?>>> typeHandlerMap = new HashMap<>();
   private final Map<String, List<String>> mappedColumnNamesMap = new HashMap<>();
   private final Map<String, List<String>> unMappedColumnNamesMap = new HashMap<>();
+  private final Map<Class<?>, Constructor<?>> autoMappingConstructorMap = new HashMap<>();
 
   public ResultSetWrapper(ResultSet rs, Configuration configuration) throws SQLException {
     super();
+    this.configuration = configuration;
     this.typeHandlerRegistry = configuration.getTypeHandlerRegistry();
     this.resultSet = rs;
     final ResultSetMetaData metaData = rs.getMetaData();
@@ -129,6 +134,16 @@ public class ResultSetWrapper {
     return handler;
   }
 
+  /**
+   * Gets the constructor used to auto-map the columns of this result set to the result type,
+   * resolving it with the given function the first time the result type is read from columns of the same JDBC types.
+   */
+  public Constructor<?> getAutoMappingConstructor(Class<?> resultType, Function<Class<?>, Constructor<?>> resolver) {
+    // remembered here as well, so the rows do not build the signature again
+    return autoMappingConstructorMap.computeIfAbsent(resultType,
+        type -> configuration.getAutoMappingConstructor(type, jdbcTypes, resolver));
+  }
+
   private Class<?> resolveClass(String className) {
     try {
       // #699 className could be null
@@ -24,13 +24,27 @@ import java.util.Properties;
 import org.apache.ibatis.builder.InitializingObject;
 import org.apache.ibatis.cache.Cache;
 import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.CacheSerializer;
 import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.CoalescingCache;
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LoggingCache;
 import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.MetricsCache;
+import org.apache.ibatis.cache.decorators.NearCache;
 import org.apache.ibatis.cache.decorators.ScheduledCache;
 import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.decorators.SnapshotCache;
 import org.apache.ibatis.cache.decorators.SynchronizedCache;
+import org.apache.ibatis.cache.decorators.TableTaggedCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.metrics.CacheMetrics;
+import org.apache.ibatis.cache.metrics.CacheMetricsRegistry;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+import org.apache.ibatis.cache.snapshot.CacheSnapshotManager;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
 
@@ -43,7 +57,17 @@ public class CacheBuilder {
   private final List<Class<? extends Cache>> decorators;
   private Integer size;
   private Long clearInterval;
+  private Long timeToLive;
+  private Double refreshAhead;
   private boolean readWrite;
+  private CacheSerializer serializer;
+  private boolean copyOnRead;
+  private boolean tableInvalidation;
+  private Integer nearCacheSize;
+  private Long nearCacheTimeToLive;
+  private NearCache.WritePolicy nearCacheWritePolicy;
+  private CacheSnapshotManager snapshotManager;
+  private CacheMetricsRegistry metricsRegistry;
   private Properties properties;
   private boolean blocking;
 
@@ -74,11 +98,103 @@ public class CacheBuilder {
     return this;
   }
 
+  /**
+   * Expires each entry on its own after this number of milliseconds, see {@link ExpiringCache}.
+   *
+   * @since 3.5.4
+   */
+  public CacheBuilder timeToLive(Long timeToLive) {
+    this.timeToLive = timeToLive;
+    return this;
+  }
+
+  /**
+   * Reloads in the background the entries hit after this fraction of their time to live.
+   *
+   * @since 3.5.4
+   */
+  public CacheBuilder refreshAhead(Double refreshAhead) {
+    this.refreshAhead = refreshAhead;
+    return this;
+  }
+
   public CacheBuilder readWrite(boolean readWrite) {
     this.readWrite = readWrite;
     return this;
   }
 
+  /**
+   * @since 3.5.4
+   */
+  public CacheBuilder serializer(CacheSerializer serializer) {
+    this.serializer = serializer;
+    return this;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public CacheBuilder copyOnRead(boolean copyOnRead) {
+    this.copyOnRead = copyOnRead;
+    return this;
+  }
+
+  /**
+   * Makes the cache evict on writes only the entries of the modified tables, see {@link TableTaggedCache}.
+   *
+   * @since 3.5.4
+   */
+  public CacheBuilder tableInvalidation(boolean tableInvalidation) {
+    this.tableInvalidation = tableInvalidation;
+    return this;
+  }
+
+  /**
+   * Keeps this number of entries in a local tier in front of the cache, see {@link NearCache}.
+   *
+   * @since 3.5.4
+   */
+  public CacheBuilder nearCacheSize(Integer nearCacheSize) {
+    this.nearCacheSize = nearCacheSize;
+    return this;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public CacheBuilder nearCacheTimeToLive(Long nearCacheTimeToLive) {
+    this.nearCacheTimeToLive = nearCacheTimeToLive;
+    return this;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public CacheBuilder nearCacheWritePolicy(NearCache.WritePolicy nearCacheWritePolicy) {
+    this.nearCacheWritePolicy = nearCacheWritePolicy;
+    return this;
+  }
+
+  /**
+   * Saves the cache on shutdown and restores it on startup with this manager, see {@link SnapshotCache}.
+   *
+   * @since 3.5.4
+   */
+  public CacheBuilder snapshots(CacheSnapshotManager snapshotManager) {
+    this.snapshotManager = snapshotManager;
+    return this;
+  }
+
+  /**
+   * Counts the hits, misses and latencies of the cache and registers it in this registry, see {@link MetricsCache}.
+   *
+   * @since 3.5.4
+   */
+  public CacheBuilder metrics(CacheMetricsRegistry metricsRegistry) {
+    this.metricsRegistry = metricsRegistry;
+    return this;
+  }
+
   public CacheBuilder blocking(boolean blocking) {
     this.blocking = blocking;
     return this;
@@ -93,19 +209,68 @@ public class CacheBuilder {
     setDefaultImplementations();
     Cache cache = newBaseCacheInstance(implementation, id);
     setCacheProperties(cache);
+    CacheMetrics metrics = metricsRegistry == null ? null : new CacheMetrics(id);
+    if (size != null && cache instanceof OffHeapCache) {
+      ((OffHeapCache) cache).setSize(size);
+    }
     // issue #352, do not apply decorators to custom caches
     if (PerpetualCache.class.equals(cache.getClass())) {
       for (Class<? extends Cache> decorator : decorators) {
         cache = newCacheDecoratorInstance(decorator, cache);
         setCacheProperties(cache);
+        setEvictionMetrics(cache, metrics);
       }
-      cache = setStandardDecorators(cache);
+      cache = setStandardDecorators(cache, metrics);
     } else if (!LoggingCache.class.isAssignableFrom(cache.getClass())) {
       cache = new LoggingCache(cache);
     }
+    SnapshotCache snapshotCache = null;
+    if (snapshotManager != null) {
+      snapshotCache = setSnapshotCache(cache);
+      cache = snapshotCache;
+    }
+    if (nearCacheSize != null && nearCacheSize > 0) {
+      cache = setNearCache(cache);
+    }
+    if (metrics != null) {
+      // the table index only forwards the reads, so every lookup is counted, near tier hits included
+      MetricsCache metricsCache = new MetricsCache(cache, metrics);
+      metricsRegistry.register(metricsCache);
+      cache = metricsCache;
+    }
+    if (tableInvalidation) {
+      // the index outlives the entries evicted below it, twice the size leaves room for them
+      TableTaggedCache tableTaggedCache = new TableTaggedCache(cache, size == null ? 2048 : Math.max(2 * size, 16));
+      if (snapshotCache != null) {
+        // the tables of a snapshot entry are unknown, any write evicts it, restored or not
+        snapshotCache.setRestoreListener(tableTaggedCache::indexUntagged);
+        final SnapshotCache pendingSnapshot = snapshotCache;
+        tableTaggedCache.setInvalidationListener(tables -> pendingSnapshot.discardSnapshot());
+      }
+      cache = tableTaggedCache;
+    }
     return cache;
   }
 
+  /**
+   * Returns whether the cache built may block the readers of a missed key until it is put or removed.
+   * Custom caches and custom decorators are assumed to.
+   *
+   * @since 3.5.4
+   */
+  public boolean isBlocking() {
+    if (blocking || implementation != null && !implementation.getName().startsWith("org.apache.ibatis.cache.impl.")) {
+      return true;
+    }
+    for (Class<? extends Cache> decorator : decorators) {
+      if (!decorator.getName().startsWith("org.apache.ibatis.cache.decorators.")
+          || BlockingCache.class.isAssignableFrom(decorator) || CoalescingCache.class.isAssignableFrom(decorator)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void setDefaultImplementations() {
     if (implementation == null) {
       implementation = PerpetualCache.class;
@@ -115,8 +280,10 @@ public class CacheBuilder {
     }
   }
 
-  private Cache setStandardDecorators(Cache cache) {
+  private Cache setStandardDecorators(Cache cache, CacheMetrics metrics) {
     try {
+      // the other decorators added here do not need a lock of their own, the logging cache counts with adders
+      boolean threadSafe = cache instanceof TinyLfuCache && clearInterval == null;
       MetaObject metaCache = SystemMetaObject.forObject(cache);
       if (size != null && metaCache.hasSetter("size")) {
         metaCache.setValue("size", size);
@@ -125,13 +292,27 @@ public class CacheBuilder {
         cache = new ScheduledCache(cache);
         ((ScheduledCache) cache).setClearInterval(clearInterval);
       }
+      if (timeToLive != null) {
+        cache = new ExpiringCache(cache);
+        ((ExpiringCache) cache).setTimeToLive(timeToLive);
+        if (refreshAhead != null) {
+          ((ExpiringCache) cache).setRefreshAhead(refreshAhead);
+        }
+        // applies the timeToLiveJitter property
+        setCacheProperties(cache);
+      }
       if (readWrite) {
-        cache = new SerializedCache(cache);
+        cache = new SerializedCache(cache, serializer == null ? new JavaCacheSerializer() : serializer, copyOnRead);
+        ((SerializedCache) cache).setMetrics(metrics);
       }
       cache = new LoggingCache(cache);
-      cache = new SynchronizedCache(cache);
+      if (!threadSafe) {
+        cache = new SynchronizedCache(cache);
+      }
       if (blocking) {
-        cache = new BlockingCache(cache);
+        cache = new CoalescingCache(cache);
+        // applies the timeout property
+        setCacheProperties(cache);
       }
       return cache;
     } catch (Exception e) {
@@ -139,6 +320,47 @@ public class CacheBuilder {
     }
   }
 
+  private Cache setNearCache(Cache cache) {
+    // callers of a read-write cache may modify what the local tier hands out
+    NearCache nearCache = new NearCache(cache, nearCacheSize,
+        readWrite ? (serializer == null ? new JavaCacheSerializer() : serializer) : null);
+    Long localTimeToLive = nearCacheTimeToLive;
+    if (timeToLive != null && PerpetualCache.class.equals(implementation)) {
+      // local hits never reach the expiring cache, they must fall through to it before expiry or refresh
+      long remoteTimeToLive = refreshAhead == null ? timeToLive : Math.max(1L, (long) (timeToLive * refreshAhead));
+      localTimeToLive = localTimeToLive == null || localTimeToLive == 0 ? remoteTimeToLive : Math.min(localTimeToLive, remoteTimeToLive);
+    }
+    if (localTimeToLive != null) {
+      nearCache.setLocalTimeToLive(localTimeToLive);
+    }
+    nearCache.setWritePolicy(nearCacheWritePolicy);
+    // applies the writeBehindDelay property
+    setCacheProperties(nearCache);
+    return nearCache;
+  }
+
+  private SnapshotCache setSnapshotCache(Cache cache) {
+    SnapshotCache snapshotCache = new SnapshotCache(cache, serializer == null ? new JavaCacheSerializer() : serializer,
+        size == null ? 1024 : size);
+    // applies the snapshotVersion property
+    setCacheProperties(snapshotCache);
+    snapshotManager.register(snapshotCache);
+    return snapshotCache;
+  }
+
+  private void setEvictionMetrics(Cache cache, CacheMetrics metrics) {
+    if (metrics == null) {
+      return;
+    }
+    if (cache instanceof LruCache) {
+      ((LruCache) cache).setMetrics(metrics);
+    } else if (cache instanceof FifoCache) {
+      ((FifoCache) cache).setMetrics(metrics);
+    } else if (cache instanceof TinyLfuCache) {
+      ((TinyLfuCache) cache).setMetrics(metrics);
+    }
+  }
+
   private void setCacheProperties(Cache cache) {
     if (properties != null) {
       MetaObject metaCache = SystemMetaObject.forObject(cache);
@@ -15,11 +15,19 @@
  */
 package org.apache.ibatis.mapping;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.SqlTableParser;
 import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
@@ -33,6 +41,9 @@ import org.apache.ibatis.session.Configuration;
  */
 public final class MappedStatement {
 
+  // dynamic SQL producing more variants is not worth remembering
+  private static final int MAX_SQL_IDENTITIES = 64;
+
   private String resource;
   private Configuration configuration;
   private String id;
@@ -56,6 +67,10 @@ public final class MappedStatement {
   private Log statementLog;
   private LanguageDriver lang;
   private String[] resultSets;
+  private Set<String> tables;
+  private boolean parallel;
+  private final Map<String, String> sqlIdentities = new ConcurrentHashMap<>();
+  private volatile Boolean nestedQueries;
 
   MappedStatement() {
     // constructor disabled
@@ -183,6 +198,35 @@ public final class MappedStatement {
       return this;
     }
 
+    /**
+     * Declares the comma separated tables the statement reads or writes, used to invalidate cache entries by table.
+     *
+     * @since 3.5.4
+     */
+    public Builder tables(String tables) {
+      String[] names = delimitedStringToArray(tables);
+      if (names == null) {
+        mappedStatement.tables = null;
+      } else {
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String name : names) {
+          normalized.add(SqlTableParser.normalize(name));
+        }
+        mappedStatement.tables = Collections.unmodifiableSet(normalized);
+      }
+      return this;
+    }
+
+    /**
+     * Loads the eager nested selects of the statement in parallel, see {@link Configuration#setNestedQueryParallelism(int)}.
+     *
+     * @since 3.5.4
+     */
+    public Builder parallel(boolean parallel) {
+      mappedStatement.parallel = parallel;
+      return this;
+    }
+
     public MappedStatement build() {
       assert mappedStatement.configuration != null;
       assert mappedStatement.id != null;
@@ -217,6 +261,69 @@ public final class MappedStatement {
     return hasNestedResultMaps;
   }
 
+  /**
+   * Indicates whether mapping the results may run other selects, through the nested selects of the result maps,
+   * of their nested result maps or of their discriminator cases.
+   *
+   * @since 3.5.4
+   */
+  public boolean hasNestedQueries() {
+    Boolean result = nestedQueries;
+    if (result == null) {
+      result = findNestedQueries();
+      nestedQueries = result;
+    }
+    return result;
+  }
+
+  private boolean findNestedQueries() {
+    Set<String> visited = new HashSet<>();
+    Deque<ResultMap> pending = new ArrayDeque<>(resultMaps);
+    while (!pending.isEmpty()) {
+      ResultMap resultMap = pending.pop();
+      if (!visited.add(resultMap.getId())) {
+        continue;
+      }
+      if (resultMap.hasNestedQueries()) {
+        return true;
+      }
+      List<String> resultMapIds = new ArrayList<>();
+      for (ResultMapping resultMapping : resultMap.getResultMappings()) {
+        if (resultMapping.getNestedResultMapId() != null) {
+          resultMapIds.add(resultMapping.getNestedResultMapId());
+        }
+      }
+      if (resultMap.getDiscriminator() != null) {
+        resultMapIds.addAll(resultMap.getDiscriminator().getDiscriminatorMap().values());
+      }
+      for (String resultMapId : resultMapIds) {
+        if (!configuration.hasResultMap(resultMapId)) {
+          return true;
+        }
+        pending.push(configuration.getResultMap(resultMapId));
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the first SQL text equal to this one run by this statement, so that the cache keys holding it
+   * compare it by reference and do not hash it again.
+   *
+   * @since 3.5.4
+   */
+  public String getSqlIdentity(String sql) {
+    String identity = sqlIdentities.get(sql);
+    if (identity != null) {
+      return identity;
+    }
+    if (sqlIdentities.size() >= MAX_SQL_IDENTITIES) {
+      return sql;
+    }
+    identity = sqlIdentities.putIfAbsent(sql, sql);
+    return identity == null ? sql : identity;
+  }
+
   public Integer getFetchSize() {
     return fetchSize;
   }
@@ -293,6 +400,24 @@ public final class MappedStatement {
     return resultSets;
   }
 
+  /**
+   * Returns the declared tables, or {@code null} when they are inferred from the SQL.
+   *
+   * @since 3.5.4
+   */
+  public Set<String> getTables() {
+    return tables;
+  }
+
+  /**
+   * Returns whether the eager nested selects of the statement may be loaded in parallel.
+   *
+   * @since 3.5.4
+   */
+  public boolean isParallel() {
+    return parallel;
+  }
+
   public BoundSql getBoundSql(Object parameterObject) {
     BoundSql boundSql = sqlSource.getBoundSql(parameterObject);
     List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
@@ -45,6 +45,8 @@ public class ResultMapping {
   private String resultSet;
   private String foreignColumn;
   private boolean lazy;
+  private int batchSize;
+  private String batchKeyProperty;
 
   ResultMapping() {
   }
@@ -132,6 +134,16 @@ public class ResultMapping {
       return this;
     }
 
+    public Builder batchSize(int batchSize) {
+      resultMapping.batchSize = batchSize;
+      return this;
+    }
+
+    public Builder batchKeyProperty(String batchKeyProperty) {
+      resultMapping.batchKeyProperty = batchKeyProperty;
+      return this;
+    }
+
     public ResultMapping build() {
       // lock down collections
       resultMapping.flags = Collections.unmodifiableList(resultMapping.flags);
@@ -167,6 +179,15 @@ public class ResultMapping {
           throw new IllegalStateException("There should be the same number of columns and foreignColumns in property " + resultMapping.property);
         }
       }
+      if (resultMapping.batchSize < 0) {
+        throw new IllegalStateException("The batchSize cannot be negative in property " + resultMapping.property);
+      }
+      if (resultMapping.batchSize > 0 && (resultMapping.nestedQueryId == null || !resultMapping.composites.isEmpty())) {
+        throw new IllegalStateException("Batch fetching requires a nested select with a single key column in property " + resultMapping.property);
+      }
+      if (resultMapping.batchSize > 0 && resultMapping.flags.contains(ResultFlag.CONSTRUCTOR)) {
+        throw new IllegalStateException("Batch fetching cannot set constructor arguments, in property " + resultMapping.property);
+      }
     }
 
     private void resolveTypeHandler() {
@@ -251,6 +272,28 @@ public class ResultMapping {
     this.lazy = lazy;
   }
 
+  /**
+   * Returns the maximum number of keys passed to the nested select at once, or 0 when the nested select runs once per row.
+   *
+   * @since 3.5.4
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public boolean isBatchFetch() {
+    return batchSize > 0;
+  }
+
+  /**
+   * Returns the property of the nested select results holding the key, or null to use the id property of its result map.
+   *
+   * @since 3.5.4
+   */
+  public String getBatchKeyProperty() {
+    return batchKeyProperty;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -294,6 +337,8 @@ public class ResultMapping {
     sb.append(", resultSet='").append(resultSet).append('\'');
     sb.append(", foreignColumn='").append(foreignColumn).append('\'');
     sb.append(", lazy=").append(lazy);
+    sb.append(", batchSize=").append(batchSize);
+    sb.append(", batchKeyProperty='").append(batchKeyProperty).append('\'');
     sb.append('}');
     return sb.toString();
   }
@@ -0,0 +1,152 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection;
+
+import java.lang.ref.WeakReference;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.ibatis.reflection.invoker.InvokerFactory;
+
+/**
+ * A reflector factory that does not keep the classes it reflects, nor their class loaders, reachable.
+ * <p>
+ * Reflectors are stored in a {@link ClassValue}, so a cached reflector is found without locking and goes away with its
+ * class. When more than {@code maxSize} reflectors were built, the oldest ones are evicted first. The bound is
+ * approximate, as two threads may build the reflector of the same class at the same time. It can be set with the
+ * {@code maxSize} property of the {@code <reflectorFactory>} element.
+ */
+public class BoundedReflectorFactory extends DefaultReflectorFactory {
+
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  private volatile int maxSize;
+  private final Queue<WeakReference<Class<?>>> insertionOrder = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private volatile ClassValue<Reflector> reflectors = newReflectors();
+
+  public BoundedReflectorFactory() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public BoundedReflectorFactory(int maxSize) {
+    setMaxSize(maxSize);
+  }
+
+  @Override
+  public void setProperties(Properties properties) {
+    String maxSizeProperty = properties.getProperty("maxSize");
+    if (maxSizeProperty != null) {
+      setMaxSize(Integer.parseInt(maxSizeProperty));
+    }
+  }
+
+  @Override
+  public Reflector findForClass(Class<?> type) {
+    if (!isClassCacheEnabled()) {
+      return new Reflector(type, getInvokerFactory());
+    }
+    requests.increment();
+    return reflectors.get(type);
+  }
+
+  @Override
+  public void setInvokerFactory(InvokerFactory invokerFactory) {
+    super.setInvokerFactory(invokerFactory);
+    clear();
+  }
+
+  /**
+   * Discards all the cached reflectors.
+   */
+  public void clear() {
+    reflectors = newReflectors();
+    insertionOrder.clear();
+    size.set(0);
+  }
+
+  private ClassValue<Reflector> newReflectors() {
+    return new ClassValue<Reflector>() {
+      @Override
+      protected Reflector computeValue(Class<?> type) {
+        misses.increment();
+        insertionOrder.add(new WeakReference<>(type));
+        if (size.incrementAndGet() > maxSize) {
+          evictOldest(this);
+        }
+        return new Reflector(type, getInvokerFactory());
+      }
+    };
+  }
+
+  private void evictOldest(ClassValue<Reflector> owner) {
+    WeakReference<Class<?>> oldest = insertionOrder.poll();
+    if (oldest != null) {
+      size.decrementAndGet();
+      Class<?> type = oldest.get();
+      // a collected class has already left the cache
+      if (type != null) {
+        owner.remove(type);
+        evictions.increment();
+      }
+    }
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Sets the number of reflectors beyond which the oldest ones are evicted, the reflectors already beyond a lowered
+   * size are evicted at once.
+   */
+  public void setMaxSize(int maxSize) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("The maximum size must be greater than zero but was " + maxSize);
+    }
+    this.maxSize = maxSize;
+    ClassValue<Reflector> owner = reflectors;
+    while (size.get() > maxSize && !insertionOrder.isEmpty()) {
+      evictOldest(owner);
+    }
+  }
+
+  /**
+   * Returns the number of reflectors built and not evicted yet, including the ones of classes already collected.
+   */
+  public int size() {
+    return size.get();
+  }
+
+  public long getHitCount() {
+    return requests.sum() - misses.sum();
+  }
+
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+}
@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.property.PropertyPath;
 import org.apache.ibatis.reflection.property.PropertyTokenizer;
 import org.apache.ibatis.reflection.wrapper.BeanWrapper;
 import org.apache.ibatis.reflection.wrapper.CollectionWrapper;
@@ -32,7 +33,7 @@ import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
  */
 public class MetaObject {
 
-  private final Object originalObject;
+  private Object originalObject;
   private final ObjectWrapper objectWrapper;
   private final ObjectFactory objectFactory;
   private final ObjectWrapperFactory objectWrapperFactory;
@@ -65,6 +66,24 @@ public class MetaObject {
     }
   }
 
+  /**
+   * Points this meta object to another bean of the same class, reusing its wrapper and the resolved class metadata.
+   * Beans wrapped by an {@link ObjectWrapperFactory}, maps and collections cannot be reset.
+   *
+   * @param object the bean to point to
+   * @return false, leaving this meta object unchanged, when the object cannot share the wrapper
+   * @since 3.5.4
+   */
+  public boolean reset(Object object) {
+    if (object == null || object instanceof ObjectWrapper || objectWrapper.getClass() != BeanWrapper.class
+        || object.getClass() != originalObject.getClass() || objectWrapperFactory.hasWrapperFor(object)) {
+      return false;
+    }
+    ((BeanWrapper) objectWrapper).reset(object);
+    this.originalObject = object;
+    return true;
+  }
+
   public ObjectFactory getObjectFactory() {
     return objectFactory;
   }
@@ -110,35 +129,35 @@ public class MetaObject {
   }
 
   public Object getValue(String name) {
-    PropertyTokenizer prop = new PropertyTokenizer(name);
-    if (prop.hasNext()) {
-      MetaObject metaValue = metaObjectForProperty(prop.getIndexedName());
-      if (metaValue == SystemMetaObject.NULL_META_OBJECT) {
+    PropertyPath path = PropertyPath.forName(name);
+    int last = path.size() - 1;
+    MetaObject metaObject = this;
+    for (int i = 0; i < last; i++) {
+      metaObject = metaObject.metaObjectForProperty(path.getSegment(i));
+      if (metaObject == SystemMetaObject.NULL_META_OBJECT) {
         return null;
-      } else {
-        return metaValue.getValue(prop.getChildren());
       }
-    } else {
-      return objectWrapper.get(prop);
     }
+    return metaObject.objectWrapper.get(path.getToken(last));
   }
 
   public void setValue(String name, Object value) {
-    PropertyTokenizer prop = new PropertyTokenizer(name);
-    if (prop.hasNext()) {
-      MetaObject metaValue = metaObjectForProperty(prop.getIndexedName());
+    PropertyPath path = PropertyPath.forName(name);
+    int last = path.size() - 1;
+    MetaObject metaObject = this;
+    for (int i = 0; i < last; i++) {
+      MetaObject metaValue = metaObject.metaObjectForProperty(path.getSegment(i));
       if (metaValue == SystemMetaObject.NULL_META_OBJECT) {
         if (value == null) {
           // don't instantiate child path if value is null
           return;
         } else {
-          metaValue = objectWrapper.instantiatePropertyValue(name, prop, objectFactory);
+          metaValue = metaObject.objectWrapper.instantiatePropertyValue(path.getName(i), path.getToken(i), metaObject.objectFactory);
         }
       }
-      metaValue.setValue(prop.getChildren(), value);
-    } else {
-      objectWrapper.set(prop, value);
+      metaObject = metaValue;
     }
+    metaObject.objectWrapper.set(path.getToken(last), value);
   }
 
   public MetaObject metaObjectForProperty(String name) {
@@ -146,6 +165,11 @@ public class MetaObject {
     return MetaObject.forObject(value, objectFactory, objectWrapperFactory, reflectorFactory);
   }
 
+  private MetaObject metaObjectForProperty(PropertyTokenizer segment) {
+    Object value = objectWrapper.get(segment);
+    return MetaObject.forObject(value, objectFactory, objectWrapperFactory, reflectorFactory);
+  }
+
   public ObjectWrapper getObjectWrapper() {
     return objectWrapper;
   }
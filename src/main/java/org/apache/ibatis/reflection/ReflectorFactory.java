@@ -15,6 +15,8 @@
  */
 package org.apache.ibatis.reflection;
 
+import java.util.Properties;
+
 public interface ReflectorFactory {
 
   boolean isClassCacheEnabled();
@@ -22,4 +24,13 @@ public interface ReflectorFactory {
   void setClassCacheEnabled(boolean classCacheEnabled);
 
   Reflector findForClass(Class<?> type);
+
+  /**
+   * Sets the properties of the {@code <reflectorFactory>} element.
+   *
+   * @since 3.5.4
+   */
+  default void setProperties(Properties properties) {
+    // NOP
+  }
 }
\ No newline at end of file
@@ -15,6 +15,8 @@
  */
 package org.apache.ibatis.reflection.factory;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
@@ -28,6 +30,8 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 import org.apache.ibatis.reflection.ReflectionException;
@@ -40,6 +44,9 @@ public class DefaultObjectFactory implements ObjectFactory, Serializable {
 
   private static final long serialVersionUID = -8855120656740914948L;
 
+  // kept by each class rather than in a map, which would keep the classes and their class loaders alive
+  private transient ClassValue<ConcurrentMap<List<Class<?>>, Constructor<?>>> constructors = newConstructors();
+
   @Override
   public <T> T create(Class<T> type) {
     return create(type, null, null);
@@ -57,7 +64,7 @@ public class DefaultObjectFactory implements ObjectFactory, Serializable {
     try {
       Constructor<T> constructor;
       if (constructorArgTypes == null || constructorArgs == null) {
-        constructor = type.getDeclaredConstructor();
+        constructor = getConstructor(type, Collections.emptyList());
         try {
           return constructor.newInstance();
         } catch (IllegalAccessException e) {
@@ -69,7 +76,7 @@ public class DefaultObjectFactory implements ObjectFactory, Serializable {
           }
         }
       }
-      constructor = type.getDeclaredConstructor(constructorArgTypes.toArray(new Class[0]));
+      constructor = getConstructor(type, constructorArgTypes);
       try {
         return constructor.newInstance(constructorArgs.toArray(new Object[0]));
       } catch (IllegalAccessException e) {
@@ -89,6 +96,32 @@ public class DefaultObjectFactory implements ObjectFactory, Serializable {
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private <T> Constructor<T> getConstructor(Class<T> type, List<Class<?>> constructorArgTypes) throws NoSuchMethodException {
+    // getDeclaredConstructor copies the constructor, which would also have to be made accessible again on every call
+    Map<List<Class<?>>, Constructor<?>> typeConstructors = constructors.get(type);
+    Constructor<?> constructor = typeConstructors.get(constructorArgTypes);
+    if (constructor == null) {
+      constructor = type.getDeclaredConstructor(constructorArgTypes.toArray(new Class[0]));
+      typeConstructors.putIfAbsent(new ArrayList<>(constructorArgTypes), constructor);
+    }
+    return (Constructor<T>) constructor;
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    constructors = newConstructors();
+  }
+
+  private static ClassValue<ConcurrentMap<List<Class<?>>, Constructor<?>>> newConstructors() {
+    return new ClassValue<ConcurrentMap<List<Class<?>>, Constructor<?>>>() {
+      @Override
+      protected ConcurrentMap<List<Class<?>>, Constructor<?>> computeValue(Class<?> type) {
+        return new ConcurrentHashMap<>();
+      }
+    };
+  }
+
   protected Class<?> resolveInterface(Class<?> type) {
     Class<?> classToCreate;
     if (type == List.class || type == Collection.class || type == Iterable.class) {
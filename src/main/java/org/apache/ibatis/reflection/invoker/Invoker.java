@@ -23,5 +23,12 @@ import java.lang.reflect.InvocationTargetException;
 public interface Invoker {
   Object invoke(Object target, Object[] args) throws IllegalAccessException, InvocationTargetException;
 
+  /**
+   * Invokes a setter with a single value. Invokers that do not need an argument array override it to avoid allocating one.
+   */
+  default void set(Object target, Object value) throws IllegalAccessException, InvocationTargetException {
+    invoke(target, new Object[] {value});
+  }
+
   Class<?> getType();
 }
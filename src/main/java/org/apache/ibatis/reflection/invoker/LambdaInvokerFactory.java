@@ -0,0 +1,156 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.invoker;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Creates invokers calling {@link Function} and {@link BiConsumer} implementations generated by the
+ * {@link LambdaMetafactory} for public getter and setter methods.
+ * <p>
+ * The generated classes are defined next to this factory, so methods of non public classes or of classes not visible
+ * from the class loader of MyBatis, as well as fields, use the {@link MethodHandleInvokerFactory} invokers instead.
+ */
+public class LambdaInvokerFactory extends MethodHandleInvokerFactory {
+
+  @Override
+  public Invoker createMethodInvoker(Method method) {
+    if (canGenerate(method)) {
+      try {
+        return method.getParameterTypes().length == 1 ? createSetter(method) : createGetter(method);
+      } catch (Throwable t) {
+        // ignore and use a method handle
+      }
+    }
+    return super.createMethodInvoker(method);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Invoker createGetter(Method method) throws Throwable {
+    MethodHandle handle = LOOKUP.unreflect(method);
+    CallSite site = LambdaMetafactory.metafactory(LOOKUP, "apply", MethodType.methodType(Function.class), GETTER_TYPE, handle,
+        MethodType.methodType(box(method.getReturnType()), method.getDeclaringClass()));
+    Function<Object, Object> getter = (Function<Object, Object>) site.getTarget().invoke();
+    return new FunctionInvoker(getter, method.getReturnType());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Invoker createSetter(Method method) throws Throwable {
+    MethodHandle handle = LOOKUP.unreflect(method);
+    Class<?> parameterType = method.getParameterTypes()[0];
+    CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept", MethodType.methodType(BiConsumer.class), SETTER_TYPE, handle,
+        MethodType.methodType(void.class, method.getDeclaringClass(), box(parameterType)));
+    BiConsumer<Object, Object> setter = (BiConsumer<Object, Object>) site.getTarget().invoke();
+    return new BiConsumerInvoker(setter, parameterType);
+  }
+
+  private static boolean canGenerate(Method method) {
+    if (Modifier.isStatic(method.getModifiers()) || !Modifier.isPublic(method.getModifiers())
+        || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+      return false;
+    }
+    if (method.getParameterTypes().length == 0 && void.class.equals(method.getReturnType())) {
+      return false;
+    }
+    if (!isVisible(method.getDeclaringClass()) || !isVisible(method.getReturnType())) {
+      return false;
+    }
+    for (Class<?> parameterType : method.getParameterTypes()) {
+      if (!isVisible(parameterType)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isVisible(Class<?> type) {
+    if (type.isPrimitive()) {
+      return true;
+    }
+    try {
+      return Class.forName(type.getName(), false, LambdaInvokerFactory.class.getClassLoader()) == type;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  private static Class<?> box(Class<?> type) {
+    return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+  }
+
+  private static class FunctionInvoker implements Invoker {
+    private final Function<Object, Object> getter;
+    private final Class<?> type;
+
+    private FunctionInvoker(Function<Object, Object> getter, Class<?> type) {
+      this.getter = getter;
+      this.type = type;
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] args) throws InvocationTargetException {
+      try {
+        return getter.apply(target);
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+    }
+
+    @Override
+    public Class<?> getType() {
+      return type;
+    }
+  }
+
+  private static class BiConsumerInvoker implements Invoker {
+    private final BiConsumer<Object, Object> setter;
+    private final Class<?> type;
+
+    private BiConsumerInvoker(BiConsumer<Object, Object> setter, Class<?> type) {
+      this.setter = setter;
+      this.type = type;
+    }
+
+    @Override
+    public Object invoke(Object target, Object[] args) throws InvocationTargetException {
+      set(target, args[0]);
+      return null;
+    }
+
+    @Override
+    public void set(Object target, Object value) throws InvocationTargetException {
+      try {
+        setter.accept(target, value);
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+    }
+
+    @Override
+    public Class<?> getType() {
+      return type;
+    }
+  }
+
+}
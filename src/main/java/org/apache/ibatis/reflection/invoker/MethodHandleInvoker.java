@@ -0,0 +1,63 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.invoker;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Invokes a getter or a setter through a {@link MethodHandle} adapted to the generic
+ * {@code (Object)Object} or {@code (Object,Object)void} type, so it can be called with {@code invokeExact}.
+ */
+public class MethodHandleInvoker implements Invoker {
+
+  private final MethodHandle handle;
+  private final Class<?> type;
+  private final boolean setter;
+
+  MethodHandleInvoker(MethodHandle handle, Class<?> type, boolean setter) {
+    this.handle = handle;
+    this.type = type;
+    this.setter = setter;
+  }
+
+  @Override
+  public Object invoke(Object target, Object[] args) throws InvocationTargetException {
+    if (setter) {
+      set(target, args[0]);
+      return null;
+    }
+    try {
+      return (Object) handle.invokeExact(target);
+    } catch (Throwable t) {
+      throw new InvocationTargetException(t);
+    }
+  }
+
+  @Override
+  public void set(Object target, Object value) throws InvocationTargetException {
+    try {
+      handle.invokeExact(target, value);
+    } catch (Throwable t) {
+      throw new InvocationTargetException(t);
+    }
+  }
+
+  @Override
+  public Class<?> getType() {
+    return type;
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.invoker;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.apache.ibatis.reflection.Reflector;
+
+/**
+ * Creates invokers calling {@link MethodHandle}s resolved once per property.
+ * <p>
+ * Members that cannot be looked up, even after being made accessible, fall back to the reflective invokers.
+ */
+public class MethodHandleInvokerFactory implements InvokerFactory {
+
+  protected static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  protected static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  protected static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final InvokerFactory fallback = new ReflectiveInvokerFactory();
+
+  @Override
+  public Invoker createMethodInvoker(Method method) {
+    MethodHandle handle = unreflect(method, () -> LOOKUP.unreflect(method));
+    if (handle == null) {
+      return fallback.createMethodInvoker(method);
+    }
+    boolean isStatic = Modifier.isStatic(method.getModifiers());
+    if (method.getParameterTypes().length == 1) {
+      return new MethodHandleInvoker(adapt(handle, isStatic, SETTER_TYPE), method.getParameterTypes()[0], true);
+    }
+    return new MethodHandleInvoker(adapt(handle, isStatic, GETTER_TYPE), method.getReturnType(), false);
+  }
+
+  @Override
+  public Invoker createGetFieldInvoker(Field field) {
+    MethodHandle handle = unreflect(field, () -> LOOKUP.unreflectGetter(field));
+    if (handle == null) {
+      return fallback.createGetFieldInvoker(field);
+    }
+    return new MethodHandleInvoker(adapt(handle, Modifier.isStatic(field.getModifiers()), GETTER_TYPE), field.getType(), false);
+  }
+
+  @Override
+  public Invoker createSetFieldInvoker(Field field) {
+    MethodHandle handle = unreflect(field, () -> LOOKUP.unreflectSetter(field));
+    if (handle == null) {
+      return fallback.createSetFieldInvoker(field);
+    }
+    return new MethodHandleInvoker(adapt(handle, Modifier.isStatic(field.getModifiers()), SETTER_TYPE), field.getType(), true);
+  }
+
+  private static MethodHandle adapt(MethodHandle handle, boolean isStatic, MethodType type) {
+    // static members ignore the target, as Method.invoke and Field.get do
+    MethodHandle adapted = isStatic ? MethodHandles.dropArguments(handle, 0, Object.class) : handle;
+    return adapted.asType(type);
+  }
+
+  private static MethodHandle unreflect(AccessibleObject member, HandleLookup lookup) {
+    try {
+      return lookup.find();
+    } catch (IllegalAccessException e) {
+      if (Reflector.canControlMemberAccessible()) {
+        try {
+          member.setAccessible(true);
+          return lookup.find();
+        } catch (IllegalAccessException | RuntimeException e2) {
+          return null;
+        }
+      }
+      return null;
+    }
+  }
+
+  @FunctionalInterface
+  private interface HandleLookup {
+    MethodHandle find() throws IllegalAccessException;
+  }
+
+}
@@ -0,0 +1,119 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.property;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ibatis.scripting.xmltags.ForEachSqlNode;
+
+/**
+ * A property expression such as {@code author.addresses[0].city} split once into its segments.
+ * <p>
+ * Paths are cached by expression, so walking a path does not parse it again. The {@code foreach} item names are
+ * generated per iteration and are not cached. Other expressions are kept in two generations of up to
+ * {@link #MAX_CACHED_PATHS} paths: once the current generation is full it becomes the previous one, and the paths
+ * still in use are copied back from it as they are looked up, so the cache stays bounded and keeps admitting paths.
+ */
+public final class PropertyPath {
+
+  static final int MAX_CACHED_PATHS = 8192;
+
+  private static volatile ConcurrentMap<String, PropertyPath> cache = new ConcurrentHashMap<>();
+  private static volatile ConcurrentMap<String, PropertyPath> previousCache = new ConcurrentHashMap<>();
+
+  private final String[] names;
+  private final PropertyTokenizer[] tokens;
+  private final PropertyTokenizer[] segments;
+
+  private PropertyPath(String name) {
+    List<String> nameList = new ArrayList<>();
+    List<PropertyTokenizer> tokenList = new ArrayList<>();
+    String remaining = name;
+    while (remaining != null) {
+      PropertyTokenizer token = new PropertyTokenizer(remaining);
+      nameList.add(remaining);
+      tokenList.add(token);
+      remaining = token.getChildren();
+    }
+    this.names = nameList.toArray(new String[0]);
+    this.tokens = tokenList.toArray(new PropertyTokenizer[0]);
+    this.segments = new PropertyTokenizer[tokens.length];
+    for (int i = 0; i < tokens.length; i++) {
+      segments[i] = tokens[i].hasNext() ? new PropertyTokenizer(tokens[i].getIndexedName()) : tokens[i];
+    }
+  }
+
+  public static PropertyPath forName(String name) {
+    ConcurrentMap<String, PropertyPath> current = cache;
+    PropertyPath path = current.get(name);
+    if (path == null) {
+      path = previousCache.get(name);
+      if (path == null) {
+        path = new PropertyPath(name);
+      }
+      if (!name.startsWith(ForEachSqlNode.ITEM_PREFIX)) {
+        cache(current, name, path);
+      }
+    }
+    return path;
+  }
+
+  private static void cache(ConcurrentMap<String, PropertyPath> current, String name, PropertyPath path) {
+    if (current.size() >= MAX_CACHED_PATHS) {
+      synchronized (PropertyPath.class) {
+        if (cache == current) {
+          previousCache = current;
+          cache = new ConcurrentHashMap<>();
+        }
+        current = cache;
+      }
+    }
+    current.putIfAbsent(name, path);
+  }
+
+  /**
+   * Returns the number of segments, e.g. 3 for {@code author.addresses[0].city}.
+   */
+  public int size() {
+    return tokens.length;
+  }
+
+  /**
+   * Returns the expression starting at the given segment, e.g. {@code addresses[0].city} for the segment 1.
+   */
+  public String getName(int index) {
+    return names[index];
+  }
+
+  /**
+   * Returns the tokenizer of the expression starting at the given segment, the one {@link PropertyTokenizer#next()}
+   * would return.
+   */
+  public PropertyTokenizer getToken(int index) {
+    return tokens[index];
+  }
+
+  /**
+   * Returns a tokenizer of the given segment alone, without children.
+   */
+  public PropertyTokenizer getSegment(int index) {
+    return segments[index];
+  }
+
+}
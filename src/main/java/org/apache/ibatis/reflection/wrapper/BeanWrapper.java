@@ -31,7 +31,7 @@ import org.apache.ibatis.reflection.property.PropertyTokenizer;
  */
 public class BeanWrapper extends BaseWrapper {
 
-  private final Object object;
+  private Object object;
   private final MetaClass metaClass;
 
   public BeanWrapper(MetaObject metaObject, Object object) {
@@ -40,6 +40,18 @@ public class BeanWrapper extends BaseWrapper {
     this.metaClass = MetaClass.forClass(object.getClass(), metaObject.getReflectorFactory());
   }
 
+  /**
+   * Points this wrapper to another instance of the wrapped class.
+   *
+   * @since 3.5.4
+   */
+  public void reset(Object object) {
+    if (object.getClass() != this.object.getClass()) {
+      throw new ReflectionException("Cannot reset a wrapper of " + this.object.getClass() + " to an instance of " + object.getClass());
+    }
+    this.object = object;
+  }
+
   @Override
   public Object get(PropertyTokenizer prop) {
     if (prop.getIndex() != null) {
@@ -175,9 +187,8 @@ public class BeanWrapper extends BaseWrapper {
   private void setBeanProperty(PropertyTokenizer prop, Object object, Object value) {
     try {
       Invoker method = metaClass.getSetInvoker(prop.getName());
-      Object[] params = {value};
       try {
-        method.invoke(object, params);
+        method.set(object, value);
       } catch (Throwable t) {
         throw ExceptionUtil.unwrapThrowable(t);
       }
@@ -22,16 +22,30 @@ import org.apache.ibatis.builder.ResultMapResolver;
 import org.apache.ibatis.builder.annotation.MethodResolver;
 import org.apache.ibatis.builder.xml.XMLStatementBuilder;
 import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheCommitApplier;
+import org.apache.ibatis.cache.CacheInvalidation;
+import org.apache.ibatis.cache.CacheInvalidationBus;
+import org.apache.ibatis.cache.CacheSerializer;
 import org.apache.ibatis.cache.decorators.FifoCache;
 import org.apache.ibatis.cache.decorators.LruCache;
 import org.apache.ibatis.cache.decorators.SoftCache;
+import org.apache.ibatis.cache.decorators.TableTaggedCache;
+import org.apache.ibatis.cache.decorators.TinyLfuCache;
 import org.apache.ibatis.cache.decorators.WeakCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
 import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.invalidation.InMemoryCacheInvalidationBus;
+import org.apache.ibatis.cache.metrics.CacheMetricsRegistry;
+import org.apache.ibatis.cache.metrics.CacheStats;
+import org.apache.ibatis.cache.serializer.BinaryCacheSerializer;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+import org.apache.ibatis.cache.snapshot.CacheSnapshotManager;
 import org.apache.ibatis.datasource.jndi.JndiDataSourceFactory;
 import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSourceFactory;
 import org.apache.ibatis.executor.*;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
+import org.apache.ibatis.executor.loader.ParallelResultLoader;
 import org.apache.ibatis.executor.loader.ProxyFactory;
 import org.apache.ibatis.executor.loader.cglib.CglibProxyFactory;
 import org.apache.ibatis.executor.loader.javassist.JavassistProxyFactory;
@@ -59,6 +73,10 @@ import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.ReflectorFactory;
 import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
 import org.apache.ibatis.reflection.factory.ObjectFactory;
+import org.apache.ibatis.reflection.invoker.InvokerFactory;
+import org.apache.ibatis.reflection.invoker.LambdaInvokerFactory;
+import org.apache.ibatis.reflection.invoker.MethodHandleInvokerFactory;
+import org.apache.ibatis.reflection.invoker.ReflectiveInvokerFactory;
 import org.apache.ibatis.reflection.wrapper.DefaultObjectWrapperFactory;
 import org.apache.ibatis.reflection.wrapper.ObjectWrapperFactory;
 import org.apache.ibatis.scripting.LanguageDriver;
@@ -73,8 +91,11 @@ import org.apache.ibatis.type.TypeAliasRegistry;
 import org.apache.ibatis.type.TypeHandler;
 import org.apache.ibatis.type.TypeHandlerRegistry;
 
+import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * @author Clinton Begin
@@ -94,11 +115,30 @@ public class Configuration {
   protected boolean callSettersOnNulls;
   protected boolean useActualParamName = true;
   protected boolean returnInstanceForEmptyRow;
+  protected boolean nestedCursorStreamingEnabled;
+  protected int nestedQueryParallelism;
+  protected ParallelResultLoader parallelResultLoader;
+  protected boolean reflectorPrewarmingEnabled;
+  protected CacheSerializer cacheSerializer = new JavaCacheSerializer();
+  protected boolean cacheCopyOnRead;
+  protected boolean compactRowCacheEnabled;
+  protected boolean tableCacheInvalidationEnabled;
+  protected CacheRefresher cacheRefresher;
+  protected CacheInvalidationBus cacheInvalidationBus;
+  protected String cacheSnapshotDirectory;
+  protected CacheSnapshotManager cacheSnapshotManager;
+  protected boolean cacheMetricsEnabled;
+  protected final CacheMetricsRegistry cacheMetricsRegistry = new CacheMetricsRegistry();
+  protected int transactionalCacheStagingLimit;
+  protected boolean transactionalCacheAsyncCommit;
+  protected CacheCommitApplier cacheCommitApplier;
+  protected final Set<String> nonBlockingCaches = ConcurrentHashMap.newKeySet();
 
   protected String logPrefix;
   protected Class<? extends Log> logImpl;
   protected Class<? extends VFS> vfsImpl;
   protected LocalCacheScope localCacheScope = LocalCacheScope.SESSION;
+  protected int localCacheMaxEntries;
   protected JdbcType jdbcTypeForNull = JdbcType.OTHER;
   protected Set<String> lazyLoadTriggerMethods = new HashSet<>(Arrays.asList("equals", "clone", "hashCode", "toString"));
   protected Integer defaultStatementTimeout;
@@ -110,6 +150,7 @@ public class Configuration {
 
   protected Properties variables = new Properties();
   protected ReflectorFactory reflectorFactory = new DefaultReflectorFactory();
+  protected InvokerFactory invokerFactory = new ReflectiveInvokerFactory();
   protected ObjectFactory objectFactory = new DefaultObjectFactory();
   protected ObjectWrapperFactory objectWrapperFactory = new DefaultObjectWrapperFactory();
 
@@ -138,6 +179,8 @@ public class Configuration {
   protected final Map<String, ResultMap> resultMaps = new StrictMap<>("Result Maps collection");
   protected final Map<String, ParameterMap> parameterMaps = new StrictMap<>("Parameter Maps collection");
   protected final Map<String, KeyGenerator> keyGenerators = new StrictMap<>("Key Generators collection");
+  // result type followed by the JDBC types of the columns
+  protected final Map<List<Object>, Constructor<?>> autoMappingConstructors = new ConcurrentHashMap<>();
 
   protected final Set<String> loadedResources = new HashSet<>();
   protected final Map<String, XNode> sqlFragments = new StrictMap<>("XML fragments parsed from previous mappers");
@@ -168,10 +211,16 @@ public class Configuration {
     typeAliasRegistry.registerAlias("UNPOOLED", UnpooledDataSourceFactory.class);
 
     typeAliasRegistry.registerAlias("PERPETUAL", PerpetualCache.class);
+    typeAliasRegistry.registerAlias("OFF_HEAP", OffHeapCache.class);
     typeAliasRegistry.registerAlias("FIFO", FifoCache.class);
     typeAliasRegistry.registerAlias("LRU", LruCache.class);
     typeAliasRegistry.registerAlias("SOFT", SoftCache.class);
     typeAliasRegistry.registerAlias("WEAK", WeakCache.class);
+    typeAliasRegistry.registerAlias("TINYLFU", TinyLfuCache.class);
+
+    typeAliasRegistry.registerAlias("JAVA_SERIALIZATION", JavaCacheSerializer.class);
+    typeAliasRegistry.registerAlias("BINARY_SERIALIZATION", BinaryCacheSerializer.class);
+    typeAliasRegistry.registerAlias("IN_MEMORY_INVALIDATION", InMemoryCacheInvalidationBus.class);
 
     typeAliasRegistry.registerAlias("DB_VENDOR", VendorDatabaseIdProvider.class);
 
@@ -189,6 +238,10 @@ public class Configuration {
     typeAliasRegistry.registerAlias("CGLIB", CglibProxyFactory.class);
     typeAliasRegistry.registerAlias("JAVASSIST", JavassistProxyFactory.class);
 
+    typeAliasRegistry.registerAlias("REFLECTION", ReflectiveInvokerFactory.class);
+    typeAliasRegistry.registerAlias("METHOD_HANDLE", MethodHandleInvokerFactory.class);
+    typeAliasRegistry.registerAlias("LAMBDA_METAFACTORY", LambdaInvokerFactory.class);
+
     languageRegistry.setDefaultDriverClass(XMLLanguageDriver.class);
     languageRegistry.register(RawLanguageDriver.class);
   }
@@ -247,6 +300,317 @@ public class Configuration {
     this.returnInstanceForEmptyRow = returnEmptyInstance;
   }
 
+  /**
+   * Indicates whether cursors over nested result maps treat their rows as grouped by parent,
+   * emitting each parent as soon as the next one appears and releasing its subtree afterwards.
+   *
+   * @since 3.5.4
+   */
+  public boolean isNestedCursorStreamingEnabled() {
+    return nestedCursorStreamingEnabled;
+  }
+
+  public void setNestedCursorStreamingEnabled(boolean nestedCursorStreamingEnabled) {
+    this.nestedCursorStreamingEnabled = nestedCursorStreamingEnabled;
+  }
+
+  /**
+   * Returns the maximum number of eager nested selects loaded in parallel, or 0 when they are loaded one after another.
+   *
+   * @since 3.5.4
+   */
+  public int getNestedQueryParallelism() {
+    return nestedQueryParallelism;
+  }
+
+  /**
+   * Loads eager nested selects on a bounded pool of threads, each one on a connection of its own.
+   * As those connections do not take part in the session transaction, enable it only for read-only statements.
+   *
+   * @since 3.5.4
+   */
+  public synchronized void setNestedQueryParallelism(int nestedQueryParallelism) {
+    if (parallelResultLoader != null && nestedQueryParallelism > 0) {
+      parallelResultLoader.setParallelism(nestedQueryParallelism);
+    }
+    this.nestedQueryParallelism = nestedQueryParallelism;
+  }
+
+  /**
+   * Returns the pool loading nested selects in parallel, created on first use, or {@code null} when
+   * {@link #getNestedQueryParallelism()} is 0. The configuration keeps the same pool for its whole life,
+   * whose idle threads end so that it is collected along with the configuration.
+   *
+   * @since 3.5.4
+   */
+  public synchronized ParallelResultLoader getParallelResultLoader() {
+    if (nestedQueryParallelism < 1) {
+      return null;
+    }
+    if (parallelResultLoader == null) {
+      parallelResultLoader = new ParallelResultLoader(nestedQueryParallelism);
+    }
+    return parallelResultLoader;
+  }
+
+  /**
+   * Indicates whether the reflectors of all parameter and result types are built when the session factory is built.
+   *
+   * @since 3.5.4
+   */
+  public boolean isReflectorPrewarmingEnabled() {
+    return reflectorPrewarmingEnabled;
+  }
+
+  public void setReflectorPrewarmingEnabled(boolean reflectorPrewarmingEnabled) {
+    this.reflectorPrewarmingEnabled = reflectorPrewarmingEnabled;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public CacheSerializer getCacheSerializer() {
+    return cacheSerializer;
+  }
+
+  /**
+   * Sets the serializer of the read-write caches built afterwards.
+   *
+   * @since 3.5.4
+   */
+  public void setCacheSerializer(CacheSerializer cacheSerializer) {
+    if (cacheSerializer == null) {
+      cacheSerializer = new JavaCacheSerializer();
+    }
+    if (cacheSerializer instanceof BinaryCacheSerializer) {
+      ((BinaryCacheSerializer) cacheSerializer).setReflectorFactory(reflectorFactory);
+    }
+    this.cacheSerializer = cacheSerializer;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public boolean isCacheCopyOnRead() {
+    return cacheCopyOnRead;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public void setCacheCopyOnRead(boolean cacheCopyOnRead) {
+    this.cacheCopyOnRead = cacheCopyOnRead;
+  }
+
+  /**
+   * Indicates whether second level caches store the rows of the results in a compact format and map them again
+   * on each hit, see {@link org.apache.ibatis.executor.resultset.CompactRows}.
+   *
+   * @since 3.5.4
+   */
+  public boolean isCompactRowCacheEnabled() {
+    return compactRowCacheEnabled;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public void setCompactRowCacheEnabled(boolean compactRowCacheEnabled) {
+    this.compactRowCacheEnabled = compactRowCacheEnabled;
+  }
+
+  /**
+   * Indicates whether the second level caches built afterwards evict on writes only the entries read from
+   * the modified tables instead of clearing the whole namespace.
+   *
+   * @since 3.5.4
+   */
+  public boolean isTableCacheInvalidationEnabled() {
+    return tableCacheInvalidationEnabled;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public void setTableCacheInvalidationEnabled(boolean tableCacheInvalidationEnabled) {
+    this.tableCacheInvalidationEnabled = tableCacheInvalidationEnabled;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public CacheInvalidationBus getCacheInvalidationBus() {
+    return cacheInvalidationBus;
+  }
+
+  /**
+   * Publishes the second level cache evictions committed by the sessions to the other nodes through this bus,
+   * and applies those it receives from them.
+   *
+   * @since 3.5.4
+   */
+  public void setCacheInvalidationBus(CacheInvalidationBus cacheInvalidationBus) {
+    if (this.cacheInvalidationBus != null) {
+      this.cacheInvalidationBus.close();
+    }
+    this.cacheInvalidationBus = cacheInvalidationBus;
+    if (cacheInvalidationBus != null) {
+      cacheInvalidationBus.subscribe(this::applyCacheInvalidations);
+    }
+  }
+
+  private void applyCacheInvalidations(Collection<CacheInvalidation> invalidations) {
+    for (CacheInvalidation invalidation : invalidations) {
+      if (!hasCache(invalidation.getCacheId())) {
+        continue;
+      }
+      Cache cache = getCache(invalidation.getCacheId());
+      if (cacheCommitApplier != null) {
+        cacheCommitApplier.invalidated(invalidation.getCacheId());
+      }
+      if (invalidation.getTables() != null && cache instanceof TableTaggedCache) {
+        ((TableTaggedCache) cache).invalidate(invalidation.getTables());
+      } else {
+        cache.clear();
+      }
+    }
+  }
+
+  /**
+   * Returns the pool reloading the cache entries close to their expiry, created on first use.
+   *
+   * @since 3.5.4
+   */
+  public synchronized CacheRefresher getCacheRefresher() {
+    if (cacheRefresher == null) {
+      cacheRefresher = new CacheRefresher(this);
+    }
+    return cacheRefresher;
+  }
+
+  /**
+   * Returns the directory the caches declared with {@code snapshot="true"} are saved to and restored from.
+   *
+   * @since 3.5.4
+   */
+  public String getCacheSnapshotDirectory() {
+    return cacheSnapshotDirectory;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public void setCacheSnapshotDirectory(String cacheSnapshotDirectory) {
+    this.cacheSnapshotDirectory = cacheSnapshotDirectory;
+  }
+
+  /**
+   * Returns the manager saving and restoring the snapshots of the second level caches, created on first use.
+   *
+   * @since 3.5.4
+   */
+  public synchronized CacheSnapshotManager getCacheSnapshotManager() {
+    if (cacheSnapshotManager == null) {
+      cacheSnapshotManager = new CacheSnapshotManager(this);
+    }
+    return cacheSnapshotManager;
+  }
+
+  /**
+   * Indicates whether the second level caches built afterwards count their hits, misses and latencies.
+   *
+   * @since 3.5.4
+   */
+  public boolean isCacheMetricsEnabled() {
+    return cacheMetricsEnabled;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public void setCacheMetricsEnabled(boolean cacheMetricsEnabled) {
+    this.cacheMetricsEnabled = cacheMetricsEnabled;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public CacheMetricsRegistry getCacheMetricsRegistry() {
+    return cacheMetricsRegistry;
+  }
+
+  /**
+   * Returns the stats of the second level caches built with metrics, ordered by id.
+   *
+   * @since 3.5.4
+   */
+  public List<CacheStats> getCacheStats() {
+    return cacheMetricsRegistry.getStats();
+  }
+
+  /**
+   * Returns the number of entries a session stages for a second level cache until it commits,
+   * beyond which its new entries are not cached, or 0 for no limit.
+   *
+   * @since 3.5.4
+   */
+  public int getTransactionalCacheStagingLimit() {
+    return transactionalCacheStagingLimit;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public void setTransactionalCacheStagingLimit(int transactionalCacheStagingLimit) {
+    this.transactionalCacheStagingLimit = transactionalCacheStagingLimit;
+  }
+
+  /**
+   * Indicates whether the entries committed by the sessions are put in the non blocking second level caches
+   * by a background thread, see {@link CacheCommitApplier}.
+   *
+   * @since 3.5.4
+   */
+  public boolean isTransactionalCacheAsyncCommit() {
+    return transactionalCacheAsyncCommit;
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public void setTransactionalCacheAsyncCommit(boolean transactionalCacheAsyncCommit) {
+    this.transactionalCacheAsyncCommit = transactionalCacheAsyncCommit;
+  }
+
+  /**
+   * Returns the thread putting the entries committed by the sessions in the caches, created on first use.
+   *
+   * @since 3.5.4
+   */
+  public synchronized CacheCommitApplier getCacheCommitApplier() {
+    if (cacheCommitApplier == null) {
+      cacheCommitApplier = new CacheCommitApplier();
+    }
+    return cacheCommitApplier;
+  }
+
+  /**
+   * Declares that the cache never blocks the readers of a missed key until it is put, so the sessions do not
+   * put or remove the keys they missed on commit or rollback. Caches are assumed to block otherwise.
+   *
+   * @since 3.5.4
+   */
+  public void addNonBlockingCache(String cacheId) {
+    nonBlockingCaches.add(cacheId);
+  }
+
+  /**
+   * @since 3.5.4
+   */
+  public boolean isNonBlockingCache(String cacheId) {
+    return nonBlockingCaches.contains(cacheId);
+  }
+
   public String getDatabaseId() {
     return databaseId;
   }
@@ -444,6 +808,25 @@ public class Configuration {
     this.localCacheScope = localCacheScope;
   }
 
+  /**
+   * Returns the maximum number of results kept in the local cache of a session, or 0 when it is not bounded.
+   *
+   * @since 3.5.4
+   */
+  public int getLocalCacheMaxEntries() {
+    return localCacheMaxEntries;
+  }
+
+  /**
+   * Bounds the local cache of each session, the least recently used results above this number are evicted
+   * after each query.
+   *
+   * @since 3.5.4
+   */
+  public void setLocalCacheMaxEntries(int localCacheMaxEntries) {
+    this.localCacheMaxEntries = localCacheMaxEntries;
+  }
+
   public JdbcType getJdbcTypeForNull() {
     return jdbcTypeForNull;
   }
@@ -495,6 +878,29 @@ public class Configuration {
     this.reflectorFactory = reflectorFactory;
   }
 
+  /**
+   * @since 3.5.4
+   */
+  public InvokerFactory getInvokerFactory() {
+    return invokerFactory;
+  }
+
+  /**
+   * Sets the strategy used to read and write properties. It applies to the {@link DefaultReflectorFactory},
+   * a custom {@link ReflectorFactory} chooses its own invokers.
+   *
+   * @since 3.5.4
+   */
+  public void setInvokerFactory(InvokerFactory invokerFactory) {
+    if (invokerFactory == null) {
+      invokerFactory = new ReflectiveInvokerFactory();
+    }
+    this.invokerFactory = invokerFactory;
+    if (reflectorFactory instanceof DefaultReflectorFactory) {
+      ((DefaultReflectorFactory) reflectorFactory).setInvokerFactory(invokerFactory);
+    }
+  }
+
   public ObjectFactory getObjectFactory() {
     return objectFactory;
   }
@@ -598,7 +1004,7 @@ public class Configuration {
 
     // 2、缓存装饰 装饰器模式
     if (cacheEnabled) {
-      executor = new CachingExecutor(executor);
+      executor = new CachingExecutor(executor, this);
     }
 
     //3、插件代理
@@ -669,6 +1075,20 @@ public class Configuration {
     return resultMaps.containsKey(id);
   }
 
+  /**
+   * Gets the constructor auto-mapping columns of these JDBC types to the result type, resolving it with the given
+   * function the first time the result type is read from such columns.
+   *
+   * @since 3.5.4
+   */
+  public Constructor<?> getAutoMappingConstructor(Class<?> resultType, List<JdbcType> jdbcTypes,
+      Function<Class<?>, Constructor<?>> resolver) {
+    List<Object> signature = new ArrayList<>(jdbcTypes.size() + 1);
+    signature.add(resultType);
+    signature.addAll(jdbcTypes);
+    return autoMappingConstructors.computeIfAbsent(signature, key -> resolver.apply(resultType));
+  }
+
   public void addParameterMap(ParameterMap pm) {
     parameterMaps.put(pm.getId(), pm);
   }
@@ -15,6 +15,7 @@
  */
 package org.apache.ibatis.session;
 
+import org.apache.ibatis.builder.ReflectorPrewarmer;
 import org.apache.ibatis.builder.xml.XMLConfigBuilder;
 import org.apache.ibatis.exceptions.ExceptionFactory;
 import org.apache.ibatis.executor.ErrorContext;
@@ -108,6 +109,12 @@ public class SqlSessionFactoryBuilder {
    * @return
    */
   public SqlSessionFactory build(Configuration config) {
+    if (config.isReflectorPrewarmingEnabled()) {
+      new ReflectorPrewarmer(config).prewarm();
+    }
+    if (config.getCacheSnapshotDirectory() != null) {
+      config.getCacheSnapshotManager().restore();
+    }
     return new DefaultSqlSessionFactory(config);
   }
 
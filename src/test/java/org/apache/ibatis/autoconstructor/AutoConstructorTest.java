@@ -16,7 +16,9 @@
 package org.apache.ibatis.autoconstructor;
 
 import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.annotations.AutomapConstructor;
 import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.resultset.ResultSetWrapper;
 import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
@@ -26,10 +28,14 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.io.Reader;
+import java.lang.reflect.Constructor;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class AutoConstructorTest {
   private static SqlSessionFactory sqlSessionFactory;
@@ -71,6 +77,23 @@ class AutoConstructorTest {
     }
   }
 
+  @Test
+  void resolveConstructorOncePerColumnTypes() throws Exception {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      final AutoConstructorMapper mapper = sqlSession.getMapper(AutoConstructorMapper.class);
+      verifySubjects(mapper.getAnnotatedSubjects());
+      try (Statement statement = sqlSession.getConnection().createStatement();
+           ResultSet rs = statement.executeQuery("SELECT * FROM subject")) {
+        // another result set with the same column types reuses the constructor
+        ResultSetWrapper rsw = new ResultSetWrapper(rs, sqlSessionFactory.getConfiguration());
+        Constructor<?> constructor = rsw.getAutoMappingConstructor(AnnotatedSubject.class, type -> {
+          throw new AssertionError("The constructor of " + type + " was looked up again");
+        });
+        assertTrue(constructor.isAnnotationPresent(AutomapConstructor.class));
+      }
+    }
+  }
+
   @Test
   void badSubject() {
     try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
@@ -0,0 +1,57 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.builder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Set;
+
+import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.ImmutableAuthor;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class ReflectorPrewarmerTest {
+
+  @Test
+  void shouldCollectBeanTypesOfStatementsAndResultMaps() throws Exception {
+    String resource = "org/apache/ibatis/builder/MapperConfig.xml";
+    try (InputStream inputStream = Resources.getResourceAsStream(resource)) {
+      Configuration configuration = new XMLConfigBuilder(inputStream).parse();
+      Set<Class<?>> types = new ReflectorPrewarmer(configuration).collectTypes();
+      assertThat(types).contains(Author.class, ImmutableAuthor.class);
+      assertThat(types).doesNotContain(String.class, Section.class, HashMap.class, Object.class);
+    }
+  }
+
+  @Test
+  void shouldBuildReflectorsOfCollectedTypes() throws Exception {
+    String resource = "org/apache/ibatis/builder/MapperConfig.xml";
+    try (InputStream inputStream = Resources.getResourceAsStream(resource)) {
+      Configuration configuration = new XMLConfigBuilder(inputStream).parse();
+      ReflectorPrewarmer prewarmer = new ReflectorPrewarmer(configuration);
+      assertThat(prewarmer.prewarm()).isEqualTo(prewarmer.collectTypes().size());
+      configuration.getReflectorFactory().setClassCacheEnabled(false);
+      assertThat(prewarmer.prewarm()).isZero();
+    }
+  }
+
+}
@@ -29,6 +29,9 @@ import java.util.Properties;
 import org.apache.ibatis.builder.mapper.CustomMapper;
 import org.apache.ibatis.builder.typehandler.CustomIntegerTypeHandler;
 import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.cache.invalidation.InMemoryCacheInvalidationBus;
+import org.apache.ibatis.cache.serializer.BinaryCacheSerializer;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
 import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
 import org.apache.ibatis.domain.blog.Author;
 import org.apache.ibatis.domain.blog.Blog;
@@ -42,6 +45,9 @@ import org.apache.ibatis.io.Resources;
 import org.apache.ibatis.logging.slf4j.Slf4jImpl;
 import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.reflection.DefaultReflectorFactory;
+import org.apache.ibatis.reflection.invoker.MethodHandleInvokerFactory;
+import org.apache.ibatis.reflection.invoker.ReflectiveInvokerFactory;
 import org.apache.ibatis.scripting.defaults.RawLanguageDriver;
 import org.apache.ibatis.scripting.xmltags.XMLLanguageDriver;
 import org.apache.ibatis.session.AutoMappingBehavior;
@@ -91,11 +97,26 @@ class XmlConfigBuilderTest {
       assertThat(config.isMapUnderscoreToCamelCase()).isFalse();
       assertThat(config.isSafeRowBoundsEnabled()).isFalse();
       assertThat(config.getLocalCacheScope()).isEqualTo(LocalCacheScope.SESSION);
+      assertThat(config.getLocalCacheMaxEntries()).isEqualTo(0);
       assertThat(config.getJdbcTypeForNull()).isEqualTo(JdbcType.OTHER);
       assertThat(config.getLazyLoadTriggerMethods()).isEqualTo(new HashSet<>(Arrays.asList("equals", "clone", "hashCode", "toString")));
       assertThat(config.isSafeResultHandlerEnabled()).isTrue();
       assertThat(config.getDefaultScriptingLanuageInstance()).isInstanceOf(XMLLanguageDriver.class);
       assertThat(config.isCallSettersOnNulls()).isFalse();
+      assertThat(config.isNestedCursorStreamingEnabled()).isFalse();
+      assertThat(config.getNestedQueryParallelism()).isEqualTo(0);
+      assertThat(config.getInvokerFactory()).isInstanceOf(ReflectiveInvokerFactory.class);
+      assertThat(config.isReflectorPrewarmingEnabled()).isFalse();
+      assertThat(config.getCacheSerializer()).isInstanceOf(JavaCacheSerializer.class);
+      assertThat(config.isCacheCopyOnRead()).isFalse();
+      assertThat(config.isCompactRowCacheEnabled()).isFalse();
+      assertThat(config.isTableCacheInvalidationEnabled()).isFalse();
+      assertThat(config.getCacheInvalidationBus()).isNull();
+      assertNull(config.getCacheSnapshotDirectory());
+      assertThat(config.isCacheMetricsEnabled()).isFalse();
+      assertThat(config.getTransactionalCacheStagingLimit()).isEqualTo(0);
+      assertThat(config.isTransactionalCacheAsyncCommit()).isFalse();
+      assertNull(config.getParallelResultLoader());
       assertNull(config.getLogPrefix());
       assertNull(config.getLogImpl());
       assertNull(config.getConfigurationFactory());
@@ -185,11 +206,26 @@ class XmlConfigBuilderTest {
       assertThat(config.isMapUnderscoreToCamelCase()).isTrue();
       assertThat(config.isSafeRowBoundsEnabled()).isTrue();
       assertThat(config.getLocalCacheScope()).isEqualTo(LocalCacheScope.STATEMENT);
+      assertThat(config.getLocalCacheMaxEntries()).isEqualTo(256);
       assertThat(config.getJdbcTypeForNull()).isEqualTo(JdbcType.NULL);
       assertThat(config.getLazyLoadTriggerMethods()).isEqualTo(new HashSet<>(Arrays.asList("equals", "clone", "hashCode", "toString", "xxx")));
       assertThat(config.isSafeResultHandlerEnabled()).isFalse();
       assertThat(config.getDefaultScriptingLanuageInstance()).isInstanceOf(RawLanguageDriver.class);
       assertThat(config.isCallSettersOnNulls()).isTrue();
+      assertThat(config.isNestedCursorStreamingEnabled()).isTrue();
+      assertThat(config.getNestedQueryParallelism()).isEqualTo(4);
+      assertThat(config.getInvokerFactory()).isInstanceOf(MethodHandleInvokerFactory.class);
+      assertThat(((DefaultReflectorFactory) config.getReflectorFactory()).getInvokerFactory()).isSameAs(config.getInvokerFactory());
+      assertThat(config.isReflectorPrewarmingEnabled()).isTrue();
+      assertThat(config.getCacheSerializer()).isInstanceOf(BinaryCacheSerializer.class);
+      assertThat(config.isCacheCopyOnRead()).isTrue();
+      assertThat(config.isCompactRowCacheEnabled()).isTrue();
+      assertThat(config.isTableCacheInvalidationEnabled()).isTrue();
+      assertThat(config.getCacheInvalidationBus()).isInstanceOf(InMemoryCacheInvalidationBus.class);
+      assertThat(config.getCacheSnapshotDirectory()).isEqualTo("target/cache-snapshots");
+      assertThat(config.isCacheMetricsEnabled()).isTrue();
+      assertThat(config.getTransactionalCacheStagingLimit()).isEqualTo(1000);
+      assertThat(config.isTransactionalCacheAsyncCommit()).isTrue();
       assertThat(config.getLogPrefix()).isEqualTo("mybatis_");
       assertThat(config.getLogImpl().getName()).isEqualTo(Slf4jImpl.class.getName());
       assertThat(config.getVfsImpl().getName()).isEqualTo(JBoss6VFS.class.getName());
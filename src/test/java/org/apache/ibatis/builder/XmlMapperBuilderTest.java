@@ -63,6 +63,19 @@ class XmlMapperBuilderTest {
     }
   }
 
+  @Test
+  void mappedStatementWithTables() throws Exception {
+    Configuration configuration = new Configuration();
+    String resource = "org/apache/ibatis/builder/AuthorMapper.xml";
+    try (InputStream inputStream = Resources.getResourceAsStream(resource)) {
+      XMLMapperBuilder builder = new XMLMapperBuilder(inputStream, configuration, resource, configuration.getSqlFragments());
+      builder.parse();
+
+      assertThat(configuration.getMappedStatement("selectWithTables").getTables()).containsExactly("author");
+      assertThat(configuration.getMappedStatement("selectAuthor").getTables()).isNull();
+    }
+  }
+
   @Test
   void mappedStatementWithoutOptionsWhenSpecifyDefaultValue() throws Exception {
     Configuration configuration = new Configuration();
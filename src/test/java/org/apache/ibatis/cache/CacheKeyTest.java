@@ -25,7 +25,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.NotSerializableException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
 
 class CacheKeyTest {
 
@@ -87,6 +89,42 @@ class CacheKeyTest {
     assertEquals(key1, key2);
   }
 
+  @Test
+  void shouldInitializeLazyKeyOnFirstUse() {
+    AtomicInteger initializations = new AtomicInteger();
+    CacheKey lazyKey = CacheKey.lazy(2, key -> {
+      initializations.incrementAndGet();
+      key.updateAll(new Object[] { "select", 1 });
+    });
+    assertEquals(0, initializations.get());
+    CacheKey key = new CacheKey(new Object[] { "select", 1 });
+    assertEquals(key, lazyKey);
+    assertEquals(key.hashCode(), lazyKey.hashCode());
+    assertEquals(2, lazyKey.getUpdateCount());
+    assertEquals(1, initializations.get());
+  }
+
+  @Test
+  void shouldSerializeLazyKey() throws Exception {
+    CacheKey lazyKey = CacheKey.lazy(1, key -> key.update("serializable"));
+    CacheKey key = new CacheKey(new Object[] { "serializable" });
+    assertEquals(key, serialize(lazyKey));
+  }
+
+  @Test
+  void shouldRecomputeChecksumOfDeserializedKey() throws Exception {
+    CacheKey key = new CacheKey(new Object[] { "select", Thread.State.NEW, String.class });
+    CacheKey saved = new CacheKey(new Object[] { "select", Thread.State.NEW, String.class });
+    // as computed by another JVM, where the enum and the class had other identity hash codes
+    Field checksum = CacheKey.class.getDeclaredField("checksum");
+    checksum.setAccessible(true);
+    checksum.setLong(saved, 42L);
+    CacheKey restored = serialize(saved);
+    assertEquals(key, restored);
+    assertEquals(key.hashCode(), restored.hashCode());
+    assertEquals(3, restored.getUpdateCount());
+  }
+
   @Test
   void serializationExceptionTest() {
     CacheKey cacheKey = new CacheKey();
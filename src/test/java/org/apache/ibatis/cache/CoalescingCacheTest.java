@@ -0,0 +1,115 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.ibatis.cache.decorators.CoalescingCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.Test;
+
+class CoalescingCacheTest {
+
+  @Test
+  void shouldLoadMissedKeyOnce() throws Exception {
+    CoalescingCache cache = new CoalescingCache(new PerpetualCache("default"));
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch missed = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Future<?>[] results = new Future<?>[4];
+      for (int i = 0; i < results.length; i++) {
+        results[i] = executor.submit(() -> {
+          Object value = cache.getObject("key");
+          if (value == null) {
+            loads.incrementAndGet();
+            missed.countDown();
+            Thread.sleep(200);
+            cache.putObject("key", "value");
+            return "value";
+          }
+          return value;
+        });
+        missed.await(1, TimeUnit.SECONDS);
+      }
+      for (Future<?> result : results) {
+        assertEquals("value", result.get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, loads.get());
+    assertEquals(0, cache.getLoadCount());
+  }
+
+  @Test
+  void shouldBeReleasedByAnotherThread() throws Exception {
+    CoalescingCache cache = new CoalescingCache(new PerpetualCache("default"));
+    assertNull(cache.getObject("key"));
+    assertEquals(1, cache.getLoadCount());
+    Thread other = new Thread(() -> cache.removeObject("key"));
+    other.start();
+    other.join();
+    assertEquals(0, cache.getLoadCount());
+  }
+
+  @Test
+  void shouldLetSameThreadLoadAgain() {
+    CoalescingCache cache = new CoalescingCache(new PerpetualCache("default"));
+    assertNull(cache.getObject("key"));
+    assertNull(cache.getObject("key"));
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+    assertEquals(0, cache.getLoadCount());
+  }
+
+  @Test
+  void shouldTakeOverAfterTimeout() throws Exception {
+    CoalescingCache cache = new CoalescingCache(new PerpetualCache("default"));
+    cache.setTimeout(100);
+    assertNull(cache.getObject("key"));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // the loader never puts nor removes the key, the waiter loads it itself
+      assertNull(executor.submit(() -> cache.getObject("key")).get(5, TimeUnit.SECONDS));
+      executor.submit(() -> cache.putObject("key", "value")).get(5, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals("value", cache.getObject("key"));
+    assertEquals(0, cache.getLoadCount());
+  }
+
+  @Test
+  void shouldTakeOverFromDeadLoader() throws Exception {
+    CoalescingCache cache = new CoalescingCache(new PerpetualCache("default"));
+    Thread loader = new Thread(() -> cache.getObject("key"));
+    loader.start();
+    loader.join();
+    assertEquals(1, cache.getLoadCount());
+    assertNull(cache.getObject("key"));
+    cache.putObject("key", "value");
+    assertEquals(0, cache.getLoadCount());
+  }
+
+}
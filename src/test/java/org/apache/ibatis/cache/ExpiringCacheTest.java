@@ -0,0 +1,145 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.ibatis.cache.decorators.ExpiringCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class ExpiringCacheTest {
+
+  @Test
+  void shouldExpireEntries() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(100);
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+    Thread.sleep(150);
+    assertNull(cache.getObject("key"));
+  }
+
+  @Test
+  void shouldShortenTimeToLiveByJitter() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(200);
+    cache.setTimeToLiveJitter(0.5);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    Thread.sleep(120);
+    int expired = 0;
+    for (int i = 0; i < 100; i++) {
+      if (cache.getObject(i) == null) {
+        expired++;
+      }
+    }
+    assertTrue(expired > 0 && expired < 100);
+  }
+
+  @Test
+  void shouldRequestOneRefreshAhead() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLive(1000);
+    cache.setTimeToLiveJitter(0);
+    cache.setRefreshAhead(0.1);
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+    assertNull(ExpiringCache.pollRefresh("key"));
+    Thread.sleep(150);
+
+    assertEquals("value", cache.getObject("key"));
+    ExpiringCache.Refresh refresh = ExpiringCache.pollRefresh("key");
+    assertNotNull(refresh);
+    assertEquals("value", cache.getObject("key"));
+    assertNull(ExpiringCache.pollRefresh("key"));
+
+    refresh.run(() -> {
+      assertNull(cache.getObject("key"));
+      cache.putObject("key", "reloaded");
+    });
+    assertEquals("reloaded", cache.getObject("key"));
+  }
+
+  @Test
+  void shouldDropRefreshAfterInvalidation() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLiveJitter(0);
+    cache.setRefreshAhead(0.000001);
+    cache.putObject("key", "value");
+    Thread.sleep(10);
+    cache.getObject("key");
+    ExpiringCache.Refresh refresh = ExpiringCache.pollRefresh("key");
+    assertNotNull(refresh);
+    cache.clear();
+    refresh.run(() -> cache.putObject("key", "reloaded"));
+    assertNull(cache.getObject("key"));
+  }
+
+  @Test
+  void shouldOnlyPollRefreshOfSameKey() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLiveJitter(0);
+    cache.setRefreshAhead(0.000001);
+    cache.putObject("key", "value");
+    Thread.sleep(10);
+    cache.getObject("key");
+    assertNull(ExpiringCache.pollRefresh("other"));
+    assertNull(ExpiringCache.pollRefresh("key"));
+  }
+
+  @Test
+  void shouldRequestRefreshAgainAfterCancel() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLiveJitter(0);
+    cache.setRefreshAhead(0.000001);
+    cache.putObject("key", "value");
+    Thread.sleep(10);
+    cache.getObject("key");
+    ExpiringCache.Refresh refresh = ExpiringCache.pollRefresh("key");
+    assertNotNull(refresh);
+    cache.getObject("key");
+    assertNull(ExpiringCache.pollRefresh("key"));
+
+    refresh.cancel();
+    cache.getObject("key");
+    assertNotNull(ExpiringCache.pollRefresh("key"));
+  }
+
+  @Test
+  void shouldCancelRefreshPolledForAnotherKey() throws Exception {
+    ExpiringCache cache = new ExpiringCache(new PerpetualCache("default"));
+    cache.setTimeToLiveJitter(0);
+    cache.setRefreshAhead(0.000001);
+    cache.putObject("key", "value");
+    Thread.sleep(10);
+    cache.getObject("key");
+    assertNull(ExpiringCache.pollRefresh("other"));
+    cache.getObject("key");
+    assertNotNull(ExpiringCache.pollRefresh("key"));
+  }
+
+  @Test
+  void shouldBuildExpiringCache() {
+    Cache cache = new CacheBuilder("default").timeToLive(100L).refreshAhead(0.8).build();
+    cache.putObject("key", "value");
+    assertEquals("value", cache.getObject("key"));
+    assertEquals("default", cache.getId());
+  }
+
+}
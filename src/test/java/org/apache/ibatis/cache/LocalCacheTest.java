@@ -0,0 +1,64 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.ibatis.cache.impl.LocalCache;
+import org.junit.jupiter.api.Test;
+
+class LocalCacheTest {
+
+  @Test
+  void shouldEvictLeastRecentlyUsedEntriesOnTrim() {
+    LocalCache cache = new LocalCache("LocalCache", 2);
+    cache.putObject(0, 0);
+    cache.putObject(1, 1);
+    cache.putObject(2, 2);
+    assertEquals(3, cache.getSize());
+    cache.getObject(0);
+
+    assertEquals(Collections.singletonList(1), cache.trim());
+    assertEquals(2, cache.getSize());
+    assertNull(cache.getObject(1));
+    assertEquals(0, cache.getObject(0));
+    assertEquals(1, cache.getEvictionCount());
+  }
+
+  @Test
+  void shouldNotEvictWhenUnbounded() {
+    LocalCache cache = new LocalCache("LocalCache", 0);
+    for (int i = 0; i < 100; i++) {
+      cache.putObject(i, i);
+    }
+    assertTrue(cache.trim().isEmpty());
+    assertEquals(100, cache.getSize());
+  }
+
+  @Test
+  void shouldEvictOldestEntries() {
+    LocalCache cache = new LocalCache("LocalCache", 1);
+    cache.putObject(0, 0);
+    cache.putObject(1, 1);
+    cache.putObject(2, 2);
+    assertEquals(Arrays.asList(0, 1), cache.trim());
+    assertEquals(2, cache.getObject(2));
+  }
+
+}
@@ -0,0 +1,122 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.apache.ibatis.cache.decorators.LruCache;
+import org.apache.ibatis.cache.decorators.MetricsCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.metrics.CacheMetricsRegistry;
+import org.apache.ibatis.cache.metrics.CacheStats;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class MetricsCacheTest {
+
+  @Test
+  void shouldCountLookupsAndWrites() {
+    LruCache lru = new LruCache(new PerpetualCache("test"));
+    lru.setSize(2);
+    MetricsCache cache = new MetricsCache(lru);
+    lru.setMetrics(cache.getMetrics());
+    cache.putObject("a", "A");
+    cache.putObject("b", "B");
+    cache.putObject("c", "C");
+    assertEquals("C", cache.getObject("c"));
+    assertNull(cache.getObject("a"));
+    cache.removeObject("b");
+    cache.clear();
+
+    CacheStats stats = cache.getStats();
+    assertEquals("test", stats.getCacheId());
+    assertEquals(1, stats.getHitCount());
+    assertEquals(1, stats.getMissCount());
+    assertEquals(0.5, stats.getHitRatio());
+    assertEquals(3, stats.getPutCount());
+    assertEquals(1, stats.getEvictionCount());
+    assertEquals(1, stats.getRemoveCount());
+    assertEquals(1, stats.getClearCount());
+    assertEquals(0, stats.getSize());
+    assertEquals(-1, stats.getEstimatedBytes());
+  }
+
+  @Test
+  void shouldNotCountNullPutsReleasingMisses() {
+    MetricsCache cache = new MetricsCache(new PerpetualCache("test"));
+    assertNull(cache.getObject("a"));
+    cache.putObject("a", null);
+    assertEquals(0, cache.getStats().getPutCount());
+    assertEquals(0, cache.getStats().getEvictionCount());
+  }
+
+  @Test
+  void shouldTimeSerializationOfReadWriteCaches() {
+    CacheMetricsRegistry registry = new CacheMetricsRegistry();
+    Cache cache = new CacheBuilder("org.example.Mapper").readWrite(true).metrics(registry).build();
+    cache.putObject("a", "a value of a few bytes");
+    assertEquals("a value of a few bytes", cache.getObject("a"));
+
+    CacheStats stats = registry.getStats("org.example.Mapper");
+    assertEquals(1, stats.getHitCount());
+    assertEquals(2, stats.getSerializationCount());
+    assertTrue(stats.getTotalSerializationTime() > 0);
+    assertTrue(stats.getEstimatedBytes() > 20);
+    assertNotNull(registry.getMetrics("org.example.Mapper"));
+    assertNull(registry.getStats("org.example.Other"));
+  }
+
+  @Test
+  void shouldCountEvictionsOfBuiltCaches() {
+    CacheMetricsRegistry registry = new CacheMetricsRegistry();
+    Cache cache = new CacheBuilder("org.example.Mapper").size(2).metrics(registry).build();
+    cache.putObject("a", "A");
+    cache.putObject("b", "B");
+    cache.putObject("a", "A2");
+    assertEquals(0, registry.getStats("org.example.Mapper").getEvictionCount());
+    cache.putObject("c", "C");
+    assertEquals(1, registry.getStats("org.example.Mapper").getEvictionCount());
+    assertEquals(4, registry.getStats("org.example.Mapper").getPutCount());
+  }
+
+  @Test
+  void shouldCountHitsOfNearTier() {
+    CacheMetricsRegistry registry = new CacheMetricsRegistry();
+    Cache cache = new CacheBuilder("org.example.Mapper").nearCacheSize(16).tableInvalidation(true).metrics(registry).build();
+    cache.putObject("a", "A");
+    assertEquals("A", cache.getObject("a"));
+    assertEquals("A", cache.getObject("a"));
+    assertNull(cache.getObject("b"));
+    CacheStats stats = registry.getStats("org.example.Mapper");
+    assertEquals(2, stats.getHitCount());
+    assertEquals(1, stats.getMissCount());
+  }
+
+  @Test
+  void shouldListRegisteredCachesById() {
+    CacheMetricsRegistry registry = new CacheMetricsRegistry();
+    new CacheBuilder("org.example.B").metrics(registry).build();
+    new CacheBuilder("org.example.A").metrics(registry).build();
+    new CacheBuilder("org.example.C").build();
+    List<CacheStats> stats = registry.getStats();
+    assertEquals(2, stats.size());
+    assertEquals("org.example.A", stats.get(0).getCacheId());
+    assertEquals("org.example.B", stats.get(1).getCacheId());
+  }
+
+}
@@ -0,0 +1,244 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.ibatis.cache.decorators.CoalescingCache;
+import org.apache.ibatis.cache.decorators.NearCache;
+import org.apache.ibatis.cache.decorators.TableTaggedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class NearCacheTest {
+
+  @Test
+  void shouldServeHotEntriesLocally() {
+    RemoteCache remote = new RemoteCache();
+    NearCache cache = new NearCache(remote, 2, null);
+    cache.putObject("a", "A");
+    cache.putObject("b", "B");
+    for (int i = 0; i < 3; i++) {
+      assertEquals("A", cache.getObject("a"));
+      assertEquals("B", cache.getObject("b"));
+    }
+    assertEquals(0, remote.reads);
+    cache.putObject("c", "C");
+    assertEquals("A", cache.getObject("a"));
+    assertEquals(1, remote.reads);
+    assertEquals("A", cache.getObject("a"));
+    assertEquals(1, remote.reads);
+    assertEquals(2, cache.getLocalSize());
+    assertEquals(7, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  void shouldInvalidateLocalTierOnWrites() {
+    RemoteCache remote = new RemoteCache();
+    NearCache cache = new NearCache(remote, 16, null);
+    cache.putObject("a", "A");
+    cache.putObject("b", "B");
+    cache.removeObject("a");
+    assertNull(cache.getObject("a"));
+    remote.putObject("b", "B2");
+    assertEquals("B", cache.getObject("b"));
+    cache.clear();
+    remote.putObject("b", "B3");
+    assertEquals("B3", cache.getObject("b"));
+  }
+
+  @Test
+  void shouldNotKeepRemoteReadsRacingWithWrites() {
+    RemoteCache remote = new RemoteCache();
+    NearCache cache = new NearCache(remote, 16, null);
+    remote.putObject("a", "A");
+    remote.onRead = () -> cache.removeObject("b");
+    assertEquals("A", cache.getObject("a"));
+    remote.onRead = null;
+    assertEquals("A", cache.getObject("a"));
+    assertEquals(2, remote.reads);
+    assertEquals("A", cache.getObject("a"));
+    assertEquals(2, remote.reads);
+  }
+
+  @Test
+  void shouldExpireLocalEntries() throws Exception {
+    RemoteCache remote = new RemoteCache();
+    NearCache cache = new NearCache(remote, 16, null);
+    cache.setLocalTimeToLive(50);
+    cache.putObject("a", "A");
+    remote.putObject("a", "A2");
+    assertEquals("A", cache.getObject("a"));
+    Thread.sleep(100);
+    assertEquals("A2", cache.getObject("a"));
+  }
+
+  @Test
+  void shouldWriteBehind() throws Exception {
+    RemoteCache remote = new RemoteCache();
+    NearCache cache = new NearCache(remote, 1, null);
+    cache.setWritePolicy(NearCache.WritePolicy.WRITE_BEHIND);
+    cache.setWriteBehindDelay(60000);
+    cache.putObject("a", "A");
+    cache.putObject("b", "B");
+    cache.putObject("c", "C");
+    cache.removeObject("c");
+    assertEquals(0, remote.getSize());
+    assertEquals(2, cache.getPendingWriteCount());
+    // evicted locally but still pending
+    assertEquals("A", cache.getObject("a"));
+    assertEquals(0, remote.reads);
+    cache.flushPendingWrites();
+    assertEquals(0, cache.getPendingWriteCount());
+    assertEquals("A", remote.getObject("a"));
+    assertEquals("B", remote.getObject("b"));
+    assertNull(remote.getObject("c"));
+  }
+
+  @Test
+  void shouldWriteBehindInBackground() throws Exception {
+    RemoteCache remote = new RemoteCache();
+    NearCache cache = new NearCache(remote, 16, null);
+    cache.setWritePolicy(NearCache.WritePolicy.WRITE_BEHIND);
+    cache.setWriteBehindDelay(10);
+    cache.putObject("a", "A");
+    for (int i = 0; i < 100 && cache.getPendingWriteCount() > 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals("A", remote.getObject("a"));
+  }
+
+  @Test
+  void shouldCopyLocalValues() {
+    NearCache cache = new NearCache(new RemoteCache(), 16, new JavaCacheSerializer());
+    List<String> value = new ArrayList<>();
+    value.add("A");
+    cache.putObject("a", value);
+    value.add("B");
+    @SuppressWarnings("unchecked")
+    List<String> hit = (List<String>) cache.getObject("a");
+    hit.add("C");
+    assertEquals(1, ((List<?>) cache.getObject("a")).size());
+  }
+
+  @Test
+  void shouldBuildNearCache() {
+    Cache cache = new CacheBuilder("default").nearCacheSize(16).nearCacheTimeToLive(1000L)
+        .nearCacheWritePolicy(NearCache.WritePolicy.WRITE_BEHIND).build();
+    assertTrue(cache instanceof NearCache);
+    assertEquals(1000L, ((NearCache) cache).getLocalTimeToLive());
+    assertEquals(NearCache.WritePolicy.WRITE_BEHIND, ((NearCache) cache).getWritePolicy());
+    assertEquals("default", cache.getId());
+  }
+
+  @Test
+  void shouldForwardNullPutsWithoutCachingThemLocally() {
+    CoalescingCache remote = new CoalescingCache(new PerpetualCache("remote"));
+    NearCache cache = new NearCache(remote, 16, null);
+    cache.setWritePolicy(NearCache.WritePolicy.WRITE_BEHIND);
+    assertNull(cache.getObject("a"));
+    assertEquals(1, remote.getLoadCount());
+    cache.putObject("a", null);
+    assertEquals(0, remote.getLoadCount());
+    assertEquals(0, cache.getLocalSize());
+    assertEquals(0, cache.getPendingWriteCount());
+    assertNull(cache.getObject("a"));
+    assertEquals(0, cache.getHitCount());
+  }
+
+  @Test
+  void shouldNotServeLocalEntriesPastTimeToLiveOfCache() {
+    Cache cache = new CacheBuilder("default").nearCacheSize(16).timeToLive(1000L).build();
+    assertEquals(1000L, ((NearCache) cache).getLocalTimeToLive());
+    cache = new CacheBuilder("default").nearCacheSize(16).nearCacheTimeToLive(5000L).timeToLive(1000L)
+        .refreshAhead(0.5).build();
+    assertEquals(500L, ((NearCache) cache).getLocalTimeToLive());
+    cache = new CacheBuilder("default").nearCacheSize(16).nearCacheTimeToLive(200L).timeToLive(1000L).build();
+    assertEquals(200L, ((NearCache) cache).getLocalTimeToLive());
+  }
+
+  @Test
+  void shouldEvictLocalCopiesOfEntriesPutByOtherNodesOnTableInvalidation() {
+    SharedRemoteCache.entries.clear();
+    TableTaggedCache node1 = (TableTaggedCache) new CacheBuilder("shared").implementation(SharedRemoteCache.class)
+        .nearCacheSize(16).tableInvalidation(true).build();
+    TableTaggedCache node2 = (TableTaggedCache) new CacheBuilder("shared").implementation(SharedRemoteCache.class)
+        .nearCacheSize(16).tableInvalidation(true).build();
+    node1.putObject("k", "K", Arrays.asList("author"));
+    assertEquals("K", node2.getObject("k"));
+    node1.invalidate(Arrays.asList("author"));
+    node2.invalidate(Arrays.asList("author"));
+    assertNull(node2.getObject("k"));
+  }
+
+  public static class SharedRemoteCache extends PerpetualCache {
+
+    static final Map<Object, Object> entries = new ConcurrentHashMap<>();
+
+    public SharedRemoteCache(String id) {
+      super(id);
+    }
+
+    @Override
+    public void putObject(Object key, Object value) {
+      entries.put(key, value);
+    }
+
+    @Override
+    public Object getObject(Object key) {
+      return entries.get(key);
+    }
+
+    @Override
+    public Object removeObject(Object key) {
+      return entries.remove(key);
+    }
+
+    @Override
+    public void clear() {
+      entries.clear();
+    }
+  }
+
+  private static class RemoteCache extends PerpetualCache {
+
+    private int reads;
+    private Runnable onRead;
+
+    RemoteCache() {
+      super("remote");
+    }
+
+    @Override
+    public Object getObject(Object key) {
+      reads++;
+      if (onRead != null) {
+        onRead.run();
+      }
+      return super.getObject(key);
+    }
+  }
+
+}
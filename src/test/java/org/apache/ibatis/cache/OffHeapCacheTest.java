@@ -0,0 +1,148 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.ibatis.cache.decorators.LoggingCache;
+import org.apache.ibatis.cache.impl.OffHeapCache;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Section;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class OffHeapCacheTest {
+
+  @Test
+  void shouldReturnCopiesOfCachedObjects() throws Exception {
+    OffHeapCache cache = newCache("64k", "4k");
+    Author author = new Author(1, "jim", "secret", "jim@example.com", "bio", Section.NEWS);
+    cache.putObject(1, author);
+    author.setUsername("pam");
+
+    Author cached = (Author) cache.getObject(1);
+    assertEquals("jim", cached.getUsername());
+    assertEquals(Section.NEWS, cached.getFavouriteSection());
+    assertNotSame(cached, cache.getObject(1));
+    assertNull(cache.getObject(2));
+    assertEquals(1, cache.getSize());
+  }
+
+  @Test
+  void shouldEvictOldestSegmentWhenFull() throws Exception {
+    OffHeapCache cache = newCache("4k", "1k");
+    for (int i = 0; i < 40; i++) {
+      cache.putObject(i, value(i, 200));
+    }
+    assertNull(cache.getObject(0));
+    assertEquals(value(39, 200), cache.getObject(39));
+    assertTrue(cache.getEvictionCount() > 0);
+    assertEquals(40, cache.getSize() + cache.getEvictionCount());
+    assertTrue(cache.getLiveBytes() <= cache.getCapacity());
+    assertEquals(4096, cache.getAllocatedBytes());
+  }
+
+  @Test
+  void shouldNotCacheObjectsLargerThanSegment() throws Exception {
+    OffHeapCache cache = newCache("4k", "1k");
+    cache.putObject(0, value(0, 2000));
+    assertNull(cache.getObject(0));
+    assertEquals(1, cache.getRejectionCount());
+  }
+
+  @Test
+  void shouldBoundNumberOfObjects() throws Exception {
+    OffHeapCache cache = newCache("64k", "4k");
+    cache.setSize(5);
+    for (int i = 0; i < 10; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(5, cache.getSize());
+    assertNull(cache.getObject(4));
+    assertEquals(5, cache.getObject(5));
+  }
+
+  @Test
+  void shouldReclaimRemovedAndReplacedObjects() throws Exception {
+    OffHeapCache cache = newCache("64k", "4k");
+    cache.putObject(0, value(0, 100));
+    long liveBytes = cache.getLiveBytes();
+    cache.putObject(0, value(1, 100));
+    assertEquals(liveBytes, cache.getLiveBytes());
+    assertEquals(value(1, 100), cache.removeObject(0));
+    assertNull(cache.getObject(0));
+    assertEquals(0, cache.getLiveBytes());
+    cache.putObject(1, 1);
+    cache.clear();
+    assertNull(cache.getObject(1));
+    assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  void shouldStoreObjectsInMappedFile() throws Exception {
+    File file = File.createTempFile("mybatis-off-heap", ".bin");
+    try {
+      OffHeapCache cache = new OffHeapCache("default");
+      cache.setCapacity("8k");
+      cache.setSegmentSize("2k");
+      cache.setFile(file.getAbsolutePath());
+      cache.initialize();
+      assertEquals(8192, file.length());
+      List<String> value = new ArrayList<>();
+      value.add("row");
+      cache.putObject(0, value);
+      assertEquals(value, cache.getObject(0));
+    } finally {
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  @Test
+  void shouldBeConfiguredByCacheBuilder() {
+    Properties properties = new Properties();
+    properties.setProperty("capacity", "16k");
+    properties.setProperty("segmentSize", "4k");
+    Cache cache = new CacheBuilder("default").implementation(OffHeapCache.class).size(3).properties(properties).build();
+    assertTrue(cache instanceof LoggingCache);
+    for (int i = 0; i < 5; i++) {
+      cache.putObject(i, i);
+    }
+    assertEquals(3, cache.getSize());
+  }
+
+  private static OffHeapCache newCache(String capacity, String segmentSize) throws Exception {
+    OffHeapCache cache = new OffHeapCache("default");
+    cache.setCapacity(capacity);
+    cache.setSegmentSize(segmentSize);
+    cache.initialize();
+    return cache;
+  }
+
+  private static String value(int i, int length) {
+    StringBuilder builder = new StringBuilder().append(i);
+    while (builder.length() < length) {
+      builder.append('x');
+    }
+    return builder.toString();
+  }
+
+}
@@ -0,0 +1,228 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.apache.ibatis.cache.decorators.SnapshotCache;
+import org.apache.ibatis.cache.decorators.TableTaggedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.cache.serializer.JavaCacheSerializer;
+import org.apache.ibatis.cache.snapshot.CacheSnapshotManager;
+import org.apache.ibatis.cache.snapshot.SnapshotFile;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SnapshotCacheTest {
+
+  private Path directory;
+
+  @BeforeEach
+  void createDirectory() throws IOException {
+    directory = Files.createTempDirectory("mybatis-snapshot");
+  }
+
+  @AfterEach
+  void deleteDirectory() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+    Files.deleteIfExists(directory);
+  }
+
+  @Test
+  void shouldRestoreSavedEntriesWhenMissed() throws IOException {
+    Path file = directory.resolve("test.snapshot");
+    SnapshotCache cache = newCache();
+    cache.putObject("a", "A");
+    cache.putObject("b", "B");
+    assertEquals(2, cache.save(file, "v1"));
+
+    SnapshotCache restored = newCache();
+    restored.restore(SnapshotFile.open(file, "v1", new JavaCacheSerializer()));
+    assertEquals(0, restored.getSize());
+    assertEquals(2, restored.getSnapshotSize());
+    assertEquals("A", restored.getObject("a"));
+    assertEquals(1, restored.getSize());
+    assertEquals(1, restored.getSnapshotSize());
+    assertEquals(1, restored.getRestoredCount());
+    assertNull(restored.getObject("c"));
+  }
+
+  @Test
+  void shouldIgnoreSnapshotSavedWithAnotherStamp() throws IOException {
+    Path file = directory.resolve("test.snapshot");
+    SnapshotCache cache = newCache();
+    cache.putObject("a", "A");
+    cache.save(file, "v1");
+    assertNull(SnapshotFile.open(file, "v2", new JavaCacheSerializer()));
+    assertNull(SnapshotFile.open(directory.resolve("missing.snapshot"), "v1", new JavaCacheSerializer()));
+    Files.write(file, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+    assertNull(SnapshotFile.open(file, "v1", new JavaCacheSerializer()));
+  }
+
+  @Test
+  void shouldLetWritesWinOverSnapshot() throws IOException {
+    Path file = directory.resolve("test.snapshot");
+    SnapshotCache cache = newCache();
+    cache.putObject("a", "A");
+    cache.putObject("b", "B");
+    cache.putObject("c", "C");
+    cache.save(file, "v1");
+
+    SnapshotCache restored = newCache();
+    restored.restore(SnapshotFile.open(file, "v1", new JavaCacheSerializer()));
+    restored.putObject("a", "A2");
+    restored.removeObject("b");
+    assertEquals("A2", restored.getObject("a"));
+    assertNull(restored.getObject("b"));
+    restored.clear();
+    assertNull(restored.getObject("c"));
+    assertEquals(0, restored.getSnapshotSize());
+  }
+
+  @Test
+  void shouldSaveEntriesNotRestoredYet() throws IOException {
+    Path file = directory.resolve("test.snapshot");
+    SnapshotCache cache = newCache();
+    cache.putObject("a", "A");
+    cache.putObject("b", "B");
+    cache.save(file, "v1");
+
+    SnapshotCache restored = newCache();
+    restored.restore(SnapshotFile.open(file, "v1", new JavaCacheSerializer()));
+    restored.putObject("c", "C");
+    assertEquals(3, restored.save(file, "v1"));
+
+    SnapshotCache again = newCache();
+    again.restore(SnapshotFile.open(file, "v1", new JavaCacheSerializer()));
+    assertEquals("A", again.getObject("a"));
+    assertEquals("B", again.getObject("b"));
+    assertEquals("C", again.getObject("c"));
+  }
+
+  @Test
+  void shouldWarmUpMatchingEntries() throws IOException {
+    Path file = directory.resolve("test.snapshot");
+    SnapshotCache cache = newCache();
+    cache.putObject("a1", "A1");
+    cache.putObject("a2", "A2");
+    cache.putObject("b1", "B1");
+    cache.save(file, "v1");
+
+    SnapshotCache restored = newCache();
+    restored.restore(SnapshotFile.open(file, "v1", new JavaCacheSerializer()));
+    assertEquals(2, restored.warmUp(key -> ((String) key).startsWith("a")));
+    assertEquals(2, restored.getSize());
+    assertEquals(1, restored.getSnapshotSize());
+  }
+
+  @Test
+  void shouldSaveAndRestoreCachesOfConfiguration() throws Exception {
+    Configuration configuration = new Configuration();
+    configuration.setCacheSnapshotDirectory(directory.toString());
+    Cache cache = new CacheBuilder("org.example.Mapper").snapshots(configuration.getCacheSnapshotManager()).build();
+    CacheKey warm = newKey("org.example.Mapper.selectAll");
+    CacheKey cold = newKey("org.example.Mapper.selectOne");
+    cache.putObject(warm, "all");
+    cache.putObject(cold, "one");
+    configuration.getCacheSnapshotManager().save();
+    assertTrue(Files.isRegularFile(directory.resolve("org.example.Mapper.snapshot")));
+    Files.write(directory.resolve("org.example.Mapper.warmup"),
+        Arrays.asList("# loaded on startup", "org.example.Mapper.selectAll"), StandardCharsets.UTF_8);
+
+    Configuration restarted = new Configuration();
+    restarted.setCacheSnapshotDirectory(directory.toString());
+    CacheSnapshotManager manager = restarted.getCacheSnapshotManager();
+    SnapshotCache restored = (SnapshotCache) new CacheBuilder("org.example.Mapper").snapshots(manager).build();
+    manager.restore();
+    for (int i = 0; i < 100 && restored.getSnapshotSize() > 1; i++) {
+      Thread.sleep(20);
+    }
+    assertEquals(1, restored.getRestoredCount());
+    assertEquals(1, restored.getSnapshotSize());
+    assertEquals("one", restored.getObject(newKey("org.example.Mapper.selectOne")));
+    assertEquals(2, restored.getRestoredCount());
+
+    Files.delete(directory.resolve("org.example.Mapper.snapshot"));
+    manager.close();
+    assertTrue(Files.isRegularFile(directory.resolve("org.example.Mapper.snapshot")));
+    manager.close();
+  }
+
+  @Test
+  void shouldEvictRestoredEntriesOnAnyTableInvalidation() throws IOException {
+    Configuration configuration = new Configuration();
+    configuration.setCacheSnapshotDirectory(directory.toString());
+    Cache cache = new CacheBuilder("org.example.Mapper").snapshots(configuration.getCacheSnapshotManager()).build();
+    cache.putObject("a", "A");
+    configuration.getCacheSnapshotManager().save();
+
+    Configuration restarted = new Configuration();
+    restarted.setCacheSnapshotDirectory(directory.toString());
+    TableTaggedCache restored = (TableTaggedCache) new CacheBuilder("org.example.Mapper").tableInvalidation(true)
+        .snapshots(restarted.getCacheSnapshotManager()).build();
+    restarted.getCacheSnapshotManager().restore();
+    assertEquals("A", restored.getObject("a"));
+    restored.invalidate(Arrays.asList("author"));
+    assertNull(restored.getObject("a"));
+    restarted.getCacheSnapshotManager().close();
+  }
+
+  @Test
+  void shouldDiscardEntriesNotRestoredYetOnAnyTableInvalidation() throws IOException {
+    Configuration configuration = new Configuration();
+    configuration.setCacheSnapshotDirectory(directory.toString());
+    Cache cache = new CacheBuilder("org.example.Mapper").tableInvalidation(true)
+        .snapshots(configuration.getCacheSnapshotManager()).build();
+    ((TableTaggedCache) cache).putObject("a", "A", Arrays.asList("author"));
+    configuration.getCacheSnapshotManager().close();
+
+    Configuration restarted = new Configuration();
+    restarted.setCacheSnapshotDirectory(directory.toString());
+    TableTaggedCache restored = (TableTaggedCache) new CacheBuilder("org.example.Mapper").tableInvalidation(true)
+        .snapshots(restarted.getCacheSnapshotManager()).build();
+    restarted.getCacheSnapshotManager().restore();
+    // invalidated before the first read, the entry is still in the snapshot only
+    restored.invalidate(Arrays.asList("author"));
+    assertNull(restored.getObject("a"));
+    restarted.getCacheSnapshotManager().close();
+  }
+
+  private static SnapshotCache newCache() {
+    return new SnapshotCache(new PerpetualCache("test"), new JavaCacheSerializer(), 16);
+  }
+
+  private static CacheKey newKey(String statementId) {
+    CacheKey key = new CacheKey();
+    key.update(statementId);
+    key.update(0);
+    return key;
+  }
+
+}
@@ -0,0 +1,69 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class SqlTableParserTest {
+
+  @Test
+  void shouldFindTablesOfSelect() {
+    assertEquals(tables("author", "blog", "post"), SqlTableParser.parse("select * from Author a, blog b left outer join post p on p.blog_id = b.id where a.id = ?"));
+  }
+
+  @Test
+  void shouldFindTablesOfSubqueries() {
+    assertEquals(tables("author", "blog"), SqlTableParser.parse("select * from (select id from author where bio like 'from x') a\n"
+        + "where exists (select 1 from blog -- from comment\n where blog.author_id = a.id)"));
+  }
+
+  @Test
+  void shouldFindTablesOfWrites() {
+    assertEquals(tables("author"), SqlTableParser.parse("insert into author (id, username) values (?, ?)"));
+    assertEquals(tables("archive", "post"), SqlTableParser.parse("INSERT INTO archive SELECT * FROM post"));
+    assertEquals(tables("author"), SqlTableParser.parse("update Author set username = ? where id = ?"));
+    assertEquals(tables("author"), SqlTableParser.parse("delete from /* comment */ Author where id = ?"));
+    assertEquals(tables("author"), SqlTableParser.parse("truncate table author"));
+    assertEquals(tables("author", "staged"), SqlTableParser.parse("merge into author t using staged s on (t.id = s.id) when matched then update set t.bio = s.bio"));
+  }
+
+  @Test
+  void shouldIgnoreSchemasAndQuotes() {
+    assertEquals(tables("author", "post", "tag"), SqlTableParser.parse("select * from blog_db.\"Author\" join `post` on 1 = 1 join [dbo].[Tag] on 1 = 1"));
+  }
+
+  @Test
+  void shouldNotTakeFunctionsForTables() {
+    assertEquals(tables("author"), SqlTableParser.parse("select * from unnest(?) u join author on 1 = 1"));
+  }
+
+  @Test
+  void shouldReturnNullWithoutTables() {
+    assertNull(SqlTableParser.parse("{call next_author_id(?)}"));
+    assertNull(SqlTableParser.parse("select 1"));
+  }
+
+  private static Set<String> tables(String... tables) {
+    return new HashSet<>(Arrays.asList(tables));
+  }
+
+}
@@ -0,0 +1,118 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.ibatis.cache.decorators.TableTaggedCache;
+import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class TableTaggedCacheTest {
+
+  @Test
+  void shouldEvictOnlyEntriesOfModifiedTables() {
+    TableTaggedCache cache = new TableTaggedCache(new PerpetualCache("default"), 100);
+    cache.putObject("authors", "a", Collections.singleton("author"));
+    cache.putObject("posts", "p", Arrays.asList("post", "blog"));
+    cache.putObject("unknown", "u");
+
+    cache.invalidate(Collections.singleton("blog"));
+
+    assertEquals("a", cache.getObject("authors"));
+    assertNull(cache.getObject("posts"));
+    assertNull(cache.getObject("unknown"));
+  }
+
+  @Test
+  void shouldClearWhenTablesAreUnknown() {
+    TableTaggedCache cache = new TableTaggedCache(new PerpetualCache("default"), 100);
+    cache.putObject("authors", "a", Collections.singleton("author"));
+    cache.invalidate(null);
+    assertNull(cache.getObject("authors"));
+  }
+
+  @Test
+  void shouldRemoveEntriesDroppedFromIndex() {
+    TableTaggedCache cache = new TableTaggedCache(new PerpetualCache("default"), 2);
+    for (int i = 0; i < 3; i++) {
+      cache.putObject(i, i, Collections.singleton("author"));
+    }
+    assertNull(cache.getObject(0));
+    assertEquals(2, cache.getSize());
+  }
+
+  @Test
+  void shouldInvalidateTablesOnCommit() {
+    TableTaggedCache cache = new TableTaggedCache(new PerpetualCache("default"), 100);
+    cache.putObject("authors", "a", Collections.singleton("author"));
+    cache.putObject("posts", "p", Collections.singleton("post"));
+    TransactionalCache transactionalCache = new TransactionalCache(cache);
+
+    transactionalCache.invalidate(Collections.singleton("post"));
+    transactionalCache.putObject("comments", "c", Collections.singleton("comment"));
+    transactionalCache.putObject("otherPosts", "o", Collections.singleton("post"));
+    assertEquals("a", transactionalCache.getObject("authors"));
+    assertNull(transactionalCache.getObject("posts"));
+    assertEquals("p", cache.getObject("posts"));
+
+    transactionalCache.commit();
+
+    assertEquals("a", transactionalCache.getObject("authors"));
+    assertNull(cache.getObject("posts"));
+    assertEquals("c", cache.getObject("comments"));
+    assertEquals("o", cache.getObject("otherPosts"));
+  }
+
+  @Test
+  void shouldHideOnlyEntriesOfTablesPendingInvalidation() {
+    TableTaggedCache cache = new TableTaggedCache(new PerpetualCache("default"), 100);
+    cache.putObject("authors", "a", Collections.singleton("author"));
+    cache.putObject("posts", "p", Arrays.asList("post", "blog"));
+    cache.putObject("unknown", "u");
+    cache.putObject("blogs", "b", Collections.singleton("blog"));
+    TransactionalCache transactionalCache = new TransactionalCache(cache);
+
+    transactionalCache.invalidate(Collections.singleton("post"));
+
+    assertEquals("a", transactionalCache.getObject("authors"));
+    assertEquals("b", transactionalCache.getObject("blogs"));
+    assertNull(transactionalCache.getObject("posts"));
+    assertNull(transactionalCache.getObject("unknown"));
+  }
+
+  @Test
+  void shouldKeepEntriesOnRollback() {
+    TableTaggedCache cache = new TableTaggedCache(new PerpetualCache("default"), 100);
+    cache.putObject("posts", "p", Collections.singleton("post"));
+    TransactionalCache transactionalCache = new TransactionalCache(cache);
+    transactionalCache.invalidate(Collections.singleton("post"));
+    transactionalCache.rollback();
+    assertEquals("p", transactionalCache.getObject("posts"));
+  }
+
+  @Test
+  void shouldBeOutermostDecorator() {
+    Cache cache = new CacheBuilder("default").tableInvalidation(true).build();
+    assertTrue(cache instanceof TableTaggedCache);
+  }
+
+}
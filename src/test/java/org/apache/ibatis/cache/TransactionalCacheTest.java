@@ -0,0 +1,187 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.cache.decorators.BlockingCache;
+import org.apache.ibatis.cache.decorators.TransactionalCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.mapping.CacheBuilder;
+import org.junit.jupiter.api.Test;
+
+class TransactionalCacheTest {
+
+  @Test
+  void shouldReleaseMissesOfBlockingCachesOnly() {
+    CountingCache blocking = new CountingCache("blocking");
+    TransactionalCache transactionalCache = new TransactionalCache(blocking);
+    transactionalCache.getObject("a");
+    transactionalCache.getObject("b");
+    transactionalCache.commit();
+    assertEquals(2, blocking.puts);
+
+    CountingCache nonBlocking = new CountingCache("nonBlocking");
+    transactionalCache = new TransactionalCache(nonBlocking, false, 0, null);
+    transactionalCache.getObject("a");
+    transactionalCache.getObject("b");
+    transactionalCache.putObject("a", "A");
+    transactionalCache.commit();
+    assertEquals(1, nonBlocking.puts);
+    transactionalCache.getObject("c");
+    transactionalCache.rollback();
+    assertEquals(0, nonBlocking.removes);
+  }
+
+  @Test
+  void shouldNotStageEntriesBeyondLimit() {
+    Cache cache = new PerpetualCache("test");
+    TransactionalCache transactionalCache = new TransactionalCache(cache, false, 2, null);
+    transactionalCache.putObject("a", "A");
+    transactionalCache.putObject("b", "B");
+    transactionalCache.putObject("c", "C");
+    transactionalCache.putObject("a", "A2");
+    transactionalCache.commit();
+    assertEquals("A2", cache.getObject("a"));
+    assertEquals("B", cache.getObject("b"));
+    assertNull(cache.getObject("c"));
+  }
+
+  @Test
+  void shouldPutCommittedEntriesInBackground() {
+    CacheCommitApplier applier = new CacheCommitApplier();
+    Cache cache = new PerpetualCache("test");
+    TransactionalCache transactionalCache = new TransactionalCache(cache, false, 0, applier);
+    transactionalCache.putObject("a", "A");
+    transactionalCache.commit();
+    transactionalCache.putObject("b", "B");
+    transactionalCache.commit();
+    applier.awaitPendingCommits();
+    assertEquals("A", cache.getObject("a"));
+    assertEquals("B", cache.getObject("b"));
+  }
+
+  @Test
+  void shouldApplyCommitsOfBlockingCachesOnCommit() {
+    CacheCommitApplier applier = new CacheCommitApplier();
+    Cache cache = new PerpetualCache("test");
+    TransactionalCache transactionalCache = new TransactionalCache(cache, true, 0, applier);
+    transactionalCache.putObject("a", "A");
+    transactionalCache.commit();
+    assertEquals("A", cache.getObject("a"));
+  }
+
+  @Test
+  void shouldNotPutEntriesStagedBeforeAnEviction() throws InterruptedException {
+    CacheCommitApplier applier = new CacheCommitApplier();
+    CountDownLatch release = new CountDownLatch(1);
+    Cache slow = new PerpetualCache("slow") {
+      @Override
+      public void putObject(Object key, Object value) {
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.putObject(key, value);
+      }
+    };
+    TransactionalCache slowSession = new TransactionalCache(slow, false, 0, applier);
+    slowSession.putObject("x", "X");
+    slowSession.commit();
+
+    Cache cache = new PerpetualCache("test");
+    TransactionalCache reader = new TransactionalCache(cache, false, 0, applier);
+    TransactionalCache writer = new TransactionalCache(cache, false, 0, applier);
+    reader.putObject("a", "stale A");
+    reader.commit();
+    writer.clear();
+    writer.commit();
+    release.countDown();
+    applier.awaitPendingCommits();
+    assertNull(cache.getObject("a"));
+    assertEquals("X", slow.getObject("x"));
+  }
+
+  @Test
+  void shouldNotKeepEntriesPutWhileEvicting() throws InterruptedException {
+    CacheCommitApplier applier = new CacheCommitApplier();
+    CountDownLatch putStarted = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Cache cache = new PerpetualCache("test") {
+      @Override
+      public void putObject(Object key, Object value) {
+        putStarted.countDown();
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.putObject(key, value);
+      }
+
+      @Override
+      public void clear() {
+        super.clear();
+        // lets the applier finish its put while the eviction is being committed
+        release.countDown();
+        applier.awaitPendingCommits();
+      }
+    };
+    TransactionalCache reader = new TransactionalCache(cache, false, 0, applier);
+    TransactionalCache writer = new TransactionalCache(cache, false, 0, applier);
+    reader.putObject("a", "stale A");
+    reader.commit();
+    assertTrue(putStarted.await(5, TimeUnit.SECONDS));
+    writer.clear();
+    writer.commit();
+    assertNull(cache.getObject("a"));
+  }
+
+  @Test
+  void shouldTellWhetherBuiltCacheMayBlock() {
+    assertFalse(new CacheBuilder("test").isBlocking());
+    assertTrue(new CacheBuilder("test").blocking(true).isBlocking());
+    assertTrue(new CacheBuilder("test").addDecorator(BlockingCache.class).isBlocking());
+    assertTrue(new CacheBuilder("test").implementation(CountingCache.class).isBlocking());
+  }
+
+  public static class CountingCache extends PerpetualCache {
+
+    private int puts;
+    private int removes;
+
+    public CountingCache(String id) {
+      super(id);
+    }
+
+    @Override
+    public void putObject(Object key, Object value) {
+      puts++;
+      super.putObject(key, value);
+    }
+
+    @Override
+    public Object removeObject(Object key) {
+      removes++;
+      return super.removeObject(key);
+    }
+  }
+
+}
@@ -0,0 +1,151 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.invalidation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheInvalidation;
+import org.apache.ibatis.cache.TransactionalCacheManager;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class InMemoryCacheInvalidationBusTest {
+
+  @Test
+  void shouldCoalesceInvalidationsOfSameCache() {
+    List<CacheInvalidation> coalesced = CacheInvalidation.coalesce(Arrays.asList(
+        new CacheInvalidation("a", Collections.singleton("author")),
+        new CacheInvalidation("b", Collections.singleton("blog")),
+        new CacheInvalidation("a", Collections.singleton("post")),
+        new CacheInvalidation("b", null),
+        new CacheInvalidation("b", Collections.singleton("comment"))));
+    assertEquals(Arrays.asList(new CacheInvalidation("a", Arrays.asList("author", "post")), new CacheInvalidation("b", null)),
+        coalesced);
+  }
+
+  @Test
+  void shouldDeliverBurstToOtherMembersInOneBatch() throws Exception {
+    InMemoryCacheInvalidationBus publisher = new InMemoryCacheInvalidationBus("burst", 50L);
+    InMemoryCacheInvalidationBus peer = new InMemoryCacheInvalidationBus("burst", 50L);
+    List<Collection<CacheInvalidation>> published = Collections.synchronizedList(new ArrayList<>());
+    List<Collection<CacheInvalidation>> received = Collections.synchronizedList(new ArrayList<>());
+    publisher.subscribe(published::add);
+    peer.subscribe(received::add);
+    try {
+      for (int i = 0; i < 100; i++) {
+        publisher.publish(Collections.singletonList(new CacheInvalidation("a", Collections.singleton("author"))));
+      }
+      waitFor(() -> !received.isEmpty());
+      Thread.sleep(100);
+      assertEquals(Collections.singletonList(Collections.singletonList(new CacheInvalidation("a", Collections.singleton("author")))),
+          received);
+      assertEquals(1, peer.getDeliveredBatchCount());
+      assertTrue(published.isEmpty());
+    } finally {
+      publisher.close();
+      peer.close();
+    }
+  }
+
+  @Test
+  void shouldClearCacheOfOtherNodeOnCommit() throws Exception {
+    Configuration node1 = new Configuration();
+    Configuration node2 = new Configuration();
+    node1.setCacheInvalidationBus(new InMemoryCacheInvalidationBus("nodes", 1L));
+    node2.setCacheInvalidationBus(new InMemoryCacheInvalidationBus("nodes", 1L));
+    Cache cache1 = new PerpetualCache("org.apache.ibatis.domain.AuthorMapper");
+    Cache cache2 = new PerpetualCache("org.apache.ibatis.domain.AuthorMapper");
+    node1.addCache(cache1);
+    node2.addCache(cache2);
+    try {
+      cache1.putObject("key", "value");
+      cache2.putObject("key", "value");
+      TransactionalCacheManager tcm = new TransactionalCacheManager(node1.getCacheInvalidationBus());
+      tcm.clear(cache1);
+      tcm.commit();
+      assertNull(cache1.getObject("key"));
+      waitFor(() -> cache2.getObject("key") == null);
+    } finally {
+      node1.setCacheInvalidationBus(null);
+      node2.setCacheInvalidationBus(null);
+    }
+  }
+
+  @Test
+  void shouldJoinChannelOfProperties() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("cacheInvalidationChannel", "properties");
+    properties.setProperty("cacheInvalidationBatchDelay", "1");
+    InMemoryCacheInvalidationBus publisher = new InMemoryCacheInvalidationBus();
+    InMemoryCacheInvalidationBus peer = new InMemoryCacheInvalidationBus();
+    InMemoryCacheInvalidationBus other = new InMemoryCacheInvalidationBus("other", 1L);
+    publisher.setProperties(properties);
+    peer.setProperties(properties);
+    List<Collection<CacheInvalidation>> received = Collections.synchronizedList(new ArrayList<>());
+    List<Collection<CacheInvalidation>> receivedByOther = Collections.synchronizedList(new ArrayList<>());
+    publisher.subscribe(invalidations -> { });
+    peer.subscribe(received::add);
+    other.subscribe(receivedByOther::add);
+    try {
+      publisher.publish(Collections.singletonList(new CacheInvalidation("a", null)));
+      waitFor(() -> !received.isEmpty());
+      assertTrue(receivedByOther.isEmpty());
+    } finally {
+      publisher.close();
+      peer.close();
+      other.close();
+    }
+  }
+
+  @Test
+  void shouldRequireChannel() {
+    InMemoryCacheInvalidationBus bus = new InMemoryCacheInvalidationBus();
+    assertThrows(IllegalArgumentException.class, () -> bus.setProperties(new Properties()));
+    assertThrows(IllegalStateException.class, () -> bus.subscribe(invalidations -> { }));
+  }
+
+  @Test
+  void shouldDropChannelClosedByLastMember() {
+    InMemoryCacheInvalidationBus first = new InMemoryCacheInvalidationBus("closing", 1L);
+    InMemoryCacheInvalidationBus second = new InMemoryCacheInvalidationBus("closing", 1L);
+    assertTrue(InMemoryCacheInvalidationBus.isOpen("closing"));
+    first.close();
+    assertTrue(InMemoryCacheInvalidationBus.isOpen("closing"));
+    second.close();
+    second.close();
+    assertFalse(InMemoryCacheInvalidationBus.isOpen("closing"));
+    second.publish(Collections.singletonList(new CacheInvalidation("a", null)));
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline, "timed out");
+      Thread.sleep(5);
+    }
+  }
+
+}
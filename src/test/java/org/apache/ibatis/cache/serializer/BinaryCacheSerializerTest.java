@@ -0,0 +1,190 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.cache.serializer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.ibatis.cache.Cache;
+import org.apache.ibatis.cache.CacheException;
+import org.apache.ibatis.cache.decorators.SerializedCache;
+import org.apache.ibatis.cache.impl.PerpetualCache;
+import org.junit.jupiter.api.Test;
+
+class BinaryCacheSerializerTest {
+
+  private final BinaryCacheSerializer serializer = new BinaryCacheSerializer();
+
+  @Test
+  void shouldRoundTripBeansWithSharedAndCyclicReferences() {
+    Department department = newDepartment();
+
+    Department result = (Department) serializer.deserialize(serializer.serialize(department));
+
+    assertEquals("Sales", result.name);
+    assertEquals(2, result.employees.size());
+    Employee employee = result.employees.get(0);
+    assertEquals("Jim", employee.name);
+    assertEquals(new BigDecimal("1234.50"), employee.salary);
+    assertEquals(LocalDate.of(2019, 3, 1), employee.hired);
+    assertEquals(department.employees.get(0).lastLogin, employee.lastLogin);
+    assertEquals(Level.SENIOR, employee.level);
+    assertEquals(42, employee.badge);
+    assertArrayEquals(new byte[] {1, 2, 3}, employee.photo);
+    assertSame(result, employee.department);
+    assertSame(result.employees.get(1), result.byName.get("Pam"));
+  }
+
+  @Test
+  void shouldFallBackToJavaSerialization() {
+    Map<String, Object> value = new TreeMap<>();
+    value.put("custom", new CustomizedBean("x"));
+    value.put("list", new ArrayList<>());
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> result = (Map<String, Object>) serializer.deserialize(serializer.serialize(value));
+
+    assertTrue(result instanceof TreeMap);
+    assertEquals("x", ((CustomizedBean) result.get("custom")).value);
+    assertEquals(new ArrayList<>(), result.get("list"));
+  }
+
+  @Test
+  void shouldRejectNonSerializableObjects() {
+    List<Object> value = new ArrayList<>();
+    value.add(new Object());
+    assertThrows(CacheException.class, () -> serializer.serialize(value));
+  }
+
+  @Test
+  void shouldCopyMutableObjects() {
+    Department department = newDepartment();
+
+    Department copy = (Department) serializer.copy(department);
+
+    assertNotSame(department, copy);
+    assertNotSame(department.employees, copy.employees);
+    assertNotSame(department.employees.get(0), copy.employees.get(0));
+    assertNotSame(department.employees.get(0).lastLogin, copy.employees.get(0).lastLogin);
+    assertNotSame(department.employees.get(0).photo, copy.employees.get(0).photo);
+    assertSame(department.name, copy.name);
+    assertSame(copy, copy.employees.get(0).department);
+    assertSame(copy.employees.get(1), copy.byName.get("Pam"));
+    assertEquals(department.employees.get(0).lastLogin, copy.employees.get(0).lastLogin);
+  }
+
+  @Test
+  void shouldCopyOnReadInSerializedCache() {
+    Cache cache = new SerializedCache(new PerpetualCache("default"), serializer, true);
+    Department department = newDepartment();
+    cache.putObject(0, department);
+    department.name = "Changed";
+
+    Department first = (Department) cache.getObject(0);
+    Department second = (Department) cache.getObject(0);
+
+    assertEquals("Sales", first.name);
+    assertNotSame(first, second);
+    first.name = "Changed";
+    assertEquals("Sales", ((Department) cache.getObject(0)).name);
+  }
+
+  @Test
+  void shouldUseBinarySerializerInSerializedCache() {
+    Cache cache = new SerializedCache(new PerpetualCache("default"), serializer, false);
+    cache.putObject(0, newDepartment());
+    assertNotSame(cache.getObject(0), cache.getObject(0));
+    assertEquals("Sales", ((Department) cache.getObject(0)).name);
+  }
+
+  private static Department newDepartment() {
+    Department department = new Department();
+    department.name = "Sales";
+    Employee jim = new Employee();
+    jim.name = "Jim";
+    jim.salary = new BigDecimal("1234.50");
+    jim.hired = LocalDate.of(2019, 3, 1);
+    jim.lastLogin = new Timestamp(1546300800000L);
+    jim.lastLogin.setNanos(123456789);
+    jim.level = Level.SENIOR;
+    jim.badge = 42;
+    jim.photo = new byte[] {1, 2, 3};
+    jim.department = department;
+    Employee pam = new Employee();
+    pam.name = "Pam";
+    pam.department = department;
+    department.employees.add(jim);
+    department.employees.add(pam);
+    department.byName.put("Pam", pam);
+    return department;
+  }
+
+  enum Level {
+    JUNIOR, SENIOR {
+      @Override
+      public String toString() {
+        return "senior";
+      }
+    }
+  }
+
+  static class Department implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private String name;
+    private final List<Employee> employees = new ArrayList<>();
+    private final Map<String, Employee> byName = new HashMap<>();
+  }
+
+  static class Employee implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private String name;
+    private BigDecimal salary;
+    private LocalDate hired;
+    private Timestamp lastLogin;
+    private Level level;
+    private int badge;
+    private byte[] photo;
+    private Department department;
+  }
+
+  static class CustomizedBean implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private String value;
+
+    CustomizedBean() {
+    }
+
+    CustomizedBean(String value) {
+      this.value = value;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+      out.defaultWriteObject();
+    }
+  }
+
+}
@@ -0,0 +1,59 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.loader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class ParallelResultLoaderTest {
+
+  @Test
+  void shouldCreatePoolOnFirstUse() {
+    Configuration configuration = new Configuration();
+    assertNull(configuration.getParallelResultLoader());
+    configuration.setNestedQueryParallelism(2);
+    ParallelResultLoader parallelResultLoader = configuration.getParallelResultLoader();
+    assertEquals(2, parallelResultLoader.getParallelism());
+    assertSame(parallelResultLoader, configuration.getParallelResultLoader());
+  }
+
+  @Test
+  void shouldResizePoolOfConfigurationInPlace() {
+    Configuration configuration = new Configuration();
+    configuration.setNestedQueryParallelism(2);
+    ParallelResultLoader parallelResultLoader = configuration.getParallelResultLoader();
+
+    configuration.setNestedQueryParallelism(8);
+    assertSame(parallelResultLoader, configuration.getParallelResultLoader());
+    assertEquals(8, parallelResultLoader.getParallelism());
+
+    configuration.setNestedQueryParallelism(0);
+    assertNull(configuration.getParallelResultLoader());
+
+    configuration.setNestedQueryParallelism(3);
+    assertSame(parallelResultLoader, configuration.getParallelResultLoader());
+    assertEquals(3, parallelResultLoader.getParallelism());
+  }
+
+  @Test
+  void shouldRejectParallelismLowerThanOne() {
+    assertThrows(IllegalArgumentException.class, () -> new ParallelResultLoader(0));
+    assertThrows(IllegalArgumentException.class, () -> new ParallelResultLoader(1).setParallelism(0));
+  }
+
+}
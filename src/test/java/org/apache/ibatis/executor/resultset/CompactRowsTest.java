@@ -0,0 +1,192 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.executor.resultset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.jupiter.api.Test;
+
+class CompactRowsTest {
+
+  private static final Timestamp CREATED = Timestamp.valueOf("2019-11-23 10:15:30.123456789");
+
+  @Test
+  void shouldReadRowsBack() throws Exception {
+    CompactRows rows = CompactRows.read(newResultSet(3));
+    assertNotNull(rows);
+    assertEquals(3, rows.getRowCount());
+    ResultSet rs = deserialize(serialize(rows)).newResultSet();
+    assertEquals(5, rs.getMetaData().getColumnCount());
+    assertEquals("PRICE", rs.getMetaData().getColumnLabel(3));
+    assertEquals(Types.DECIMAL, rs.getMetaData().getColumnType(3));
+    for (int i = 0; i < 3; i++) {
+      assertTrue(rs.next());
+      assertEquals(i, rs.getInt("id"));
+      assertEquals(Integer.valueOf(i), rs.getObject(1));
+      assertEquals(i % 2 == 0 ? "even" : "odd", rs.getString("NAME"));
+      if (i == 1) {
+        assertNull(rs.getBigDecimal("PRICE"));
+        assertTrue(rs.wasNull());
+        assertEquals(0, rs.getInt("PRICE"));
+        assertNull(rs.getTimestamp("CREATED"));
+      } else {
+        assertEquals(new BigDecimal("10.50"), rs.getBigDecimal("PRICE"));
+        assertFalse(rs.wasNull());
+        assertEquals(CREATED, rs.getTimestamp("CREATED"));
+        assertEquals(CREATED.toLocalDateTime(), rs.getObject("CREATED", LocalDateTime.class));
+      }
+      assertEquals(i == 0, rs.getBoolean("ACTIVE"));
+    }
+    assertFalse(rs.next());
+    rs.close();
+    assertTrue(rs.isClosed());
+  }
+
+  @Test
+  void shouldStoreRepeatedStringsOnce() throws Exception {
+    CompactRows few = CompactRows.read(newResultSet(10));
+    CompactRows many = CompactRows.read(newResultSet(1000));
+    // one byte for each id and name, the timestamps being deltas of zero but for their nanoseconds
+    assertTrue(many.getDataSize() < 100 * few.getDataSize(), many.getDataSize() + " bytes");
+    assertTrue(many.getDataSize() < 16 * 1000, many.getDataSize() + " bytes");
+  }
+
+  @Test
+  void shouldNotReadResultSetsWithUnsupportedColumns() throws Exception {
+    RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+    metaData.setColumnCount(2);
+    metaData.setColumnName(1, "ID");
+    metaData.setColumnLabel(1, "ID");
+    metaData.setColumnType(1, Types.INTEGER);
+    metaData.setColumnName(2, "TAGS");
+    metaData.setColumnLabel(2, "TAGS");
+    metaData.setColumnType(2, Types.ARRAY);
+    CachedRowSet rs = RowSetProvider.newFactory().createCachedRowSet();
+    rs.setMetaData(metaData);
+    assertNull(CompactRows.read(rs));
+  }
+
+  @Test
+  void shouldCaptureFirstResultSetOfStatementOnly() {
+    Configuration configuration = new Configuration();
+    MappedStatement ms = newMappedStatement(configuration);
+    assertNull(CompactRows.claimCapture(ms));
+    try (CompactRows.Capture capture = CompactRows.capture(ms)) {
+      assertNull(CompactRows.claimCapture(newMappedStatement(configuration)));
+      assertSame(capture, CompactRows.claimCapture(ms));
+      assertNull(CompactRows.claimCapture(ms));
+    }
+    assertNull(CompactRows.claimCapture(ms));
+  }
+
+  @Test
+  void shouldMapRowsToNewObjectsEachTime() throws Exception {
+    Configuration configuration = new Configuration();
+    MappedStatement ms = newMappedStatement(configuration);
+    CompactRows rows = CompactRows.read(newResultSet(2));
+    List<Object> first = newHandler(ms).handleRows(rows);
+    List<Object> second = newHandler(ms).handleRows(rows);
+    assertEquals(2, first.size());
+    assertEquals(first, second);
+    assertNotSame(first.get(0), second.get(0));
+    @SuppressWarnings("unchecked")
+    Map<String, Object> row = (Map<String, Object>) first.get(0);
+    assertEquals("even", row.get("NAME"));
+    assertEquals(new BigDecimal("10.50"), row.get("PRICE"));
+  }
+
+  private static DefaultResultSetHandler newHandler(MappedStatement ms) {
+    return new DefaultResultSetHandler(null, ms, null, null, null, RowBounds.DEFAULT);
+  }
+
+  private static MappedStatement newMappedStatement(Configuration configuration) {
+    ResultMap resultMap = new ResultMap.Builder(configuration, "selectProducts-Inline", HashMap.class, new ArrayList<>()).build();
+    return new MappedStatement.Builder(configuration, "selectProducts", new StaticSqlSource(configuration, "select * from products"),
+        SqlCommandType.SELECT).resultMaps(Collections.singletonList(resultMap)).build();
+  }
+
+  private static ResultSet newResultSet(int rowCount) throws SQLException {
+    RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+    metaData.setColumnCount(5);
+    String[] names = { "ID", "NAME", "PRICE", "ACTIVE", "CREATED" };
+    int[] types = { Types.INTEGER, Types.VARCHAR, Types.DECIMAL, Types.BOOLEAN, Types.TIMESTAMP };
+    for (int i = 0; i < names.length; i++) {
+      metaData.setColumnName(i + 1, names[i]);
+      metaData.setColumnLabel(i + 1, names[i]);
+      metaData.setColumnType(i + 1, types[i]);
+    }
+    CachedRowSet rs = RowSetProvider.newFactory().createCachedRowSet();
+    rs.setMetaData(metaData);
+    for (int i = rowCount - 1; i >= 0; i--) {
+      rs.moveToInsertRow();
+      rs.updateInt(1, i);
+      rs.updateString(2, i % 2 == 0 ? "even" : "odd");
+      if (i == 1) {
+        rs.updateNull(3);
+        rs.updateNull(5);
+      } else {
+        rs.updateBigDecimal(3, new BigDecimal("10.50"));
+        rs.updateTimestamp(5, CREATED);
+      }
+      rs.updateBoolean(4, i == 0);
+      rs.insertRow();
+      rs.moveToCurrentRow();
+    }
+    rs.beforeFirst();
+    return rs;
+  }
+
+  private static byte[] serialize(CompactRows rows) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(rows);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static CompactRows deserialize(byte[] bytes) throws Exception {
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      return (CompactRows) in.readObject();
+    }
+  }
+
+}
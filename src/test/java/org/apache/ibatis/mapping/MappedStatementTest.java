@@ -0,0 +1,93 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.mapping;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class MappedStatementTest {
+
+  private final Configuration config = new Configuration();
+
+  @Test
+  void shouldNotFindNestedQueriesOfSimpleResultMap() {
+    assertFalse(select(resultMap("simple", column("name"))).hasNestedQueries());
+  }
+
+  @Test
+  void shouldFindNestedSelect() {
+    assertTrue(select(resultMap("withNestedSelect", column("name"), nestedSelect("blog"))).hasNestedQueries());
+  }
+
+  @Test
+  void shouldFindNestedSelectOfNestedResultMap() {
+    config.addResultMap(resultMap("nested", nestedSelect("blog")));
+    ResultMapping association = new ResultMapping.Builder(config, "author").nestedResultMapId("nested").build();
+    assertTrue(select(resultMap("withNestedResultMap", column("name"), association)).hasNestedQueries());
+  }
+
+  @Test
+  void shouldFindNestedSelectOfDiscriminatorCase() {
+    config.addResultMap(resultMap("plainCase", column("name")));
+    config.addResultMap(resultMap("nestedSelectCase", nestedSelect("blog")));
+    assertFalse(select(discriminated("withPlainCases", "plainCase")).hasNestedQueries());
+    assertTrue(select(discriminated("withNestedSelectCase", "plainCase", "nestedSelectCase")).hasNestedQueries());
+  }
+
+  @Test
+  void shouldAssumeNestedQueriesOfUnknownDiscriminatorCase() {
+    assertTrue(select(discriminated("withUnknownCase", "unknownCase")).hasNestedQueries());
+  }
+
+  private MappedStatement select(ResultMap resultMap) {
+    return new MappedStatement.Builder(config, "select", new StaticSqlSource(config, "SELECT * FROM post"), SqlCommandType.SELECT)
+        .resultMaps(Collections.singletonList(resultMap)).build();
+  }
+
+  private ResultMap resultMap(String id, ResultMapping... resultMappings) {
+    List<ResultMapping> mappings = new ArrayList<>();
+    Collections.addAll(mappings, resultMappings);
+    return new ResultMap.Builder(config, id, HashMap.class, mappings).build();
+  }
+
+  private ResultMap discriminated(String id, String... caseResultMapIds) {
+    HashMap<String, String> cases = new HashMap<>();
+    for (int i = 0; i < caseResultMapIds.length; i++) {
+      cases.put(String.valueOf(i), caseResultMapIds[i]);
+    }
+    Discriminator discriminator = new Discriminator.Builder(config, column("section"), cases).build();
+    return new ResultMap.Builder(config, id, HashMap.class, new ArrayList<>()).discriminator(discriminator).build();
+  }
+
+  private ResultMapping column(String name) {
+    return new ResultMapping.Builder(config, name, name, config.getTypeHandlerRegistry().getTypeHandler(String.class)).build();
+  }
+
+  private ResultMapping nestedSelect(String property) {
+    return new ResultMapping.Builder(config, property, property + "_id", config.getTypeHandlerRegistry().getTypeHandler(int.class))
+        .nestedQueryId("selectBlog").build();
+  }
+
+}
@@ -15,6 +15,9 @@
  */
 package org.apache.ibatis.mapping;
 
+import java.util.ArrayList;
+import java.util.Collections;
+
 import org.apache.ibatis.session.Configuration;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -46,4 +49,14 @@ class ResultMappingTest {
         .build());
   }
 
+  @Test
+  void shouldFailWithABatchFetchedConstructorArgument() {
+    Assertions.assertThrows(IllegalStateException.class, () -> new ResultMapping.Builder(configuration, "prop")
+        .column("column")
+        .nestedQueryId("nested query ID")
+        .flags(new ArrayList<>(Collections.singletonList(ResultFlag.CONSTRUCTOR)))
+        .batchSize(10)
+        .build());
+  }
+
 }
@@ -0,0 +1,107 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringReader;
+import java.util.Properties;
+
+import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.domain.blog.Author;
+import org.apache.ibatis.domain.blog.Blog;
+import org.apache.ibatis.domain.blog.Post;
+import org.apache.ibatis.reflection.invoker.MethodHandleInvokerFactory;
+import org.apache.ibatis.session.Configuration;
+import org.junit.jupiter.api.Test;
+
+class BoundedReflectorFactoryTest {
+
+  @Test
+  void shouldCountHitsAndMisses() {
+    BoundedReflectorFactory reflectorFactory = new BoundedReflectorFactory();
+    Reflector reflector = reflectorFactory.findForClass(Author.class);
+    assertSame(reflector, reflectorFactory.findForClass(Author.class));
+    reflectorFactory.findForClass(Blog.class);
+    assertEquals(2, reflectorFactory.getMissCount());
+    assertEquals(1, reflectorFactory.getHitCount());
+    assertEquals(2, reflectorFactory.size());
+  }
+
+  @Test
+  void shouldEvictOldestReflectors() {
+    BoundedReflectorFactory reflectorFactory = new BoundedReflectorFactory(2);
+    Reflector authorReflector = reflectorFactory.findForClass(Author.class);
+    reflectorFactory.findForClass(Blog.class);
+    reflectorFactory.findForClass(Post.class);
+    assertEquals(1, reflectorFactory.getEvictionCount());
+    assertEquals(2, reflectorFactory.size());
+    assertNotSame(authorReflector, reflectorFactory.findForClass(Author.class));
+    assertEquals(4, reflectorFactory.getMissCount());
+  }
+
+  @Test
+  void shouldNotCacheWhenClassCacheIsDisabled() {
+    BoundedReflectorFactory reflectorFactory = new BoundedReflectorFactory();
+    reflectorFactory.setClassCacheEnabled(false);
+    assertNotSame(reflectorFactory.findForClass(Author.class), reflectorFactory.findForClass(Author.class));
+    assertEquals(0, reflectorFactory.size());
+  }
+
+  @Test
+  void shouldDiscardReflectorsWhenInvokerFactoryChanges() {
+    BoundedReflectorFactory reflectorFactory = new BoundedReflectorFactory();
+    Reflector reflector = reflectorFactory.findForClass(Author.class);
+    reflectorFactory.setInvokerFactory(new MethodHandleInvokerFactory());
+    assertNotSame(reflector, reflectorFactory.findForClass(Author.class));
+  }
+
+  @Test
+  void shouldRejectNonPositiveMaxSize() {
+    assertThrows(IllegalArgumentException.class, () -> new BoundedReflectorFactory(0));
+  }
+
+  @Test
+  void shouldSetMaxSizeFromProperties() {
+    BoundedReflectorFactory reflectorFactory = new BoundedReflectorFactory();
+    reflectorFactory.findForClass(Author.class);
+    reflectorFactory.findForClass(Blog.class);
+    reflectorFactory.findForClass(Post.class);
+    Properties properties = new Properties();
+    properties.setProperty("maxSize", "1");
+    reflectorFactory.setProperties(properties);
+    assertEquals(1, reflectorFactory.getMaxSize());
+    assertEquals(1, reflectorFactory.size());
+    assertEquals(2, reflectorFactory.getEvictionCount());
+  }
+
+  @Test
+  void shouldReadMaxSizeOfReflectorFactoryElement() {
+    String config = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n"
+        + "<!DOCTYPE configuration PUBLIC \"-//mybatis.org//DTD Config 3.0//EN\" \"http://mybatis.org/dtd/mybatis-3-config.dtd\">\n"
+        + "<configuration>\n"
+        + "  <reflectorFactory type=\"org.apache.ibatis.reflection.BoundedReflectorFactory\">\n"
+        + "    <property name=\"maxSize\" value=\"500\"/>\n"
+        + "  </reflectorFactory>\n"
+        + "</configuration>\n";
+    Configuration configuration = new XMLConfigBuilder(new StringReader(config)).parse();
+    assertEquals(500, ((BoundedReflectorFactory) configuration.getReflectorFactory()).getMaxSize());
+  }
+
+}
@@ -300,4 +300,26 @@ class MetaObjectTest {
     assertTrue(meta.hasGetter("filterParams[2]"));
   }
 
+  @Test
+  void shouldResetToAnotherBeanOfTheSameClass() {
+    RichType first = new RichType();
+    RichType second = new RichType();
+    MetaObject meta = SystemMetaObject.forObject(first);
+    meta.setValue("richProperty", "foo");
+    assertTrue(meta.reset(second));
+    meta.setValue("richProperty", "bar");
+    assertSame(second, meta.getOriginalObject());
+    assertEquals("foo", first.getRichProperty());
+    assertEquals("bar", second.getRichProperty());
+  }
+
+  @Test
+  void shouldNotResetToAnotherClassOrMap() {
+    MetaObject meta = SystemMetaObject.forObject(new Author());
+    assertFalse(meta.reset(new RichType()));
+    assertFalse(meta.reset(null));
+    MetaObject mapMeta = SystemMetaObject.forObject(new HashMap<String, Object>());
+    assertFalse(mapMeta.reset(new HashMap<String, Object>()));
+  }
+
 }
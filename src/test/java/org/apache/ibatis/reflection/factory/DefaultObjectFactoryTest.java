@@ -15,6 +15,12 @@
  */
 package org.apache.ibatis.reflection.factory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -94,4 +100,82 @@ class DefaultObjectFactoryTest {
     Set set = defaultObjectFactory.create(Set.class);
     Assertions.assertTrue(set instanceof HashSet, " set should be HashSet");
   }
+
+  @Test
+  void createClassTwiceWithCachedConstructor() {
+    DefaultObjectFactory defaultObjectFactory = new DefaultObjectFactory();
+    List<Class<?>> argTypes = new ArrayList<>(Arrays.asList(String.class, Integer.class));
+    TestClass first = defaultObjectFactory.create(TestClass.class, argTypes, Arrays.asList("foo", 0));
+    argTypes.clear();
+    TestClass second = defaultObjectFactory.create(TestClass.class,
+        Arrays.asList(String.class, Integer.class), Arrays.asList("bar", 1));
+
+    Assertions.assertNotSame(first, second);
+    Assertions.assertEquals("foo", first.myString);
+    Assertions.assertEquals("bar", second.myString);
+  }
+
+  @Test
+  void createClassWithPrivateConstructor() {
+    DefaultObjectFactory defaultObjectFactory = new DefaultObjectFactory();
+    PrivateConstructorClass first = defaultObjectFactory.create(PrivateConstructorClass.class);
+    PrivateConstructorClass second = defaultObjectFactory.create(PrivateConstructorClass.class);
+    Assertions.assertNotSame(first, second);
+  }
+
+  @Test
+  void shouldNotKeepClassLoadersOfCreatedClasses() throws Exception {
+    DefaultObjectFactory defaultObjectFactory = new DefaultObjectFactory();
+    WeakReference<ClassLoader> classLoader = createInIsolatedClassLoader(defaultObjectFactory);
+    for (int i = 0; i < 20 && classLoader.get() != null; i++) {
+      System.gc();
+      Thread.sleep(50);
+    }
+    Assertions.assertNull(classLoader.get());
+    Assertions.assertTrue(defaultObjectFactory.create(Isolated.class) instanceof Isolated);
+  }
+
+  private WeakReference<ClassLoader> createInIsolatedClassLoader(DefaultObjectFactory defaultObjectFactory) throws Exception {
+    byte[] bytes;
+    try (InputStream in = Isolated.class.getResourceAsStream("DefaultObjectFactoryTest$Isolated.class")) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      for (int n; (n = in.read(buffer)) != -1;) {
+        out.write(buffer, 0, n);
+      }
+      bytes = out.toByteArray();
+    }
+    IsolatedClassLoader isolated = new IsolatedClassLoader();
+    Class<?> type = isolated.define(Isolated.class.getName(), bytes);
+    Object created = defaultObjectFactory.create(type);
+    Assertions.assertSame(type, created.getClass());
+    Assertions.assertNotSame(Isolated.class, type);
+    return new WeakReference<>(isolated);
+  }
+
+  @Test
+  void createClassAfterDeserialization() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(new DefaultObjectFactory());
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      DefaultObjectFactory defaultObjectFactory = (DefaultObjectFactory) in.readObject();
+      Assertions.assertTrue(defaultObjectFactory.create(List.class) instanceof ArrayList);
+    }
+  }
+
+  private static class PrivateConstructorClass {
+    private PrivateConstructorClass() {
+    }
+  }
+
+  public static class Isolated {
+  }
+
+  private static class IsolatedClassLoader extends ClassLoader {
+    Class<?> define(String name, byte[] bytes) {
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
 }
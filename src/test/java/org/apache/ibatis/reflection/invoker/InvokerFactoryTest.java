@@ -0,0 +1,138 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.invoker;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.reflection.Reflector;
+import org.junit.jupiter.api.Test;
+
+class InvokerFactoryTest {
+
+  private static final List<InvokerFactory> FACTORIES = Arrays.asList(
+      new ReflectiveInvokerFactory(), new MethodHandleInvokerFactory(), new LambdaInvokerFactory());
+
+  @Test
+  void shouldGetAndSetThroughAccessors() throws Exception {
+    for (InvokerFactory factory : FACTORIES) {
+      Reflector reflector = new Reflector(Bean.class, factory);
+      Bean bean = new Bean();
+      reflector.getSetInvoker("name").set(bean, "John");
+      assertEquals("John", bean.getName());
+      assertEquals("John", reflector.getGetInvoker("name").invoke(bean, new Object[0]));
+      assertEquals(String.class, reflector.getGetInvoker("name").getType());
+    }
+  }
+
+  @Test
+  void shouldBoxAndUnboxPrimitives() throws Exception {
+    for (InvokerFactory factory : FACTORIES) {
+      Reflector reflector = new Reflector(Bean.class, factory);
+      Bean bean = new Bean();
+      reflector.getSetInvoker("age").invoke(bean, new Object[] {42});
+      assertEquals(42, bean.getAge());
+      assertEquals(42, reflector.getGetInvoker("age").invoke(bean, new Object[0]));
+      assertEquals(int.class, reflector.getSetInvoker("age").getType());
+    }
+  }
+
+  @Test
+  void shouldGetAndSetFieldsWithoutAccessors() throws Exception {
+    for (InvokerFactory factory : FACTORIES) {
+      Reflector reflector = new Reflector(Bean.class, factory);
+      Bean bean = new Bean();
+      reflector.getSetInvoker("code").set(bean, 7L);
+      assertEquals(7L, bean.code);
+      assertEquals(7L, reflector.getGetInvoker("code").invoke(bean, new Object[0]));
+    }
+  }
+
+  @Test
+  void shouldWrapExceptionsThrownByAccessors() {
+    for (InvokerFactory factory : FACTORIES) {
+      Reflector reflector = new Reflector(Bean.class, factory);
+      InvocationTargetException e = assertThrows(InvocationTargetException.class,
+          () -> reflector.getSetInvoker("failing").set(new Bean(), "value"));
+      assertTrue(e.getTargetException() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  void shouldAccessMembersOfNonPublicClasses() throws Exception {
+    for (InvokerFactory factory : FACTORIES) {
+      Reflector reflector = new Reflector(HiddenBean.class, factory);
+      HiddenBean bean = new HiddenBean();
+      reflector.getSetInvoker("value").set(bean, "hidden");
+      assertEquals("hidden", reflector.getGetInvoker("value").invoke(bean, new Object[0]));
+    }
+  }
+
+  @Test
+  void shouldGenerateAccessorsForPublicMethods() {
+    Reflector reflector = new Reflector(Bean.class, new LambdaInvokerFactory());
+    assertFalse(reflector.getGetInvoker("name") instanceof MethodHandleInvoker);
+    assertFalse(reflector.getGetInvoker("name") instanceof MethodInvoker);
+    assertTrue(reflector.getGetInvoker("code") instanceof MethodHandleInvoker);
+    Reflector hiddenReflector = new Reflector(HiddenBean.class, new LambdaInvokerFactory());
+    assertTrue(hiddenReflector.getGetInvoker("value") instanceof MethodHandleInvoker);
+  }
+
+  public static class Bean {
+    private String name;
+    private int age;
+    private long code;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public int getAge() {
+      return age;
+    }
+
+    public void setAge(int age) {
+      this.age = age;
+    }
+
+    public void setFailing(String failing) {
+      throw new IllegalStateException("failing setter");
+    }
+  }
+
+  private static class HiddenBean {
+    private String value;
+
+    String getValue() {
+      return value;
+    }
+
+    void setValue(String value) {
+      this.value = value;
+    }
+  }
+
+}
@@ -0,0 +1,72 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.reflection.property;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PropertyPathTest {
+
+  @Test
+  void shouldSplitNestedAndIndexedSegments() {
+    PropertyPath path = PropertyPath.forName("author.addresses[0].city");
+    assertEquals(3, path.size());
+    assertEquals("addresses[0].city", path.getName(1));
+    assertEquals("addresses", path.getToken(1).getName());
+    assertEquals("0", path.getToken(1).getIndex());
+    assertEquals("city", path.getToken(1).getChildren());
+    assertEquals("addresses[0]", path.getSegment(1).getIndexedName());
+    assertFalse(path.getSegment(1).hasNext());
+    assertTrue(path.getToken(0).hasNext());
+    assertNull(path.getToken(2).getChildren());
+    assertSame(path.getToken(2), path.getSegment(2));
+  }
+
+  @Test
+  void shouldReuseParsedPaths() {
+    assertSame(PropertyPath.forName("order.customer.name"), PropertyPath.forName("order.customer.name"));
+  }
+
+  @Test
+  void shouldParseSimpleProperty() {
+    PropertyPath path = PropertyPath.forName("id");
+    assertEquals(1, path.size());
+    assertEquals("id", path.getToken(0).getName());
+    assertNull(path.getToken(0).getIndex());
+  }
+
+  @Test
+  void shouldNotCacheForEachItemNames() {
+    assertNotSame(PropertyPath.forName("__frch_item_0.name"), PropertyPath.forName("__frch_item_0.name"));
+  }
+
+  @Test
+  void shouldKeepCachingPathsInUseOnceFull() {
+    PropertyPath hot = PropertyPath.forName("blog.author.name");
+    for (int i = 0; i < PropertyPath.MAX_CACHED_PATHS * 3; i++) {
+      PropertyPath.forName("generated" + i + ".name");
+      assertSame(hot, PropertyPath.forName("blog.author.name"));
+    }
+    assertSame(PropertyPath.forName("blog.author.id"), PropertyPath.forName("blog.author.id"));
+  }
+
+}
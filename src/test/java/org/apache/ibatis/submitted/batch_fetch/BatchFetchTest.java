@@ -0,0 +1,153 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_fetch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchFetchTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    // create an SqlSessionFactory
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_fetch/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+
+    // populate in-memory database
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_fetch/CreateDB.sql");
+  }
+
+  @BeforeEach
+  void resetCounter() {
+    QueryCounter.count = 0;
+  }
+
+  @Test
+  void shouldBatchFetchNestedSelects() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Order> orders = mapper.getOrders();
+      // 1 for the orders, 2 for 3 customers in chunks of 2, 1 for the lines
+      assertEquals(4, QueryCounter.count);
+      assertEquals(5, orders.size());
+      assertOrders(orders);
+    }
+  }
+
+  @Test
+  void shouldBatchLoadLazyPropertiesOfSiblings() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Order> orders = mapper.getOrdersLazily();
+      assertEquals(1, QueryCounter.count);
+      assertEquals("Customer1", orders.get(0).getCustomer().getName());
+      // customers 1 and 2 are loaded together
+      assertEquals(2, QueryCounter.count);
+      assertEquals("Customer2", orders.get(1).getCustomer().getName());
+      assertEquals(2, QueryCounter.count);
+      assertOrders(orders);
+      // customer 3 in a second chunk and the lines of all the orders at once
+      assertEquals(4, QueryCounter.count);
+    }
+  }
+
+  @Test
+  void shouldBatchFetchNestedSelectsOfAnnotatedResults() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      List<Order> orders = mapper.getOrdersWithAnnotations();
+      assertEquals(4, QueryCounter.count);
+      assertOrders(orders);
+    }
+  }
+
+  @Test
+  void shouldMatchBatchKeysOfDifferentNumericTypes() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      // the parent keys are read as 1.0, 2.0, ... while the customer ids are integers
+      List<Order> orders = mapper.getOrdersWithDecimalCustomerIds();
+      assertEquals(4, QueryCounter.count);
+      assertOrders(orders);
+    }
+  }
+
+  @Test
+  void shouldCompleteRowsBeforeHandingThemToResultHandler() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Order> orders = new ArrayList<>();
+      sqlSession.select("org.apache.ibatis.submitted.batch_fetch.Mapper.getOrders", context -> {
+        Order order = (Order) context.getResultObject();
+        assertNotNull(order.getLines());
+        orders.add(order);
+      });
+      assertEquals(5, orders.size());
+      assertOrders(orders);
+    }
+  }
+
+  @Test
+  void shouldBatchFetchCyclicNestedSelects() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      // the customers of the orders are batch fetched with the same statement and keys as the enclosing query
+      List<Customer> customers = mapper.getCustomersWithOrdersByIds(Arrays.asList(1, 2));
+      assertEquals(2, customers.size());
+      List<Order> orders = customers.get(0).getOrders();
+      assertEquals(2, orders.size());
+      assertEquals(Integer.valueOf(1), orders.get(0).getId());
+      assertEquals(Integer.valueOf(3), orders.get(1).getId());
+      assertEquals("Customer1", orders.get(0).getCustomer().getName());
+      assertEquals("Customer1", orders.get(1).getCustomer().getName());
+      assertEquals(1, customers.get(1).getOrders().size());
+      assertEquals("Customer2", customers.get(1).getOrders().get(0).getCustomer().getName());
+    }
+  }
+
+  private void assertOrders(List<Order> orders) {
+    assertEquals("Customer1", orders.get(0).getCustomer().getName());
+    assertEquals("Customer2", orders.get(1).getCustomer().getName());
+    assertEquals("Customer1", orders.get(2).getCustomer().getName());
+    assertEquals("Customer3", orders.get(3).getCustomer().getName());
+    assertNull(orders.get(4).getCustomer());
+
+    assertEquals(2, orders.get(0).getLines().size());
+    assertEquals("Apple", orders.get(0).getLines().get(0).getProduct());
+    assertEquals("Banana", orders.get(0).getLines().get(1).getProduct());
+    assertEquals(1, orders.get(1).getLines().size());
+    assertTrue(orders.get(2).getLines().isEmpty());
+    assertEquals(3, orders.get(3).getLines().size());
+    assertTrue(orders.get(4).getLines().isEmpty());
+  }
+
+}
@@ -0,0 +1,54 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_fetch;
+
+import java.util.List;
+
+import org.apache.ibatis.annotations.Many;
+import org.apache.ibatis.annotations.One;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Result;
+import org.apache.ibatis.annotations.Results;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.FetchType;
+
+public interface Mapper {
+
+  List<Order> getOrders();
+
+  List<Order> getOrdersLazily();
+
+  List<Order> getOrdersWithDecimalCustomerIds();
+
+  List<Order> getOrdersInParallel();
+
+  List<Order> getOrdersOneByOne();
+
+  List<Customer> getCustomersWithOrdersByIds(List<Integer> ids);
+
+  int renameCustomer(@Param("id") Integer id, @Param("name") String name);
+
+  @Select("select * from orders order by id")
+  @Results({
+      @Result(property = "id", column = "id", id = true),
+      @Result(property = "customer", column = "customer_id",
+          one = @One(select = "getCustomersByIds", batchSize = 2, fetchType = FetchType.EAGER)),
+      @Result(property = "lines", column = "id",
+          many = @Many(select = "getLinesByOrderIds", batchSize = 10, batchKeyProperty = "orderId", fetchType = FetchType.EAGER))
+  })
+  List<Order> getOrdersWithAnnotations();
+
+}
@@ -0,0 +1,157 @@
+/**
+ *    Copyright 2009-2019 the original author or authors.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package org.apache.ibatis.submitted.batch_fetch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.Reader;
+import java.util.List;
+
+import org.apache.ibatis.BaseDataTest;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.builder.BuilderException;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.managed.ManagedTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ParallelNestedQueryTest {
+
+  private static SqlSessionFactory sqlSessionFactory;
+
+  @BeforeAll
+  static void setUp() throws Exception {
+    // create an SqlSessionFactory
+    try (Reader reader = Resources.getResourceAsReader("org/apache/ibatis/submitted/batch_fetch/mybatis-config.xml")) {
+      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader);
+    }
+
+    // populate in-memory database
+    BaseDataTest.runScript(sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(),
+        "org/apache/ibatis/submitted/batch_fetch/CreateDB.sql");
+  }
+
+  @BeforeEach
+  void resetCounter() {
+    QueryCounter.count = 0;
+    QueryCounter.threadNames.clear();
+  }
+
+  @AfterEach
+  void tearDown() {
+    sqlSessionFactory.getConfiguration().setNestedQueryParallelism(4);
+  }
+
+  @Test
+  void shouldLoadNestedQueriesInParallel() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertOrders(sqlSession.getMapper(Mapper.class).getOrdersInParallel());
+    }
+    assertTrue(QueryCounter.threadNames.stream().anyMatch(name -> name.startsWith("mybatis-nested-query-")));
+    // 1 for the orders, 1 per distinct customer and 1 per order for the lines
+    assertEquals(9, QueryCounter.count);
+  }
+
+  @Test
+  void shouldShareNestedQueryOfSameKeyBetweenRows() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      List<Order> orders = sqlSession.getMapper(Mapper.class).getOrdersInParallel();
+      assertSame(orders.get(0).getCustomer(), orders.get(2).getCustomer());
+    }
+  }
+
+  @Test
+  void shouldLoadNestedQueriesOfOtherStatementsSequentially() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertOrders(sqlSession.getMapper(Mapper.class).getOrdersOneByOne());
+    }
+    assertEquals(1, QueryCounter.threadNames.size());
+  }
+
+  @Test
+  void shouldLoadNestedQueriesSequentiallyWhenParallelismIsZero() {
+    sqlSessionFactory.getConfiguration().setNestedQueryParallelism(0);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertOrders(sqlSession.getMapper(Mapper.class).getOrdersInParallel());
+    }
+    assertEquals(1, QueryCounter.threadNames.size());
+  }
+
+  @Test
+  void shouldLoadNestedQueriesSequentiallyInDirtySession() {
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      mapper.renameCustomer(2, "Renamed");
+      QueryCounter.threadNames.clear();
+      List<Order> orders = mapper.getOrdersInParallel();
+      // the uncommitted name is only visible on the connection of the session
+      assertEquals("Renamed", orders.get(1).getCustomer().getName());
+      sqlSession.rollback();
+    }
+    assertEquals(1, QueryCounter.threadNames.size());
+  }
+
+  @Test
+  void shouldLoadNestedQueriesSequentiallyInManagedTransaction() {
+    Configuration configuration = sqlSessionFactory.getConfiguration();
+    Environment environment = configuration.getEnvironment();
+    configuration.setEnvironment(new Environment("managed", new ManagedTransactionFactory(), environment.getDataSource()));
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      assertOrders(sqlSession.getMapper(Mapper.class).getOrdersInParallel());
+    } finally {
+      configuration.setEnvironment(environment);
+    }
+    assertEquals(1, QueryCounter.threadNames.size());
+  }
+
+  @Test
+  void shouldRejectParallelUpdates() {
+    Configuration configuration = new Configuration();
+    assertThrows(BuilderException.class, () -> configuration.addMapper(ParallelUpdateMapper.class));
+  }
+
+  private void assertOrders(List<Order> orders) {
+    assertEquals(5, orders.size());
+    assertEquals("Customer1", orders.get(0).getCustomer().getName());
+    assertEquals("Customer2", orders.get(1).getCustomer().getName());
+    assertEquals("Customer1", orders.get(2).getCustomer().getName());
+    assertEquals("Customer3", orders.get(3).getCustomer().getName());
+    assertNull(orders.get(4).getCustomer());
+
+    assertEquals(2, orders.get(0).getLines().size());
+    assertEquals("Apple", orders.get(0).getLines().get(0).getProduct());
+    assertEquals("Banana", orders.get(0).getLines().get(1).getProduct());
+    assertEquals(1, orders.get(1).getLines().size());
+    assertTrue(orders.get(2).getLines().isEmpty());
+    assertEquals(3, orders.get(3).getLines().size());
+    assertTrue(orders.get(4).getLines().isEmpty());
+  }
+
+  interface ParallelUpdateMapper {
+    @Update("update customers set name = null")
+    @Options(parallel = true)
+    int clearNames();
+  }
+
+}
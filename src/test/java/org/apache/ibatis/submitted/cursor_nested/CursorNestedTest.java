@@ -105,4 +105,34 @@ class CursorNestedTest {
       Assertions.assertTrue(usersCursor.isConsumed());
     }
   }
+
+  @Test
+  void shouldStreamUnorderedNestedCursorWhenEnabled() {
+    sqlSessionFactory.getConfiguration().setNestedCursorStreamingEnabled(true);
+    try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+      Mapper mapper = sqlSession.getMapper(Mapper.class);
+      Iterator<User> iterator = mapper.getAllUsersUnordered().iterator();
+
+      User user = iterator.next();
+      Assertions.assertEquals("User1", user.getName());
+      Assertions.assertEquals(2, user.getGroups().size());
+      Assertions.assertEquals(3, user.getRoles().size());
+
+      user = iterator.next();
+      Assertions.assertEquals(1, user.getGroups().size());
+      Assertions.assertEquals(3, user.getRoles().size());
+
+      user = iterator.next();
+      Assertions.assertEquals(3, user.getGroups().size());
+      Assertions.assertEquals(1, user.getRoles().size());
+
+      user = iterator.next();
+      Assertions.assertEquals(2, user.getGroups().size());
+      Assertions.assertEquals(2, user.getRoles().size());
+
+      Assertions.assertFalse(iterator.hasNext());
+    } finally {
+      sqlSessionFactory.getConfiguration().setNestedCursorStreamingEnabled(false);
+    }
+  }
 }
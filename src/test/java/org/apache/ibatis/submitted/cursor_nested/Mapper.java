@@ -21,4 +21,6 @@ public interface Mapper {
 
   Cursor<User> getAllUsers();
 
+  Cursor<User> getAllUsersUnordered();
+
 }